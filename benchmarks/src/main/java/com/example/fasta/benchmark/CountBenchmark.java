@@ -0,0 +1,73 @@
+package com.example.fasta.benchmark;
+
+import com.example.fasta.model.FastaResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures counting of bases and merging of results.
+ *
+ * @author rdanilov
+ * @since 21.10.2018
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CountBenchmark {
+
+    @Param({"60", "1000"})
+    public int lineLength;
+
+    @Param({"0", "0.5"})
+    public double lowerCaseRate;
+
+    @Param({"0", "0.05"})
+    public double iupacRate;
+
+    private byte[] bases;
+    private FastaResult[] results;
+
+    @Setup
+    public void setUp() {
+        bases = FastaGenerator.generate(1, 1024 * 1024 / lineLength, lineLength, lowerCaseRate, iupacRate);
+        results = new FastaResult[1000];
+        for (int i = 0; i < results.length; i++) {
+            results[i] = new FastaResult();
+            results[i].countBases(bases, 0, Math.min(bases.length, 4096));
+            results[i].countSequence();
+        }
+    }
+
+    @Benchmark
+    public FastaResult countBases() {
+        FastaResult result = new FastaResult();
+        for (int from = 0; from < bases.length; from += lineLength) {
+            result.countBases(bases, from, Math.min(bases.length, from + lineLength));
+            result.countSequence();
+        }
+        return result;
+    }
+
+    @Benchmark
+    public FastaResult mergeResults() {
+        FastaResult result = new FastaResult();
+        for (FastaResult other : results) {
+            FastaResult.merge(result, other);
+        }
+        return result;
+    }
+}
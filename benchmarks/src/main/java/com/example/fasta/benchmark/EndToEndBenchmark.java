@@ -0,0 +1,84 @@
+package com.example.fasta.benchmark;
+
+import com.example.fasta.service.FastaFileService;
+import com.example.fasta.service.FastaSettings;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Measures {@link FastaFileService#processFastaFiles(List)} on compressed files in a temporary folder.
+ *
+ * @author rdanilov
+ * @since 21.10.2018
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class EndToEndBenchmark {
+
+    @Param({"4", "32"})
+    public int files;
+
+    @Param({"0", "1"})
+    public double skew;
+
+    @Param({"gzip", "bgzf"})
+    public String inputFormat;
+
+    @Param({"false", "true"})
+    public boolean blockCompression;
+
+    private Path folder;
+    private List<String> fileNames;
+    private FastaSettings settings;
+
+    @Setup
+    public void setUp() throws IOException {
+        folder = Files.createTempDirectory("fasta-benchmark");
+        fileNames = new ArrayList<>();
+        int[] lengths = FastaGenerator.lengths(files, 32 * 1024 * 1024 / files / 61, skew);
+        for (int i = 0; i < files; i++) {
+            byte[] content = FastaGenerator.generate(i, lengths[i], 60, 0.1, 0.01);
+            String fileName = "input" + i + ".fasta.gz";
+            byte[] compressed = "bgzf".equals(inputFormat) ? FastaGenerator.bgzf(content) : FastaGenerator.gzip(content);
+            Files.write(folder.resolve(fileName), compressed);
+            fileNames.add(fileName);
+        }
+        settings = new FastaSettings().setBlockCompression(blockCompression);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(folder)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Benchmark
+    public void processFastaFiles() {
+        new FastaFileService(folder.toString() + File.separator, settings).processFastaFiles(fileNames);
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.fasta.benchmark;
+
+import com.example.fasta.io.BgzfOutputStream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Generates synthetic .fasta content for benchmarks.
+ *
+ * @author rdanilov
+ * @since 21.10.2018
+ */
+public final class FastaGenerator {
+
+    private static final byte[] bases = {'A', 'C', 'G', 'T'};
+    private static final byte[] iupacBases = {'N', 'R', 'Y', 'K', 'M', 'S', 'W', 'B', 'D', 'H', 'V'};
+    private static final int linesPerSequence = 10;
+
+    private FastaGenerator() {
+    }
+
+    /**
+     * Generates .fasta content with a description line before every {@value #linesPerSequence} lines.
+     *
+     * @param seed seed of random generator
+     * @param lines number of sequence lines
+     * @param lineLength number of bases in a line
+     * @param lowerCaseRate part of bases written in lower case
+     * @param iupacRate part of bases replaced by IUPAC ambiguity codes
+     * @return content of the file
+     */
+    public static byte[] generate(long seed, int lines, int lineLength, double lowerCaseRate, double iupacRate) {
+        Random random = new Random(seed);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(lines * (lineLength + 1) + lines);
+        byte[] line = new byte[lineLength + 1];
+        line[lineLength] = '\n';
+        for (int i = 0; i < lines; i++) {
+            if (i % linesPerSequence == 0) {
+                byte[] description = (">SEQUENCE_" + (i / linesPerSequence + 1) + "\n").getBytes();
+                out.write(description, 0, description.length);
+            }
+            for (int j = 0; j < lineLength; j++) {
+                byte base = random.nextDouble() < iupacRate
+                        ? iupacBases[random.nextInt(iupacBases.length)]
+                        : bases[random.nextInt(bases.length)];
+                if (random.nextDouble() < lowerCaseRate) {
+                    base = (byte) Character.toLowerCase(base);
+                }
+                line[j] = base;
+            }
+            out.write(line, 0, line.length);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Computes number of lines of every file. With skew 0 all files have the same length,
+     * with bigger skew every next file is longer than the previous one.
+     *
+     * @param files number of files
+     * @param lines number of lines in the first file
+     * @param skew growth of every next file relative to the first one
+     * @return number of lines of every file
+     */
+    public static int[] lengths(int files, int lines, double skew) {
+        int[] lengths = new int[files];
+        for (int i = 0; i < files; i++) {
+            lengths[i] = (int) (lines * (1 + skew * i));
+        }
+        return lengths;
+    }
+
+    /**
+     * @param content content to compress
+     * @return content compressed as a single gzip member
+     */
+    public static byte[] gzip(byte[] content) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(content.length / 3);
+        try (OutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(content);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * @param content content to compress
+     * @return content compressed as BGZF blocks
+     */
+    public static byte[] bgzf(byte[] content) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(content.length / 3);
+        try (OutputStream bgzf = new BgzfOutputStream(out, Runtime.getRuntime().availableProcessors())) {
+            bgzf.write(content);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.fasta.benchmark;
+
+import com.example.fasta.concurrent.FastaFileWorker;
+import com.example.fasta.concurrent.FastaMerger;
+import com.example.fasta.concurrent.FastaSynchronizer;
+import com.example.fasta.concurrent.MemoryBudget;
+import com.example.fasta.concurrent.WorkerOptions;
+import com.example.fasta.io.FastaScanner;
+import com.example.fasta.model.FastaResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the ordered interleave of uncompressed files without writing to disk,
+ * so only scanning, counting and handing lines over to the merger are measured.
+ *
+ * @author rdanilov
+ * @since 21.10.2018
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InterleaveBenchmark {
+
+    @Param({"2", "16", "256"})
+    public int files;
+
+    @Param({"60", "1000"})
+    public int lineLength;
+
+    @Param({"0", "1"})
+    public double skew;
+
+    /**
+     * Memory budget of chunks buffered by all files in bytes, 0 for the fixed number of chunks per file
+     */
+    @Param({"0", "4194304"})
+    public long bufferBudget;
+
+    private byte[][] contents;
+    private ExecutorService service;
+
+    @Setup
+    public void setUp() {
+        int[] lengths = FastaGenerator.lengths(files, 16 * 1024 * 1024 / files / (lineLength + 1), skew);
+        contents = new byte[files][];
+        for (int i = 0; i < files; i++) {
+            contents[i] = FastaGenerator.generate(i, lengths[i], lineLength, 0.1, 0.01);
+        }
+        service = Executors.newWorkStealingPool();
+    }
+
+    @TearDown
+    public void tearDown() {
+        service.shutdown();
+    }
+
+    @Benchmark
+    public long interleave() throws Exception {
+        FastaSynchronizer sync = new FastaSynchronizer();
+        MemoryBudget budget = bufferBudget > 0 ? new MemoryBudget(bufferBudget) : null;
+        List<FastaFileWorker> workers = new ArrayList<>();
+        for (byte[] content : contents) {
+            workers.add(new FastaFileWorker(sync, new FastaScanner(new ByteArrayInputStream(content)), 0, null,
+                    new WorkerOptions().setBudget(budget)));
+        }
+        List<Future<FastaResult>> futures = new ArrayList<>();
+        for (FastaFileWorker worker : workers) {
+            futures.add(service.submit(worker));
+        }
+        CountingOutputStream out = new CountingOutputStream();
+        new FastaMerger(sync, out).merge();
+        for (Future<FastaResult> future : futures) {
+            future.get();
+        }
+        return out.count;
+    }
+
+    private static final class CountingOutputStream extends OutputStream {
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
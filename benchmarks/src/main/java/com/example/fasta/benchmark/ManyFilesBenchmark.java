@@ -0,0 +1,121 @@
+package com.example.fasta.benchmark;
+
+import com.example.fasta.concurrent.FastaFileWorker;
+import com.example.fasta.concurrent.FastaMerger;
+import com.example.fasta.concurrent.FastaSynchronizer;
+import com.example.fasta.concurrent.WorkerExecutors;
+import com.example.fasta.concurrent.WorkerOptions;
+import com.example.fasta.io.FastaScanner;
+import com.example.fasta.model.FastaResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the ordered interleave of thousands of small files with one worker per file,
+ * running either in work stealing pool, which adds platform threads for blocked workers,
+ * or in virtual threads on a fixed set of {@value #carrierThreads} carrier threads.
+ * Virtual threads require Java 21, on older JVMs the {@code virtual} executor fails in setup.
+ *
+ * @author rdanilov
+ * @since 21.10.2018
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {
+        "-Xmx3g",
+        "-Djdk.virtualThreadScheduler.parallelism=" + ManyFilesBenchmark.carrierThreads,
+        "-Djdk.virtualThreadScheduler.maxPoolSize=" + ManyFilesBenchmark.carrierThreads
+})
+public class ManyFilesBenchmark {
+
+    static final int carrierThreads = 4;
+
+    @Param({"1000", "4000"})
+    public int files;
+
+    @Param({"20"})
+    public int linesPerFile;
+
+    @Param({"workStealing", "virtual"})
+    public String executor;
+
+    private byte[][] contents;
+    private ExecutorService service;
+
+    @Setup
+    public void setUp() {
+        contents = new byte[files][];
+        for (int i = 0; i < files; i++) {
+            contents[i] = FastaGenerator.generate(i, linesPerFile + i % linesPerFile, 60, 0.1, 0.01);
+        }
+        if ("virtual".equals(executor)) {
+            service = WorkerExecutors.newVirtualThreadPerTaskExecutor("benchmark-worker");
+            if (service == null) {
+                throw new IllegalStateException("Virtual threads require Java 21 or newer");
+            }
+        } else {
+            service = Executors.newWorkStealingPool();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        service.shutdown();
+    }
+
+    @Benchmark
+    public long interleave() throws Exception {
+        FastaSynchronizer sync = new FastaSynchronizer();
+        List<FastaFileWorker> workers = new ArrayList<>();
+        for (byte[] content : contents) {
+            workers.add(new FastaFileWorker(sync, new FastaScanner(new ByteArrayInputStream(content)), 0, null,
+                    new WorkerOptions()));
+        }
+        List<Future<FastaResult>> futures = new ArrayList<>();
+        for (FastaFileWorker worker : workers) {
+            futures.add(service.submit(worker));
+        }
+        CountingOutputStream out = new CountingOutputStream();
+        new FastaMerger(sync, out).merge();
+        for (Future<FastaResult> future : futures) {
+            future.get();
+        }
+        return out.count;
+    }
+
+    private static final class CountingOutputStream extends OutputStream {
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.fasta.benchmark;
+
+import com.example.fasta.concurrent.NamedThreadFactory;
+import com.example.fasta.io.BgzfInputStream;
+import com.example.fasta.io.FastaScanner;
+import com.example.fasta.io.LineChunk;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Measures decompression and scanning of a single .fasta file.
+ *
+ * @author rdanilov
+ * @since 21.10.2018
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ScanBenchmark {
+
+    private static final int contentSize = 8 * 1024 * 1024;
+
+    @Param({"60", "80", "1000"})
+    public int lineLength;
+
+    @Param({"0", "0.5"})
+    public double lowerCaseRate;
+
+    @Param({"0", "0.05"})
+    public double iupacRate;
+
+    private byte[] plain;
+    private byte[] gzip;
+    private byte[] bgzf;
+    private LineChunk chunk;
+    private ExecutorService inflaters;
+
+    @Setup
+    public void setUp() {
+        plain = FastaGenerator.generate(1, contentSize / (lineLength + 1), lineLength, lowerCaseRate, iupacRate);
+        gzip = FastaGenerator.gzip(plain);
+        bgzf = FastaGenerator.bgzf(plain);
+        chunk = new LineChunk(64 * 1024);
+        inflaters = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+                new NamedThreadFactory("benchmark-inflater"));
+    }
+
+    @TearDown
+    public void tearDown() {
+        inflaters.shutdown();
+    }
+
+    @Benchmark
+    public long scanPlain() throws IOException {
+        return scan(new ByteArrayInputStream(plain));
+    }
+
+    @Benchmark
+    public long gunzipAndScan() throws IOException {
+        return scan(new GZIPInputStream(new ByteArrayInputStream(gzip), 64 * 1024));
+    }
+
+    @Benchmark
+    public long parallelBgzfAndScan() throws IOException {
+        return scan(new BgzfInputStream(new ByteArrayInputStream(bgzf), inflaters, 8));
+    }
+
+    private long scan(InputStream in) throws IOException {
+        long lines = 0;
+        try (FastaScanner scanner = new FastaScanner(in)) {
+            while (scanner.next(chunk)) {
+                lines += chunk.lineCount();
+            }
+        }
+        return lines;
+    }
+}
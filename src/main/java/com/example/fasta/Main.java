@@ -1,21 +1,94 @@
 package com.example.fasta;
 
+import com.example.fasta.service.FastaDaemon;
 import com.example.fasta.service.FastaFileService;
+import com.example.fasta.service.FastaOptions;
+import com.example.fasta.service.FastaResources;
+import com.example.fasta.service.FastaSettings;
 
-import java.util.Arrays;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
+ * Arguments starting with {@code --} are options, all other arguments are names of files,
+ * {@code -} is the standard input.
+ * Supported options:
+ * <ul>
+ *     <li>{@code --bgzf} write sequence file as BGZF blocks compressed in parallel</li>
+ *     <li>{@code --compression-threads=N} number of threads compressing BGZF blocks</li>
+ *     <li>{@code --progress-interval=MS} publish running totals into progress file every MS milliseconds</li>
+ *     <li>{@code --checkpoint-interval=MS} save checkpoint at most every MS milliseconds
+ *     and continue an interrupted job from it</li>
+ *     <li>{@code --buffer-budget=BYTES} limit memory of chunks read ahead by all files together</li>
+ *     <li>{@code --metrics-interval=MS} dump metrics into metrics file every MS milliseconds
+ *     and expose them through JMX</li>
+ *     <li>{@code --virtual-threads} read every file in its own virtual thread, requires Java 21</li>
+ *     <li>{@code --report-only} write only the report, counting files independently</li>
+ *     <li>{@code --stats-cache=PATH} cache results of single files in PATH between jobs</li>
+ *     <li>{@code --stats-cache-size=BYTES} limit size of the statistics cache file</li>
+ *     <li>{@code --split-size=BYTES} count ranges of BYTES of large uncompressed and BGZF files in parallel
+ *     in report only mode</li>
+ *     <li>{@code --line-width=N} wrap lines of the sequence file at N bases</li>
+ *     <li>{@code --record-per-file} write the line of every file as a separate record</li>
+ *     <li>{@code --original-headers} name records by the original descriptions of their first lines</li>
+ *     <li>{@code --sequence-stats} write histograms of lengths, GC content and ambiguous bases
+ *     of sequences into the report</li>
+ *     <li>{@code --kmer-size=K} also count k-mers of size K into the report</li>
+ *     <li>{@code --packed-store=DIR} read files from their copies in DIR packed by 2 bits per base,
+ *     packing them first if needed</li>
+ *     <li>{@code --shard=I/N} count only files of shard I of N and write their partial result</li>
+ *     <li>{@code --reduce} merge partial results given instead of files into the report</li>
+ *     <li>{@code --stdout} stream the sequence data into the standard output instead of the sequence file</li>
+ *     <li>{@code --daemon=DIR} stay resident and run jobs put into DIR as {@code NAME.job} files,
+ *     see {@link FastaDaemon}</li>
+ *     <li>{@code --daemon-jobs=N} run up to N jobs of different folders at the same time</li>
+ * </ul>
+ *
  * @author rdanilov
  * @since 21.10.2018
  */
 public class Main {
 
     public static void main(String[] args) {
-        if (args.length > 0) {
-            FastaFileService service = new FastaFileService();
-            service.processFastaFiles(Arrays.asList(args));
+        FastaSettings settings = new FastaSettings();
+        List<String> fileNames = new ArrayList<>();
+        String daemonFolder = null;
+        int daemonJobs = 1;
+        for (String arg : args) {
+            String name = FastaOptions.getName(arg);
+            if (name.equals("--daemon")) {
+                daemonFolder = FastaOptions.requireValue(name, FastaOptions.getValue(arg));
+            } else if (name.equals("--daemon-jobs")) {
+                daemonJobs = Integer.parseInt(FastaOptions.requireValue(name, FastaOptions.getValue(arg)));
+            } else if (arg.startsWith("--")) {
+                FastaOptions.apply(settings, arg);
+            } else {
+                fileNames.add(arg);
+            }
+        }
+        if (daemonFolder != null) {
+            runDaemon(Paths.get(daemonFolder), settings, daemonJobs);
+        } else if (!fileNames.isEmpty()) {
+            FastaFileService service = new FastaFileService("", settings);
+            service.processFastaFiles(fileNames);
         } else {
             throw new IllegalArgumentException("You must specify at least one argument");
         }
     }
+
+    private static void runDaemon(Path queueFolder, FastaSettings settings, int jobs) {
+        FastaResources resources = new FastaResources(settings);
+        FastaDaemon daemon = new FastaDaemon(queueFolder, resources, jobs);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            daemon.close();
+            resources.close();
+        }, "fasta-daemon-shutdown"));
+        try {
+            daemon.run();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
 }
@@ -0,0 +1,21 @@
+package com.example.fasta.concurrent;
+
+import java.io.IOException;
+
+/**
+ * Receives positions of {@link FastaMerger} where the job can be continued after restart.
+ *
+ * @author rdanilov
+ * @since 21.10.2018
+ */
+public interface CheckpointHandler {
+
+    /**
+     * Called by the merger thread between two lines. All lines before the position are already
+     * passed to the output stream, no line is written while the method runs.
+     *
+     * @param position position of the merger
+     * @throws IOException if unable to save the checkpoint
+     */
+    void checkpoint(MergePosition position) throws IOException;
+}
@@ -0,0 +1,190 @@
+package com.example.fasta.concurrent;
+
+import com.example.fasta.io.FastaScanner;
+import com.example.fasta.io.LineChunk;
+import com.example.fasta.metrics.FileMetrics;
+import com.example.fasta.metrics.MetricsRegistry;
+import com.example.fasta.model.FastaResult;
+import com.example.fasta.model.SequenceStats;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Supplier;
+
+/**
+ * Task counting bases and sequences of .fasta file without passing its lines anywhere.
+ * Used when only the report is needed, so files are read independently of each other.
+ * The calling thread only reads and decompresses the file, every chunk is counted by a task forked
+ * into {@link java.util.concurrent.ForkJoinPool}. Up to {@value #maxPendingChunks} chunks are counted
+ * at once, after that the oldest one is joined and its chunk is reused. Sequence statistics
+ * need lines in order, so they are collected by the calling thread when chunks are joined.
+ *
+ * @author rdanilov
+ * @since 21.10.2018
+ */
+public class FastaFileCounter implements Callable<FastaResult> {
+
+    private static final int chunkSize = 64 * 1024;
+    private static final int maxPendingChunks = 4;
+
+    private final FastaScanner scanner;
+    private final FileMetrics metrics;
+    private final Supplier<SequenceStats> statsFactory;
+
+    /**
+     * Constructs an instance of {@link FastaFileCounter}
+     *
+     * @param scanner scanner of .fasta file
+     */
+    public FastaFileCounter(FastaScanner scanner) {
+        this(scanner, null);
+    }
+
+    /**
+     * Constructs an instance of {@link FastaFileCounter} recording metrics of reading
+     *
+     * @param scanner scanner of .fasta file
+     * @param metrics metrics of the file, may be null
+     */
+    public FastaFileCounter(FastaScanner scanner, FileMetrics metrics) {
+        this(scanner, metrics, null);
+    }
+
+    /**
+     * Constructs an instance of {@link FastaFileCounter} collecting sequence statistics
+     *
+     * @param scanner scanner of .fasta file
+     * @param metrics metrics of the file, may be null
+     * @param statsFactory factory of sequence statistics, null if statistics aren't collected
+     */
+    public FastaFileCounter(FastaScanner scanner, FileMetrics metrics, Supplier<SequenceStats> statsFactory) {
+        this.scanner = scanner;
+        this.metrics = metrics != null ? metrics : new FileMetrics(new MetricsRegistry(), "");
+        this.statsFactory = statsFactory;
+    }
+
+    /**
+     * Reads the whole .fasta file and counts its lines.
+     *
+     * @return result of reading file
+     * @throws IOException if unable to read the file, so partial counts are never returned
+     */
+    @Override
+    public FastaResult call() throws IOException {
+        FastaResult result = new FastaResult(statsFactory != null ? statsFactory.get() : null);
+        Queue<ChunkCounter> pending = new ArrayDeque<>();
+        Queue<LineChunk> freeChunks = new ArrayDeque<>();
+        try (FastaScanner in = scanner) {
+            long bytesCounted = in.getBytesRead();
+            while (true) {
+                LineChunk chunk = freeChunks.isEmpty() ? new LineChunk(chunkSize) : freeChunks.poll();
+                long start = System.nanoTime();
+                if (!in.next(chunk)) {
+                    break;
+                }
+                metrics.getRead().recordSince(start);
+                metrics.getBytesRead().add(in.getBytesRead() - bytesCounted);
+                bytesCounted = in.getBytesRead();
+                ChunkCounter counter = new ChunkCounter(chunk, metrics);
+                counter.fork();
+                pending.offer(counter);
+                if (pending.size() >= maxPendingChunks) {
+                    freeChunks.offer(join(pending.poll(), result));
+                }
+            }
+            metrics.getBytesRead().add(in.getBytesRead() - bytesCounted);
+            while (!pending.isEmpty()) {
+                join(pending.poll(), result);
+            }
+            countEnd(result.getStats());
+        }
+        return result;
+    }
+
+    /**
+     * Counts bases and complete lines of the chunk.
+     *
+     * @param chunk chunk to be counted
+     * @param counts counts to add bases and sequences to
+     * @param metrics metrics of the file
+     */
+    static void count(LineChunk chunk, FastaResult counts, FileMetrics metrics) {
+        byte[] data = chunk.data();
+        long bases = 0;
+        long lines = 0;
+        for (int line = 0; line < chunk.lineCount(); line++) {
+            counts.countBases(data, chunk.start(line), chunk.end(line));
+            bases += chunk.end(line) - chunk.start(line);
+            if (chunk.isComplete(line)) {
+                counts.countSequence();
+                lines++;
+            }
+        }
+        metrics.getBases().add(bases);
+        metrics.getLines().add(lines);
+    }
+
+    /**
+     * Adds bases of the chunk to sequence statistics, a sequence is finished when the next record starts.
+     * Chunks of a file must be added in order and the last sequence is finished by {@link #countEnd}.
+     *
+     * @param chunk chunk to be added
+     * @param stats statistics to add sequences to, may be null
+     */
+    static void count(LineChunk chunk, SequenceStats stats) {
+        if (stats == null) {
+            return;
+        }
+        byte[] data = chunk.data();
+        for (int line = 0; line < chunk.lineCount(); line++) {
+            if (chunk.isRecordStart(line)) {
+                stats.endSequence();
+            }
+            stats.addBases(data, chunk.start(line), chunk.end(line));
+        }
+    }
+
+    /**
+     * Finishes the last sequence of the file in sequence statistics.
+     *
+     * @param stats statistics to finish the sequence of, may be null
+     */
+    static void countEnd(SequenceStats stats) {
+        if (stats != null) {
+            stats.endSequence();
+        }
+    }
+
+    private static LineChunk join(ChunkCounter counter, FastaResult result) {
+        counter.join();
+        FastaResult.merge(result, counter.chunk.counts());
+        count(counter.chunk, result.getStats());
+        return counter.chunk;
+    }
+
+    /**
+     * Counts lines of one chunk into counts of the chunk.
+     */
+    private static final class ChunkCounter extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final LineChunk chunk;
+        private final FileMetrics metrics;
+
+        private ChunkCounter(LineChunk chunk, FileMetrics metrics) {
+            this.chunk = chunk;
+            this.metrics = metrics;
+        }
+
+        @Override
+        protected void compute() {
+            FastaResult counts = chunk.counts();
+            counts.clear();
+            count(chunk, counts, metrics);
+        }
+    }
+}
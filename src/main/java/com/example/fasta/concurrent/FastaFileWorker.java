@@ -1,18 +1,30 @@
 package com.example.fasta.concurrent;
 
+import com.example.fasta.io.FastaScanner;
+import com.example.fasta.io.LineChunk;
+import com.example.fasta.metrics.FileMetrics;
+import com.example.fasta.metrics.MetricsRegistry;
 import com.example.fasta.model.FastaResult;
+import com.example.fasta.model.SequenceStats;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.IOException;
-import java.util.Map;
-import java.util.TreeMap;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 import java.util.logging.Logger;
 
 /**
- * Worker that performs operation of reading .fasta file
- * and writing into {@value com.example.fasta.service.FastaFileService#sequenceFileName}
+ * Worker that performs operation of reading .fasta file.
+ * Sequence lines are counted and handed over to {@link FastaMerger} in chunks through a bounded queue,
+ * so every file is read independently and only the writing is done in order.
+ * Chunks are returned back by the merger and reused. If {@link MemoryBudget} is given, the number of chunks
+ * in the queue isn't limited, instead the worker waits until buffered chunks of all workers fit the budget.
  *
  * @author rdanilov
  * @since 21.10.2018
@@ -21,68 +33,281 @@ public class FastaFileWorker implements Callable<FastaResult> {
 
     private static final Logger log = Logger.getLogger(FastaFileWorker.class.getName());
 
-    private static final String descriptionPrefix = ">";
-    private BufferedReader fileReader;
-    private BufferedWriter fileWriter;
-    private Map<Integer, Long> baseCounts;
-    private long sequenceCount;
-    private final FastaSynchronizer sync;
+    private static final int chunkSize = 64 * 1024;
+    private static final int queueCapacity = 4;
+    private static final int maxFreeChunks = 2;
+    private static final LineChunk endOfFile = new LineChunk(0);
 
+    private final FastaScanner scanner;
+    private final FastaResult result;
+    private final FastaResult chunkResult;
+    private final FastaProgress progress;
+    private final boolean trackConsumed;
+    private final MemoryBudget budget;
+    private final AtomicLong bufferedBytes;
+    private final FileMetrics metrics;
+    private final BlockingQueue<LineChunk> chunks;
+    private final Queue<LineChunk> freeChunks;
+    private final int fileNumber;
+
+    private LineChunk currentChunk;
+    private long bytesReported;
+    private long bytesCounted;
+    private final FastaResult consumed;
+    private long consumedOffset;
+    private volatile boolean completed;
 
     /**
      * Constructs an instance of {@link FastaFileWorker} and adds it to the
      * {@link FastaSynchronizer} tasks list.
      *
      * @param sync synchronizer to write sequences in right order
-     * @param fileReader buffered reader of .fasta file
-     * @param fileWriter buffered writer of {@value com.example.fasta.service.FastaFileService#sequenceFileName} file
+     * @param scanner scanner of .fasta file
+     * @param fileNumber number of the file starting from 1 in order of file names,
+     *                   0 to number files in order of adding to the synchronizer
+     * @param metrics metrics of the file, may be null
+     * @param options options shared by all workers of the job
      */
-    public FastaFileWorker(FastaSynchronizer sync, BufferedReader fileReader, BufferedWriter fileWriter) {
-        this.fileReader = fileReader;
-        this.fileWriter = fileWriter;
-        this.baseCounts = new TreeMap<>();
-        this.sequenceCount = 0;
-        this.sync = sync;
-        this.sync.add(this);
+    public FastaFileWorker(FastaSynchronizer sync, FastaScanner scanner, int fileNumber, FileMetrics metrics,
+                           WorkerOptions options) {
+        Supplier<SequenceStats> statsFactory = options.getStatsFactory();
+        this.scanner = scanner;
+        this.result = new FastaResult(statsFactory != null ? statsFactory.get() : null);
+        this.progress = options.getProgress();
+        this.trackConsumed = options.isTrackConsumed();
+        this.chunkResult = progress != null && !trackConsumed ? new FastaResult() : result;
+        this.bytesReported = scanner.getBytesRead();
+        this.consumed = new FastaResult();
+        this.consumedOffset = scanner.getBytesRead();
+        this.budget = options.getBudget();
+        this.bufferedBytes = new AtomicLong();
+        this.metrics = metrics != null ? metrics : new FileMetrics(new MetricsRegistry(), "");
+        this.bytesCounted = scanner.getBytesRead();
+        this.chunks = budget != null ? new LinkedBlockingQueue<>() : new ArrayBlockingQueue<>(queueCapacity);
+        this.freeChunks = new ConcurrentLinkedQueue<>();
+        int task = sync.add(this);
+        this.fileNumber = fileNumber > 0 ? fileNumber : task + 1;
     }
 
     /**
-     * Runs in separate trade, reads a .fasta file, processes the results,
-     * and writes sequences to a {@value com.example.fasta.service.FastaFileService#sequenceFileName} file in right order.
+     * Runs in separate thread, reads a .fasta file, processes the results
+     * and passes sequence lines to the merger in chunks.
      *
      * @return result of reading file
      */
     @Override
     public FastaResult call() {
-        synchronized (sync) {
-            fileReader.lines()
-                    .filter(line -> !line.isEmpty() && !line.startsWith(descriptionPrefix))
-                    .forEach(line -> {
-                        try {
-                            while (!sync.isMyTurn(this)) {
-                                sync.wait();
-                            }
-                            if (sync.isRowChanged()) {
-                                fileWriter.append("\n>")
-                                        .append(String.valueOf(sync.getCurrentRowNum()))
-                                        .append("\n");
-                            }
-                            fileWriter.append(line);
-                            processLine(line);
-                            sync.moveOrder();
-                            sync.notifyAll();
-                        } catch (InterruptedException | IOException e) {
-                            log.severe("Something went wrong while processing .fasta file: " + e.getMessage());
-                        }
-                    });
-            sync.remove(this);
+        boolean interrupted = false;
+        try (FastaScanner in = scanner) {
+            LineChunk chunk = obtainChunk();
+            while (read(in, chunk)) {
+                processChunk(chunk);
+                long start = System.nanoTime();
+                reserve(chunk);
+                put(chunk);
+                metrics.getHandoffWait().recordSince(start);
+                chunk = obtainChunk();
+            }
+            FastaFileCounter.countEnd(result.getStats());
+            if (progress != null) {
+                progress.fileDone(in.getBytesRead() - bytesReported);
+            }
+            completed = true;
+        } catch (InterruptedException e) {
+            interrupted = true;
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            log.severe("Something went wrong while processing .fasta file: " + e.getMessage());
+        } finally {
+            if (!interrupted) {
+                putEndOfFile();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the chunk containing the next unread line fragment of the file.
+     * The previous chunk is released once all of its fragments are read.
+     * Must be called by the merger thread only.
+     *
+     * @return chunk with unread fragments or null if the file has no lines left
+     * @throws InterruptedException if interrupted while waiting for the chunk
+     */
+    LineChunk nextChunk() throws InterruptedException {
+        while (currentChunk == null || !currentChunk.hasNext()) {
+            if (currentChunk == endOfFile) {
+                return null;
+            }
+            if (currentChunk != null) {
+                if (trackConsumed) {
+                    FastaResult.merge(consumed, currentChunk.counts());
+                }
+                release(currentChunk);
+            }
+            currentChunk = chunks.poll();
+            if (currentChunk == null) {
+                long start = System.nanoTime();
+                currentChunk = chunks.take();
+                metrics.getMergerWait().recordSince(start);
+            }
+        }
+        return currentChunk;
+    }
+
+    /**
+     * Registers that the merger has written the complete line. Must be called by the merger thread only.
+     *
+     * @param chunk chunk containing the last fragment of the line
+     * @param line index of the fragment
+     */
+    void lineConsumed(LineChunk chunk, int line) {
+        consumedOffset = chunk.offset() + chunk.end(line);
+    }
+
+    /**
+     * Must be called by the merger thread only, for example from {@link CheckpointHandler}.
+     *
+     * @return offset in the decompressed file after the last line written by the merger
+     */
+    public long getConsumedOffset() {
+        return consumedOffset;
+    }
+
+    /**
+     * Must be called by the merger thread only, for example from {@link CheckpointHandler}.
+     * Consumed lines are tracked only if the worker is constructed with this option.
+     *
+     * @return counts of the lines written by the merger
+     */
+    public FastaResult getConsumedResult() {
+        FastaResult result = FastaResult.merge(new FastaResult(), consumed);
+        LineChunk chunk = currentChunk;
+        if (chunk != null && chunk != endOfFile) {
+            for (int line = 0; line < chunk.position(); line++) {
+                result.countBases(chunk.data(), chunk.start(line), chunk.end(line));
+                if (chunk.isComplete(line)) {
+                    result.countSequence();
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return number of the file starting from 1 in order of file names
+     */
+    public int getFileNumber() {
+        return fileNumber;
+    }
+
+    /**
+     * @return true if the whole file has been read without errors
+     */
+    public boolean isCompleted() {
+        return completed;
+    }
+
+    /**
+     * @return number of bytes of chunks read by this worker and not released by the merger yet
+     */
+    public long getBufferedBytes() {
+        return bufferedBytes.get();
+    }
+
+    private boolean read(FastaScanner in, LineChunk chunk) throws IOException {
+        long start = System.nanoTime();
+        boolean hasLines = in.next(chunk);
+        metrics.getRead().recordSince(start);
+        long bytesRead = in.getBytesRead();
+        metrics.getBytesRead().add(bytesRead - bytesCounted);
+        bytesCounted = bytesRead;
+        return hasLines;
+    }
+
+    private void reserve(LineChunk chunk) throws InterruptedException {
+        long size = chunk.memorySize();
+        if (budget != null) {
+            budget.acquire(size, () -> bufferedBytes.get() == 0);
+        }
+        bufferedBytes.addAndGet(size);
+    }
+
+    private void release(LineChunk chunk) {
+        long size = chunk.memorySize();
+        bufferedBytes.addAndGet(-size);
+        if (budget != null) {
+            budget.release(size);
+        }
+        if (budget == null || freeChunks.size() < maxFreeChunks) {
+            freeChunks.offer(chunk);
+        }
+    }
+
+    private LineChunk obtainChunk() {
+        LineChunk chunk = freeChunks.poll();
+        return chunk != null ? chunk : new LineChunk(chunkSize);
+    }
+
+    private void processChunk(LineChunk chunk) {
+        FastaResult counts = chunkResult;
+        if (trackConsumed) {
+            counts = chunk.counts();
+            counts.clear();
+        }
+        byte[] data = chunk.data();
+        long bases = 0;
+        long lines = 0;
+        for (int line = 0; line < chunk.lineCount(); line++) {
+            counts.countBases(data, chunk.start(line), chunk.end(line));
+            bases += chunk.end(line) - chunk.start(line);
+            if (chunk.isComplete(line)) {
+                counts.countSequence();
+                lines++;
+            }
+        }
+        metrics.getBases().add(bases);
+        metrics.getLines().add(lines);
+        FastaFileCounter.count(chunk, result.getStats());
+        if (counts != result) {
+            FastaResult.merge(result, counts);
+            if (progress != null) {
+                long bytesRead = scanner.getBytesRead();
+                progress.add(counts, bytesRead - bytesReported);
+                bytesReported = bytesRead;
+            }
+            if (!trackConsumed) {
+                counts.clear();
+            }
         }
-        return new FastaResult(baseCounts, sequenceCount);
     }
 
-    private void processLine(String line) {
-        sequenceCount++;
-        line.chars().forEach(c -> baseCounts.compute(Character.toUpperCase(c), (key, val) -> val != null ? val + 1 : 1));
+    private void put(LineChunk chunk) throws InterruptedException {
+        ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+            private boolean done;
+
+            @Override
+            public boolean block() throws InterruptedException {
+                if (!done) {
+                    chunks.put(chunk);
+                    done = true;
+                }
+                return true;
+            }
+
+            @Override
+            public boolean isReleasable() {
+                return done || (done = chunks.offer(chunk));
+            }
+        });
+    }
+
+    private void putEndOfFile() {
+        try {
+            put(endOfFile);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 
 }
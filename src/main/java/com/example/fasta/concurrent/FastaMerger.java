@@ -0,0 +1,98 @@
+package com.example.fasta.concurrent;
+
+import com.example.fasta.io.FastaRecordWriter;
+import com.example.fasta.io.LineChunk;
+import com.example.fasta.io.RecordWriter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Merges sequence lines provided by {@link FastaFileWorker}s
+ * into {@value com.example.fasta.service.FastaFileService#sequenceFileName} in right order.
+ * Each row contains the next line of every file that still has lines, in order of file names.
+ * Lines are passed as raw bytes straight from the chunks of the workers to {@link RecordWriter},
+ * which defines the layout of records.
+ *
+ * @author rdanilov
+ * @since 21.10.2018
+ */
+public class FastaMerger {
+
+    private static final int checkpointCheckMask = 1023;
+
+    private final FastaSynchronizer sync;
+    private final RecordWriter writer;
+    private final CheckpointHandler checkpointHandler;
+    private final long checkpointInterval;
+
+    /**
+     * Constructs an instance of {@link FastaMerger} writing one record per row after the already written
+     * description of the first row
+     *
+     * @param sync synchronizer containing workers in right order
+     * @param out output stream of {@value com.example.fasta.service.FastaFileService#sequenceFileName} file
+     */
+    public FastaMerger(FastaSynchronizer sync, OutputStream out) {
+        this(sync, new FastaRecordWriter(out, true, null), null, 0);
+    }
+
+    /**
+     * Constructs an instance of {@link FastaMerger} which periodically passes its position to the handler.
+     *
+     * @param sync synchronizer containing workers in right order
+     * @param writer writer of records of {@value com.example.fasta.service.FastaFileService#sequenceFileName}
+     * @param checkpointHandler handler of checkpoints, may be null
+     * @param checkpointInterval minimal interval between checkpoints in milliseconds
+     */
+    public FastaMerger(FastaSynchronizer sync, RecordWriter writer, CheckpointHandler checkpointHandler,
+                       long checkpointInterval) {
+        this.sync = sync;
+        this.writer = writer;
+        this.checkpointHandler = checkpointHandler;
+        this.checkpointInterval = TimeUnit.MILLISECONDS.toNanos(checkpointInterval);
+    }
+
+    /**
+     * Takes lines from workers one by one and writes them until all workers are finished.
+     * A line split into several fragments is written completely before the order is moved.
+     * Checkpoints are made only while the writer is resumable or a new row is about to start.
+     *
+     * @throws IOException if unable to write into file
+     * @throws InterruptedException if interrupted while waiting for the next line
+     */
+    public void merge() throws IOException, InterruptedException {
+        long nextCheckpoint = System.nanoTime() + checkpointInterval;
+        long lines = 0;
+        boolean checkpointDue = false;
+        while (!sync.isEmpty()) {
+            FastaFileWorker worker = sync.current();
+            LineChunk chunk = worker.nextChunk();
+            if (chunk == null) {
+                sync.removeCurrent();
+                continue;
+            }
+            int line = chunk.next();
+            if (sync.isRowChanged()) {
+                writer.startRow(sync.getCurrentRowNum());
+            }
+            writer.write(worker.getFileNumber(), chunk, line);
+            if (chunk.isComplete(line)) {
+                worker.lineConsumed(chunk, line);
+                sync.moveOrder();
+                if (checkpointHandler != null && (++lines & checkpointCheckMask) == 0
+                        && System.nanoTime() - nextCheckpoint >= 0) {
+                    checkpointDue = true;
+                }
+                if (checkpointDue && (writer.isResumable() || sync.hasRowChanged())) {
+                    writer.flush();
+                    checkpointHandler.checkpoint(sync.position());
+                    nextCheckpoint = System.nanoTime() + checkpointInterval;
+                    checkpointDue = false;
+                }
+            }
+        }
+        writer.flush();
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.fasta.concurrent;
+
+import com.example.fasta.model.FastaResult;
+
+/**
+ * Running totals of all {@link FastaFileWorker}s. Workers add counts of every processed chunk,
+ * so a consistent snapshot of the whole run can be taken at any moment.
+ *
+ * @author rdanilov
+ * @since 21.10.2018
+ */
+public class FastaProgress {
+
+    private final int filesCount;
+    private final FastaResult result;
+    private int filesDone;
+    private long bytesProcessed;
+
+    /**
+     * Constructs an instance of {@link FastaProgress}
+     *
+     * @param filesCount number of files to be processed
+     */
+    public FastaProgress(int filesCount) {
+        this.filesCount = filesCount;
+        this.result = new FastaResult();
+    }
+
+    /**
+     * Adds counts of a processed chunk.
+     *
+     * @param chunkResult counts of the chunk
+     * @param bytes number of decompressed bytes read for the chunk
+     */
+    synchronized void add(FastaResult chunkResult, long bytes) {
+        FastaResult.merge(result, chunkResult);
+        bytesProcessed += bytes;
+    }
+
+    /**
+     * Registers that one more file is processed completely.
+     *
+     * @param bytes number of decompressed bytes read after the last chunk
+     */
+    synchronized void fileDone(long bytes) {
+        filesDone++;
+        bytesProcessed += bytes;
+    }
+
+    /**
+     * @return copy of current totals
+     */
+    public synchronized Snapshot snapshot() {
+        return new Snapshot(filesCount, filesDone, bytesProcessed, FastaResult.merge(new FastaResult(), result));
+    }
+
+    /**
+     * Totals of the run at some moment.
+     */
+    public static class Snapshot {
+
+        private final int filesCount;
+        private final int filesDone;
+        private final long bytesProcessed;
+        private final FastaResult result;
+
+        Snapshot(int filesCount, int filesDone, long bytesProcessed, FastaResult result) {
+            this.filesCount = filesCount;
+            this.filesDone = filesDone;
+            this.bytesProcessed = bytesProcessed;
+            this.result = result;
+        }
+
+        /**
+         * @return number of files to be processed
+         */
+        public int getFilesCount() {
+            return filesCount;
+        }
+
+        /**
+         * @return number of files processed completely
+         */
+        public int getFilesDone() {
+            return filesDone;
+        }
+
+        /**
+         * @return number of decompressed bytes processed
+         */
+        public long getBytesProcessed() {
+            return bytesProcessed;
+        }
+
+        /**
+         * @return counts of sequences and bases processed
+         */
+        public FastaResult getResult() {
+            return result;
+        }
+    }
+}
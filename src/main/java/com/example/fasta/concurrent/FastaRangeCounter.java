@@ -0,0 +1,123 @@
+package com.example.fasta.concurrent;
+
+import com.example.fasta.io.FastaScanner;
+import com.example.fasta.io.LineChunk;
+import com.example.fasta.io.LineRangeInputStream;
+import com.example.fasta.metrics.FileMetrics;
+import com.example.fasta.model.FastaResult;
+import com.example.fasta.model.SequenceStats;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Supplier;
+
+/**
+ * Task counting bases and sequences of one .fasta file split into byte ranges of its uncompressed data.
+ * Ranges are halved recursively and counted in parallel in {@link java.util.concurrent.ForkJoinPool},
+ * every range is read by its own stream and counts of ranges are merged by {@link FastaResult#merge}.
+ * Every line is counted by the range where it starts, see {@link LineRangeInputStream},
+ * so the result is the same as the one of {@link FastaFileCounter}. If sequence statistics are collected,
+ * every record is read by the range where its description starts, so records aren't split between ranges.
+ *
+ * @author rdanilov
+ * @since 21.10.2018
+ */
+public class FastaRangeCounter extends RecursiveTask<FastaResult> {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int chunkSize = 64 * 1024;
+
+    /**
+     * Opens uncompressed data of the file at the given offset
+     */
+    public interface RangeOpener {
+
+        /**
+         * @param offset offset in the uncompressed data
+         * @return stream positioned at the offset
+         * @throws IOException if unable to open the file
+         */
+        InputStream open(long offset) throws IOException;
+    }
+
+    private final RangeOpener opener;
+    private final long[] bounds;
+    private final int from;
+    private final int to;
+    private final FileMetrics metrics;
+    private final Supplier<SequenceStats> statsFactory;
+
+    /**
+     * Constructs an instance of {@link FastaRangeCounter} counting all ranges
+     *
+     * @param opener opener of the file
+     * @param bounds offsets of the ranges in ascending order, the first one is 0 and the last one
+     *               is the size of the uncompressed data
+     * @param metrics metrics of the file
+     */
+    public FastaRangeCounter(RangeOpener opener, long[] bounds, FileMetrics metrics) {
+        this(opener, bounds, metrics, null);
+    }
+
+    /**
+     * Constructs an instance of {@link FastaRangeCounter} counting all ranges and collecting sequence statistics
+     *
+     * @param opener opener of the file
+     * @param bounds offsets of the ranges in ascending order, the first one is 0 and the last one
+     *               is the size of the uncompressed data
+     * @param metrics metrics of the file
+     * @param statsFactory factory of sequence statistics, null if statistics aren't collected
+     */
+    public FastaRangeCounter(RangeOpener opener, long[] bounds, FileMetrics metrics,
+                             Supplier<SequenceStats> statsFactory) {
+        this(opener, bounds, 0, bounds.length - 1, metrics, statsFactory);
+    }
+
+    private FastaRangeCounter(RangeOpener opener, long[] bounds, int from, int to, FileMetrics metrics,
+                              Supplier<SequenceStats> statsFactory) {
+        this.opener = opener;
+        this.bounds = bounds;
+        this.from = from;
+        this.to = to;
+        this.metrics = metrics;
+        this.statsFactory = statsFactory;
+    }
+
+    @Override
+    protected FastaResult compute() {
+        if (to - from <= 1) {
+            try {
+                return countRange(bounds[from], bounds[to]);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        int middle = (from + to) >>> 1;
+        FastaRangeCounter left = new FastaRangeCounter(opener, bounds, from, middle, metrics, statsFactory);
+        left.fork();
+        FastaResult result = new FastaRangeCounter(opener, bounds, middle, to, metrics, statsFactory).compute();
+        return FastaResult.merge(result, left.join());
+    }
+
+    private FastaResult countRange(long start, long end) throws IOException {
+        FastaResult result = new FastaResult(statsFactory != null ? statsFactory.get() : null);
+        InputStream in = new LineRangeInputStream(opener.open(Math.max(0, start - 1)), start, end,
+                statsFactory != null);
+        try (FastaScanner scanner = new FastaScanner(in, start)) {
+            LineChunk chunk = new LineChunk(chunkSize);
+            long readStart = System.nanoTime();
+            while (scanner.next(chunk)) {
+                metrics.getRead().recordSince(readStart);
+                FastaFileCounter.count(chunk, result, metrics);
+                FastaFileCounter.count(chunk, result.getStats());
+                readStart = System.nanoTime();
+            }
+            FastaFileCounter.countEnd(result.getStats());
+            metrics.getBytesRead().add(scanner.getBytesRead() - start);
+        }
+        return result;
+    }
+}
@@ -1,50 +1,102 @@
 package com.example.fasta.concurrent;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
- * Synchronizes threads in the order of file names specified as program arguments.
+ * Keeps the order of file names specified as program arguments.
+ * Used by {@link FastaMerger} to decide which worker provides the next line.
+ * Tasks are linked into a ring by their indices, so passing the turn and removing a finished task
+ * take constant time regardless of the number of files. Only the merger thread calls it,
+ * every worker hands its lines over through its own queue, so no other thread is woken by a turn change.
  *
  * @author rdanilov
  * @since 21.10.2018
  */
 public class FastaSynchronizer {
 
-    private List<FastaFileWorker> tasks;
-    private int currentTaskNum;
-    private int currentRowNum;
+    private static final int none = -1;
+
+    private final List<FastaFileWorker> tasks;
+    private final int startTaskNum;
+    private int[] next;
+    private int[] previous;
+    private int first;
+    private int last;
+    private int activeCount;
+    private int currentTask;
+    private long currentRowNum;
     private boolean rowChanged;
+    private volatile long handoffCount;
 
     /**
      * Constructs an instance of {@link FastaSynchronizer} with initial values
      */
     public FastaSynchronizer() {
+        this(0, 1, false);
+    }
+
+    /**
+     * Constructs an instance of {@link FastaSynchronizer} continuing from the saved {@link MergePosition}.
+     * Tasks must be added in the same order as active workers of the position.
+     *
+     * @param currentTaskNum index of the task whose line is written next
+     * @param currentRowNum current row number
+     * @param rowChanged true if description of the current row hasn't been written yet
+     */
+    public FastaSynchronizer(int currentTaskNum, long currentRowNum, boolean rowChanged) {
         this.tasks = new ArrayList<>();
-        this.rowChanged = false;
-        this.currentTaskNum = 0;
-        this.currentRowNum = 1;
+        this.next = new int[16];
+        this.previous = new int[16];
+        this.first = none;
+        this.last = none;
+        this.startTaskNum = currentTaskNum;
+        this.currentTask = none;
+        this.rowChanged = rowChanged;
+        this.currentRowNum = currentRowNum;
     }
 
     /**
-     * Adds task to tasks list to be run in particular order
+     * Adds task to the end of the ring to be run in particular order
      *
      * @param taskToAdd task to be added in task list
+     * @return number of tasks added before this one
      */
-    void add(FastaFileWorker taskToAdd) {
+    int add(FastaFileWorker taskToAdd) {
+        int task = tasks.size();
         tasks.add(taskToAdd);
+        if (task == next.length) {
+            next = Arrays.copyOf(next, task * 2);
+            previous = Arrays.copyOf(previous, task * 2);
+        }
+        previous[task] = last;
+        next[task] = none;
+        if (last != none) {
+            next[last] = task;
+        } else {
+            first = task;
+        }
+        last = task;
+        if (activeCount++ == startTaskNum) {
+            currentTask = task;
+        }
+        return task;
     }
 
     /**
-     * Checks if task is current task that should work now
-     *
-     * @param task thread to be checked
-     * @return result of the check
+     * @return task whose line should be written now
      */
-    boolean isMyTurn(FastaFileWorker task) {
-        return tasks.get(currentTaskNum).equals(task);
+    FastaFileWorker current() {
+        return tasks.get(currentTask);
     }
 
+    /**
+     * @return true if there are no tasks left
+     */
+    boolean isEmpty() {
+        return activeCount == 0;
+    }
 
     /**
      * Moves the ability to work to the next task.
@@ -52,34 +104,53 @@ public class FastaSynchronizer {
      * and current row number is incremented
      */
     void moveOrder() {
-        if (!tasks.isEmpty()) {
-            int nextTaskNum = currentTaskNum + 1;
-            rowChanged = nextTaskNum == tasks.size();
+        if (activeCount > 0) {
+            handoffCount++;
+            rowChanged = currentTask == last;
             if (rowChanged) {
                 currentRowNum++;
+                currentTask = first;
+            } else {
+                currentTask = next[currentTask];
             }
-            currentTaskNum = nextTaskNum % tasks.size();
         }
     }
 
     /**
-     * Remove task from tasks list. It means that the task has completed its execution.
-     * After the task is removed, all elements after the task are shifting left and we must return back
-     * to previous task if only current task isn't the first task in the tasks list.
-     *
-     * @param taskToRemove task to be removed from tasks list
+     * Removes current task from the ring. It means that the task has no lines left.
+     * The turn passes to the next task. If the removed task was the last one in the row,
+     * the order wraps to the first task and row change event is registered.
      */
-    void remove(FastaFileWorker taskToRemove) {
-        tasks.remove(taskToRemove);
-        if (currentTaskNum != 0) {
-            currentTaskNum--;
+    void removeCurrent() {
+        int removed = currentTask;
+        int before = previous[removed];
+        int after = next[removed];
+        if (before != none) {
+            next[before] = after;
+        } else {
+            first = after;
+        }
+        if (after != none) {
+            previous[after] = before;
+        } else {
+            last = before;
+        }
+        activeCount--;
+        if (activeCount == 0) {
+            currentTask = none;
+        } else if (after == none) {
+            currentTask = first;
+            rowChanged = true;
+            currentRowNum++;
+        } else {
+            currentTask = after;
         }
     }
 
     /**
      * Checks if row has been changed since the last {{@link #moveOrder()}}.
-     * After check the boolean flag is set to false, so the only one thread
-     * can write a new description line
+     * After check the boolean flag is set to false, so the description line
+     * is written only once
      *
      * @return result of the check
      */
@@ -91,10 +162,46 @@ public class FastaSynchronizer {
         return false;
     }
 
+    /**
+     * Unlike {@link #isRowChanged()} the flag stays set.
+     *
+     * @return true if row has been changed and description of the new row hasn't been written yet
+     */
+    boolean hasRowChanged() {
+        return rowChanged;
+    }
+
+    /**
+     * Walks the ring, so it takes time proportional to the number of active tasks.
+     *
+     * @return current position to continue merging from
+     */
+    MergePosition position() {
+        List<FastaFileWorker> activeTasks = new ArrayList<>(activeCount);
+        int currentTaskNum = 0;
+        for (int task = first; task != none; task = next[task]) {
+            if (task == currentTask) {
+                currentTaskNum = activeTasks.size();
+            }
+            activeTasks.add(tasks.get(task));
+        }
+        return new MergePosition(activeTasks, currentTaskNum, currentRowNum, rowChanged);
+    }
+
+    /**
+     * Incremented only by the thread moving the order, so the volatile field is enough
+     * for metrics and the report read from other threads.
+     *
+     * @return number of turns passed from one task to the next one
+     */
+    public long getHandoffCount() {
+        return handoffCount;
+    }
+
     /**
      * @return current row number to be write into file as description row
      */
-    int getCurrentRowNum() {
+    long getCurrentRowNum() {
         return currentRowNum;
     }
 }
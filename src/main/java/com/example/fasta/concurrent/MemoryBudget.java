@@ -0,0 +1,150 @@
+package com.example.fasta.concurrent;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Limit of memory used by chunks buffered between all {@link FastaFileWorker}s and {@link FastaMerger}.
+ * Workers which are too far ahead wait until the merger releases chunks. A worker having no buffered
+ * chunks may always exceed the limit by one chunk, otherwise the file whose line is written next
+ * could wait for the files which are waiting for it.
+ *
+ * @author rdanilov
+ * @since 21.10.2018
+ */
+public class MemoryBudget {
+
+    private final long limit;
+    private final ReentrantLock lock;
+    private final Condition released;
+
+    private long usedBytes;
+    private long peakBytes;
+    private long waitCount;
+
+    /**
+     * Constructs an instance of {@link MemoryBudget}
+     *
+     * @param limit maximal number of bytes of buffered chunks
+     */
+    public MemoryBudget(long limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Memory budget must be positive");
+        }
+        this.limit = limit;
+        this.lock = new ReentrantLock();
+        this.released = lock.newCondition();
+    }
+
+    /**
+     * Takes the given number of bytes from the budget, waiting until they are released by other chunks.
+     * Waiting is managed by {@link ForkJoinPool}, so the pool may compensate blocked workers.
+     *
+     * @param bytes number of bytes to take
+     * @param unconditional checked on every attempt, true if the bytes may be taken regardless of the limit
+     * @throws InterruptedException if interrupted while waiting
+     */
+    void acquire(long bytes, BooleanSupplier unconditional) throws InterruptedException {
+        ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+            private boolean done;
+
+            @Override
+            public boolean block() throws InterruptedException {
+                lock.lock();
+                try {
+                    if (!done && !(done = tryAcquire(bytes, unconditional))) {
+                        waitCount++;
+                        while (!(done = tryAcquire(bytes, unconditional))) {
+                            released.await();
+                        }
+                    }
+                } finally {
+                    lock.unlock();
+                }
+                return true;
+            }
+
+            @Override
+            public boolean isReleasable() {
+                if (done) {
+                    return true;
+                }
+                lock.lock();
+                try {
+                    return done = tryAcquire(bytes, unconditional);
+                } finally {
+                    lock.unlock();
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns the given number of bytes to the budget and wakes up waiting workers.
+     *
+     * @param bytes number of bytes to return
+     */
+    void release(long bytes) {
+        lock.lock();
+        try {
+            usedBytes -= bytes;
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return maximal number of bytes of buffered chunks
+     */
+    public long getLimit() {
+        return limit;
+    }
+
+    /**
+     * @return number of bytes of chunks buffered now
+     */
+    public long getUsedBytes() {
+        lock.lock();
+        try {
+            return usedBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return maximal number of bytes of chunks buffered at once
+     */
+    public long getPeakBytes() {
+        lock.lock();
+        try {
+            return peakBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return number of times a worker had to wait for the budget
+     */
+    public long getWaitCount() {
+        lock.lock();
+        try {
+            return waitCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean tryAcquire(long bytes, BooleanSupplier unconditional) {
+        if (usedBytes + bytes > limit && !unconditional.getAsBoolean()) {
+            return false;
+        }
+        usedBytes += bytes;
+        peakBytes = Math.max(peakBytes, usedBytes);
+        return true;
+    }
+}
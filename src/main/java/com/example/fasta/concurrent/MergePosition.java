@@ -0,0 +1,55 @@
+package com.example.fasta.concurrent;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Position of {@link FastaMerger} between two lines. Together with consumed offsets of the workers
+ * it is enough to continue merging from the same place.
+ *
+ * @author rdanilov
+ * @since 21.10.2018
+ */
+public class MergePosition {
+
+    private final List<FastaFileWorker> activeWorkers;
+    private final int currentTaskNum;
+    private final long currentRowNum;
+    private final boolean rowChanged;
+
+    MergePosition(List<FastaFileWorker> activeWorkers, int currentTaskNum, long currentRowNum, boolean rowChanged) {
+        this.activeWorkers = Collections.unmodifiableList(new ArrayList<>(activeWorkers));
+        this.currentTaskNum = currentTaskNum;
+        this.currentRowNum = currentRowNum;
+        this.rowChanged = rowChanged;
+    }
+
+    /**
+     * @return workers which haven't been removed from the order yet, in right order
+     */
+    public List<FastaFileWorker> getActiveWorkers() {
+        return activeWorkers;
+    }
+
+    /**
+     * @return index of the active worker whose line is written next
+     */
+    public int getCurrentTaskNum() {
+        return currentTaskNum;
+    }
+
+    /**
+     * @return current row number
+     */
+    public long getCurrentRowNum() {
+        return currentRowNum;
+    }
+
+    /**
+     * @return true if description of the current row hasn't been written yet
+     */
+    public boolean isRowChanged() {
+        return rowChanged;
+    }
+}
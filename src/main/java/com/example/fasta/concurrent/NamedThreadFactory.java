@@ -0,0 +1,33 @@
+package com.example.fasta.concurrent;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates daemon threads with names made of the given prefix and a sequence number,
+ * so helper pools never keep the application running.
+ *
+ * @author rdanilov
+ * @since 21.10.2018
+ */
+public class NamedThreadFactory implements ThreadFactory {
+
+    private final String prefix;
+    private final AtomicInteger threadNum = new AtomicInteger();
+
+    /**
+     * Constructs an instance of {@link NamedThreadFactory}
+     *
+     * @param prefix prefix of thread names
+     */
+    public NamedThreadFactory(String prefix) {
+        this.prefix = prefix;
+    }
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, prefix + "-" + threadNum.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.fasta.concurrent;
+
+import com.example.fasta.model.SequenceStats;
+
+import java.util.function.Supplier;
+
+/**
+ * Options of {@link FastaFileWorker}s shared by all workers of a job. Default values keep
+ * a worker reading its file without progress, checkpoints, memory budget or sequence statistics.
+ *
+ * @author rdanilov
+ * @since 21.10.2018
+ */
+public class WorkerOptions {
+
+    private FastaProgress progress;
+    private boolean trackConsumed;
+    private MemoryBudget budget;
+    private Supplier<SequenceStats> statsFactory;
+
+    /**
+     * @return running totals of all workers, null if progress isn't reported
+     */
+    public FastaProgress getProgress() {
+        return progress;
+    }
+
+    /**
+     * @param progress running totals of all workers, may be null
+     * @return this options
+     */
+    public WorkerOptions setProgress(FastaProgress progress) {
+        this.progress = progress;
+        return this;
+    }
+
+    /**
+     * @return true if counts and offset of the lines written by the merger are tracked
+     */
+    public boolean isTrackConsumed() {
+        return trackConsumed;
+    }
+
+    /**
+     * If consumed lines are tracked, counts of every chunk are kept with the chunk, so counts
+     * of the lines written by the merger are known for checkpoints.
+     *
+     * @param trackConsumed true to track counts and offset of the lines written by the merger
+     * @return this options
+     */
+    public WorkerOptions setTrackConsumed(boolean trackConsumed) {
+        this.trackConsumed = trackConsumed;
+        return this;
+    }
+
+    /**
+     * @return limit of memory of chunks buffered by all workers, null if there is no limit
+     */
+    public MemoryBudget getBudget() {
+        return budget;
+    }
+
+    /**
+     * @param budget limit of memory of chunks buffered by all workers, may be null
+     * @return this options
+     */
+    public WorkerOptions setBudget(MemoryBudget budget) {
+        this.budget = budget;
+        return this;
+    }
+
+    /**
+     * @return factory of sequence statistics, null if statistics aren't collected
+     */
+    public Supplier<SequenceStats> getStatsFactory() {
+        return statsFactory;
+    }
+
+    /**
+     * Statistics are collected from all lines read, they aren't tracked for lines written by the merger.
+     *
+     * @param statsFactory factory of sequence statistics, may be null
+     * @return this options
+     */
+    public WorkerOptions setStatsFactory(Supplier<SequenceStats> statsFactory) {
+        this.statsFactory = statsFactory;
+        return this;
+    }
+}
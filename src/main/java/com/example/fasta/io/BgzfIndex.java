@@ -0,0 +1,169 @@
+package com.example.fasta.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Compressed and uncompressed offsets of all blocks of BGZF file. Offsets are collected from
+ * headers and footers of the blocks, so no block is inflated, or from .gzi index written by
+ * {@link BgzfOutputStream#writeIndex}. Used to start reading the file at any uncompressed offset.
+ *
+ * @author rdanilov
+ * @since 21.10.2018
+ */
+public class BgzfIndex {
+
+    private static final int headerSize = 12;
+    private static final int footerSize = 8;
+
+    private long[] compressedOffsets;
+    private long[] uncompressedOffsets;
+    private int blockCount;
+    private long uncompressedSize;
+
+    private BgzfIndex() {
+        this.compressedOffsets = new long[64];
+        this.uncompressedOffsets = new long[64];
+    }
+
+    /**
+     * Reads offsets of all blocks of BGZF file.
+     *
+     * @param channel channel of the file
+     * @return index of the file
+     * @throws IOException if unable to read the file or it doesn't consist of BGZF blocks
+     */
+    public static BgzfIndex scan(FileChannel channel) throws IOException {
+        BgzfIndex index = new BgzfIndex();
+        ByteBuffer header = ByteBuffer.allocate(headerSize);
+        ByteBuffer extra = ByteBuffer.allocate(0xFFFF);
+        ByteBuffer footer = ByteBuffer.allocate(footerSize);
+        long size = channel.size();
+        long offset = 0;
+        while (offset < size) {
+            readFully(channel, header, offset);
+            byte[] bytes = header.array();
+            if ((bytes[0] & 0xFF) != 31 || (bytes[1] & 0xFF) != 139 || bytes[2] != 8 || bytes[3] != 4) {
+                throw new IOException("Not a BGZF block");
+            }
+            int extraLength = BgzfInputStream.readShort(bytes, 10);
+            extra.clear().limit(extraLength);
+            readFully(channel, extra, offset + headerSize);
+            int blockSize = BgzfInputStream.findBlockSize(extra.array(), 0, extraLength);
+            if (blockSize < headerSize + extraLength + footerSize) {
+                throw new IOException("Invalid size of BGZF block");
+            }
+            readFully(channel, footer, offset + blockSize - footerSize);
+            index.addBlock(offset, index.uncompressedSize);
+            index.uncompressedSize += BgzfInputStream.readInt(footer.array(), 4) & 0xFFFFFFFFL;
+            offset += blockSize;
+        }
+        return index;
+    }
+
+    /**
+     * Reads .gzi index containing compressed and uncompressed offsets of every block except the first one.
+     * Size of the uncompressed data isn't stored in the index, so it stays unknown.
+     *
+     * @param in stream of the index
+     * @return index of the file
+     * @throws IOException if unable to read the index
+     */
+    public static BgzfIndex read(InputStream in) throws IOException {
+        BgzfIndex index = new BgzfIndex();
+        byte[] entry = new byte[16];
+        readFully(in, entry, 8);
+        long count = readLong(entry, 0);
+        index.addBlock(0, 0);
+        for (long i = 0; i < count; i++) {
+            readFully(in, entry, 16);
+            index.addBlock(readLong(entry, 0), readLong(entry, 8));
+        }
+        index.uncompressedSize = -1;
+        return index;
+    }
+
+    /**
+     * @return number of blocks
+     */
+    public int getBlockCount() {
+        return blockCount;
+    }
+
+    /**
+     * @param block index of the block
+     * @return offset of the block in the file
+     */
+    public long getCompressedOffset(int block) {
+        return compressedOffsets[block];
+    }
+
+    /**
+     * @param block index of the block
+     * @return offset of the first byte of the block in the uncompressed data
+     */
+    public long getUncompressedOffset(int block) {
+        return uncompressedOffsets[block];
+    }
+
+    /**
+     * @return number of bytes of the uncompressed data, -1 if the index was read from .gzi
+     */
+    public long getUncompressedSize() {
+        return uncompressedSize;
+    }
+
+    /**
+     * @param uncompressedOffset offset in the uncompressed data
+     * @return index of the last block starting at or before the given offset
+     */
+    public int findBlock(long uncompressedOffset) {
+        int block = Arrays.binarySearch(uncompressedOffsets, 0, blockCount, uncompressedOffset);
+        if (block < 0) {
+            return Math.max(0, -block - 2);
+        }
+        while (block + 1 < blockCount && uncompressedOffsets[block + 1] == uncompressedOffset) {
+            block++;
+        }
+        return block;
+    }
+
+    private void addBlock(long compressedOffset, long uncompressedOffset) {
+        if (blockCount == compressedOffsets.length) {
+            compressedOffsets = Arrays.copyOf(compressedOffsets, blockCount * 2);
+            uncompressedOffsets = Arrays.copyOf(uncompressedOffsets, blockCount * 2);
+        }
+        compressedOffsets[blockCount] = compressedOffset;
+        uncompressedOffsets[blockCount] = uncompressedOffset;
+        blockCount++;
+    }
+
+    private static void readFully(InputStream in, byte[] buffer, int length) throws IOException {
+        int total = 0;
+        while (total < length) {
+            int n = in.read(buffer, total, length - total);
+            if (n < 0) {
+                throw new EOFException("Unexpected end of .gzi index");
+            }
+            total += n;
+        }
+    }
+
+    private static long readLong(byte[] bytes, int pos) {
+        return BgzfInputStream.readInt(bytes, pos) & 0xFFFFFFFFL
+                | (long) BgzfInputStream.readInt(bytes, pos + 4) << 32;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        buffer.rewind();
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of BGZF block");
+            }
+        }
+    }
+}
@@ -0,0 +1,380 @@
+package com.example.fasta.io;
+
+import com.example.fasta.metrics.MetricsRegistry;
+import com.example.fasta.metrics.Timer;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Input stream reading BGZF file. Sizes of blocks are known from their headers,
+ * so compressed blocks are read ahead and inflated in parallel by the given executor,
+ * while decoded bytes are returned in the original order. Blocks skipped completely
+ * are not inflated at all. Inflaters and buffers of blocks are taken from {@link CodecPool}.
+ *
+ * @author rdanilov
+ * @since 21.10.2018
+ */
+public class BgzfInputStream extends InputStream {
+
+    private static final int headerSize = 12;
+    private static final int footerSize = 8;
+
+    private final InputStream in;
+    private final ExecutorService inflaters;
+    private final int readAhead;
+    private final Deque<Block> blocks;
+    private final Queue<Block> freeBlocks;
+    private final CodecPool codecs;
+    private final boolean ownCodecs;
+    private final byte[] header;
+    private final Timer inflateTimer;
+    private final Timer inflateWaitTimer;
+
+    private Block current;
+    private int position;
+    private boolean eof;
+
+    /**
+     * Constructs an instance of {@link BgzfInputStream}
+     *
+     * @param in stream of compressed BGZF file
+     * @param inflaters executor inflating blocks
+     * @param readAhead number of blocks read and inflated ahead
+     */
+    public BgzfInputStream(InputStream in, ExecutorService inflaters, int readAhead) {
+        this(in, inflaters, readAhead, new MetricsRegistry());
+    }
+
+    /**
+     * Constructs an instance of {@link BgzfInputStream} recording time of block inflation
+     * and time of waiting for inflated blocks
+     *
+     * @param in stream of compressed BGZF file
+     * @param inflaters executor inflating blocks
+     * @param readAhead number of blocks read and inflated ahead
+     * @param metrics registry of metrics
+     */
+    public BgzfInputStream(InputStream in, ExecutorService inflaters, int readAhead, MetricsRegistry metrics) {
+        this(in, inflaters, readAhead, metrics, null);
+    }
+
+    /**
+     * Constructs an instance of {@link BgzfInputStream} taking inflaters and buffers from the shared pool
+     *
+     * @param in stream of compressed BGZF file
+     * @param inflaters executor inflating blocks
+     * @param readAhead number of blocks read and inflated ahead
+     * @param metrics registry of metrics
+     * @param codecs shared pool of inflaters and buffers, null to use a pool of this stream
+     */
+    public BgzfInputStream(InputStream in, ExecutorService inflaters, int readAhead, MetricsRegistry metrics,
+                           CodecPool codecs) {
+        this.in = in;
+        this.inflaters = inflaters;
+        this.readAhead = Math.max(1, readAhead);
+        this.blocks = new ArrayDeque<>();
+        this.freeBlocks = new ConcurrentLinkedQueue<>();
+        this.codecs = codecs != null ? codecs : new CodecPool();
+        this.ownCodecs = codecs == null;
+        this.header = new byte[headerSize];
+        this.inflateTimer = metrics.timer("input.bgzf.inflate");
+        this.inflateWaitTimer = metrics.timer("input.bgzf.inflateWait");
+    }
+
+    /**
+     * Checks if the given bytes start a BGZF block: gzip member with the only extra flag
+     * and {@code BC} extra subfield containing size of the block.
+     *
+     * @param bytes first bytes of the file
+     * @param length number of bytes available
+     * @return result of the check
+     */
+    public static boolean isBgzf(byte[] bytes, int length) {
+        if (length < headerSize || (bytes[0] & 0xFF) != 31 || (bytes[1] & 0xFF) != 139
+                || bytes[2] != 8 || bytes[3] != 4) {
+            return false;
+        }
+        int extraLength = readShort(bytes, 10);
+        return length >= headerSize + extraLength && findBlockSize(bytes, headerSize, extraLength) > 0;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureAvailable()) {
+            return -1;
+        }
+        return current.decoded[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!ensureAvailable()) {
+            return -1;
+        }
+        int n = Math.min(len, current.decodedLength - position);
+        System.arraycopy(current.decoded, position, b, off, n);
+        position += n;
+        return n;
+    }
+
+    /**
+     * Skips decoded bytes. Blocks whose bytes are all skipped are dropped without inflation,
+     * their sizes are taken from the block footers.
+     *
+     * @param n number of bytes to skip
+     * @return number of bytes skipped
+     * @throws IOException if unable to read the stream
+     */
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = 0;
+        while (skipped < n) {
+            if (current == null || position == current.decodedLength) {
+                if (blocks.isEmpty()) {
+                    long size = skipBlock(n - skipped);
+                    if (size >= 0) {
+                        skipped += size;
+                        continue;
+                    }
+                }
+                if (!ensureAvailable()) {
+                    break;
+                }
+            }
+            int k = (int) Math.min(n - skipped, current.decodedLength - position);
+            position += k;
+            skipped += k;
+        }
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return current != null ? current.decodedLength - position : 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (Block block : blocks) {
+            if (block.result.isDone()) {
+                release(block);
+            } else {
+                block.result.cancel(true);
+            }
+        }
+        blocks.clear();
+        if (current != null) {
+            release(current);
+            current = null;
+        }
+        Block block;
+        while ((block = freeBlocks.poll()) != null) {
+            release(block);
+        }
+        if (ownCodecs) {
+            codecs.close();
+        }
+        in.close();
+    }
+
+    private boolean ensureAvailable() throws IOException {
+        while (current == null || position == current.decodedLength) {
+            if (current != null) {
+                freeBlocks.offer(current);
+                current = null;
+            }
+            submitBlocks();
+            if (blocks.isEmpty()) {
+                return false;
+            }
+            Block next = blocks.poll();
+            if (next.result.isDone()) {
+                current = await(next);
+            } else {
+                long start = System.nanoTime();
+                current = await(next);
+                inflateWaitTimer.recordSince(start);
+            }
+            position = 0;
+        }
+        return true;
+    }
+
+    private void submitBlocks() throws IOException {
+        while (!eof && blocks.size() < readAhead) {
+            Block block = obtainBlock();
+            if (!readBlock(block)) {
+                freeBlocks.offer(block);
+                eof = true;
+                break;
+            }
+            submit(block);
+        }
+    }
+
+    private long skipBlock(long maxSkip) throws IOException {
+        if (eof) {
+            return -1;
+        }
+        Block block = obtainBlock();
+        if (!readBlock(block)) {
+            freeBlocks.offer(block);
+            eof = true;
+            return -1;
+        }
+        long size = readInt(block.compressed, block.compressedLength - 4) & 0xFFFFFFFFL;
+        if (size <= maxSkip) {
+            freeBlocks.offer(block);
+            return size;
+        }
+        submit(block);
+        return -1;
+    }
+
+    private Block obtainBlock() {
+        Block block = freeBlocks.poll();
+        return block != null ? block : new Block(codecs.obtainBuffer(), codecs.obtainBuffer());
+    }
+
+    private void release(Block block) {
+        codecs.release(block.compressed);
+        codecs.release(block.decoded);
+    }
+
+    private void submit(Block block) {
+        block.result = inflaters.submit(() -> inflate(block));
+        blocks.add(block);
+    }
+
+    private boolean readBlock(Block block) throws IOException {
+        int read = readFully(header, 0, headerSize);
+        if (read == 0) {
+            return false;
+        }
+        if (read < headerSize || (header[0] & 0xFF) != 31 || (header[1] & 0xFF) != 139
+                || header[2] != 8 || header[3] != 4) {
+            throw new IOException("Not a BGZF block");
+        }
+        int extraLength = readShort(header, 10);
+        byte[] compressed = block.compressed;
+        if (readFully(compressed, 0, extraLength) < extraLength) {
+            throw new EOFException("Unexpected end of BGZF block");
+        }
+        int blockSize = findBlockSize(compressed, 0, extraLength);
+        int remaining = blockSize - headerSize - extraLength;
+        if (blockSize <= 0 || remaining < footerSize) {
+            throw new IOException("Invalid size of BGZF block");
+        }
+        if (readFully(compressed, 0, remaining) < remaining) {
+            throw new EOFException("Unexpected end of BGZF block");
+        }
+        block.compressedLength = remaining;
+        return true;
+    }
+
+    private Block inflate(Block block) throws DataFormatException, IOException {
+        long start = System.nanoTime();
+        Inflater inflater = codecs.obtainInflater();
+        try {
+            int dataLength = block.compressedLength - footerSize;
+            int expectedCrc = readInt(block.compressed, dataLength);
+            int expectedSize = readInt(block.compressed, dataLength + 4);
+            inflater.setInput(block.compressed, 0, dataLength);
+            int size = 0;
+            while (!inflater.finished() && size < block.decoded.length) {
+                int n = inflater.inflate(block.decoded, size, block.decoded.length - size);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                size += n;
+            }
+            if (!inflater.finished() || size != expectedSize) {
+                throw new IOException("Corrupted BGZF block");
+            }
+            CRC32 crc = new CRC32();
+            crc.update(block.decoded, 0, size);
+            if ((int) crc.getValue() != expectedCrc) {
+                throw new IOException("CRC mismatch in BGZF block");
+            }
+            block.decodedLength = size;
+            return block;
+        } finally {
+            codecs.release(inflater);
+            inflateTimer.recordSince(start);
+        }
+    }
+
+    private int readFully(byte[] buffer, int off, int len) throws IOException {
+        int total = 0;
+        while (total < len) {
+            int n = in.read(buffer, off + total, len - total);
+            if (n < 0) {
+                break;
+            }
+            total += n;
+        }
+        return total;
+    }
+
+    private static Block await(Block block) throws IOException {
+        try {
+            block.result.get();
+            return block;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while inflating block");
+        } catch (ExecutionException e) {
+            throw new IOException("Unable to inflate block", e.getCause());
+        }
+    }
+
+    static int findBlockSize(byte[] extra, int off, int extraLength) {
+        int pos = off;
+        int end = off + extraLength;
+        while (pos + 4 <= end) {
+            int subfieldLength = readShort(extra, pos + 2);
+            if (extra[pos] == 'B' && extra[pos + 1] == 'C' && subfieldLength == 2 && pos + 6 <= end) {
+                return readShort(extra, pos + 4) + 1;
+            }
+            pos += 4 + subfieldLength;
+        }
+        return -1;
+    }
+
+    static int readShort(byte[] bytes, int pos) {
+        return (bytes[pos] & 0xFF) | (bytes[pos + 1] & 0xFF) << 8;
+    }
+
+    static int readInt(byte[] bytes, int pos) {
+        return readShort(bytes, pos) | readShort(bytes, pos + 2) << 16;
+    }
+
+    private static final class Block {
+        private final byte[] compressed;
+        private final byte[] decoded;
+        private int compressedLength;
+        private int decodedLength;
+        private Future<Block> result;
+
+        private Block(byte[] compressed, byte[] decoded) {
+            this.compressed = compressed;
+            this.decoded = decoded;
+        }
+    }
+}
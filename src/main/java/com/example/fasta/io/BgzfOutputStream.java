@@ -0,0 +1,417 @@
+package com.example.fasta.io;
+
+import com.example.fasta.concurrent.NamedThreadFactory;
+import com.example.fasta.metrics.Counter;
+import com.example.fasta.metrics.MetricsRegistry;
+import com.example.fasta.metrics.Timer;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Output stream writing BGZF file, a series of independent gzip members of at most 64 KiB each.
+ * Blocks are compressed in parallel and written in order, so the file is read by any gzip reader
+ * while compression uses several cores. Offsets of all blocks are kept and can be written
+ * as .gzi index to seek in the file. Blocks already present in the file can be restored to append to it.
+ * Deflaters and buffers are taken from {@link CodecPool}, compressors may be shared by several streams.
+ *
+ * @author rdanilov
+ * @since 21.10.2018
+ */
+public class BgzfOutputStream extends OutputStream implements BlockBoundaryOutput {
+
+    /**
+     * Maximum number of uncompressed bytes in one block
+     */
+    public static final int maxBlockInput = 0xff00;
+
+    private static final int maxBlockSize = 0x10000;
+    private static final int headerSize = 18;
+    private static final int footerSize = 8;
+    private static final byte[] eofBlock = {
+            31, (byte) 139, 8, 4, 0, 0, 0, 0, 0, (byte) 255, 6, 0, 66, 67, 2, 0, 27, 0, 3, 0, 0, 0, 0, 0, 0, 0, 0, 0
+    };
+
+    private final OutputStream out;
+    private final ExecutorService compressors;
+    private final boolean ownCompressors;
+    private final CodecPool codecs;
+    private final boolean ownCodecs;
+    private final int maxBlocksInFlight;
+    private final Deque<Future<byte[]>> blocksInFlight;
+    private final Timer compressTimer;
+    private final Timer writeWaitTimer;
+    private final Counter uncompressedBytes;
+
+    private byte[] buffer;
+    private int count;
+    private long compressedOffset;
+    private long uncompressedOffset;
+    private long[] blockOffsets;
+    private int blockCount;
+    private int writtenBlocks;
+    private boolean finished;
+
+    /**
+     * Constructs an instance of {@link BgzfOutputStream}
+     *
+     * @param out stream to write compressed blocks into
+     * @param threads number of threads used to compress blocks
+     */
+    public BgzfOutputStream(OutputStream out, int threads) {
+        this(out, threads, new MetricsRegistry());
+    }
+
+    /**
+     * Constructs an instance of {@link BgzfOutputStream} recording time of block compression,
+     * time of waiting for compressed blocks and number of uncompressed bytes
+     *
+     * @param out stream to write compressed blocks into
+     * @param threads number of threads used to compress blocks
+     * @param metrics registry of metrics
+     */
+    public BgzfOutputStream(OutputStream out, int threads, MetricsRegistry metrics) {
+        this(out, Executors.newFixedThreadPool(threads, new NamedThreadFactory("bgzf-compressor")), true,
+                threads, metrics, null);
+    }
+
+    /**
+     * Constructs an instance of {@link BgzfOutputStream} compressing blocks by the shared executor with
+     * deflaters and buffers of the shared pool. Neither of them is shut down when the stream is closed.
+     *
+     * @param out stream to write compressed blocks into
+     * @param compressors executor compressing blocks
+     * @param threads number of threads of the executor
+     * @param metrics registry of metrics
+     * @param codecs shared pool of deflaters and buffers
+     */
+    public BgzfOutputStream(OutputStream out, ExecutorService compressors, int threads, MetricsRegistry metrics,
+                            CodecPool codecs) {
+        this(out, compressors, false, threads, metrics, codecs);
+    }
+
+    private BgzfOutputStream(OutputStream out, ExecutorService compressors, boolean ownCompressors, int threads,
+                             MetricsRegistry metrics, CodecPool codecs) {
+        this.out = out;
+        this.compressors = compressors;
+        this.ownCompressors = ownCompressors;
+        this.codecs = codecs != null ? codecs : new CodecPool();
+        this.ownCodecs = codecs == null;
+        this.maxBlocksInFlight = threads * 2;
+        this.blocksInFlight = new ArrayDeque<>();
+        this.buffer = this.codecs.obtainBuffer();
+        this.blockOffsets = new long[64];
+        this.compressTimer = metrics.timer("output.bgzf.compress");
+        this.writeWaitTimer = metrics.timer("output.bgzf.writeWait");
+        this.uncompressedBytes = metrics.counter("output.bgzf.uncompressedBytes");
+        metrics.gauge("output.bgzf.blocksInFlight", blocksInFlight::size);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        buffer[count++] = (byte) b;
+        if (count == maxBlockInput) {
+            submitBlock();
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            int n = Math.min(len, maxBlockInput - count);
+            System.arraycopy(b, off, buffer, count, n);
+            count += n;
+            off += n;
+            len -= n;
+            if (count == maxBlockInput) {
+                submitBlock();
+            }
+        }
+    }
+
+    /**
+     * Writes all compressed blocks into the underlying stream. The last incomplete block
+     * is kept in the buffer, so flushing doesn't produce small blocks.
+     *
+     * @throws IOException if unable to write into the stream
+     */
+    @Override
+    public void flush() throws IOException {
+        writeBlocks(0);
+        out.flush();
+    }
+
+    /**
+     * Compresses the remaining data as a block, which may be smaller than usual,
+     * and writes all blocks into the underlying stream.
+     *
+     * @return number of bytes written into the underlying stream
+     * @throws IOException if unable to write into the stream
+     */
+    @Override
+    public long endBlock() throws IOException {
+        if (count > 0) {
+            submitBlock();
+        }
+        writeBlocks(0);
+        out.flush();
+        return compressedOffset;
+    }
+
+    /**
+     * Reads blocks of an existing BGZF file which is continued by this stream, so the offsets of
+     * the following blocks and the .gzi index cover the whole file. Must be called before anything is written.
+     * The file must not contain the empty block marking its end.
+     *
+     * @param existing stream of the existing part of the file
+     * @throws IOException if unable to read the stream or it doesn't consist of BGZF blocks
+     */
+    public void restoreBlocks(InputStream existing) throws IOException {
+        if (count > 0 || blockCount > writtenBlocks || finished) {
+            throw new IllegalStateException("Blocks can be restored only before writing");
+        }
+        byte[] header = new byte[headerSize];
+        byte[] footer = new byte[footerSize];
+        int read;
+        while ((read = readFully(existing, header, headerSize)) > 0) {
+            if (read < headerSize || (header[0] & 0xFF) != 31 || (header[1] & 0xFF) != 139
+                    || header[12] != 'B' || header[13] != 'C') {
+                throw new IOException("Not a BGZF block");
+            }
+            int blockSize = ((header[16] & 0xFF) | (header[17] & 0xFF) << 8) + 1;
+            long skip = blockSize - headerSize - footerSize;
+            while (skip > 0) {
+                long n = existing.skip(skip);
+                if (n <= 0) {
+                    throw new EOFException("Unexpected end of BGZF block");
+                }
+                skip -= n;
+            }
+            if (readFully(existing, footer, footerSize) < footerSize) {
+                throw new EOFException("Unexpected end of BGZF block");
+            }
+            recordBlock(uncompressedOffset);
+            blockOffsets[writtenBlocks * 2] = compressedOffset;
+            writtenBlocks++;
+            compressedOffset += blockSize;
+            uncompressedOffset += (footer[4] & 0xFF) | (footer[5] & 0xFF) << 8
+                    | (footer[6] & 0xFF) << 16 | (long) (footer[7] & 0xFF) << 24;
+        }
+    }
+
+    /**
+     * Compresses the remaining data and writes the empty block marking the end of BGZF file.
+     * Nothing can be written after the stream is finished.
+     *
+     * @throws IOException if unable to write into the stream
+     */
+    public void finish() throws IOException {
+        if (!finished) {
+            if (count > 0) {
+                submitBlock();
+            }
+            writeBlocks(0);
+            out.write(eofBlock);
+            compressedOffset += eofBlock.length;
+            out.flush();
+            finished = true;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            if (ownCompressors) {
+                compressors.shutdownNow();
+            } else {
+                for (Future<byte[]> block : blocksInFlight) {
+                    block.cancel(false);
+                }
+            }
+            blocksInFlight.clear();
+            if (buffer != null) {
+                codecs.release(buffer);
+                buffer = null;
+            }
+            if (ownCodecs) {
+                codecs.close();
+            }
+            out.close();
+        }
+    }
+
+    /**
+     * Writes .gzi index containing compressed and uncompressed offsets of every block except the first one.
+     * All numbers are unsigned 64-bit little-endian integers. Must be called after {@link #finish()}.
+     *
+     * @param indexStream stream to write the index into
+     * @throws IOException if unable to write into the stream
+     */
+    public void writeIndex(OutputStream indexStream) throws IOException {
+        byte[] entry = new byte[8];
+        writeLong(indexStream, entry, blockCount - 1L);
+        for (int i = 1; i < blockCount; i++) {
+            writeLong(indexStream, entry, blockOffsets[i * 2]);
+            writeLong(indexStream, entry, blockOffsets[i * 2 + 1]);
+        }
+    }
+
+    /**
+     * @return number of bytes written into the underlying stream
+     */
+    public long getCompressedOffset() {
+        return compressedOffset;
+    }
+
+    private void submitBlock() throws IOException {
+        if (finished) {
+            throw new IOException("BGZF stream is already finished");
+        }
+        recordBlock(uncompressedOffset);
+        uncompressedOffset += count;
+        uncompressedBytes.add(count);
+        byte[] input = buffer;
+        int length = count;
+        blocksInFlight.add(compressors.submit(() -> compress(input, length)));
+        buffer = codecs.obtainBuffer();
+        count = 0;
+        writeBlocks(maxBlocksInFlight);
+    }
+
+    private void writeBlocks(int maxPending) throws IOException {
+        while (!blocksInFlight.isEmpty() && (blocksInFlight.size() > maxPending || blocksInFlight.peek().isDone())) {
+            Future<byte[]> next = blocksInFlight.poll();
+            byte[] block;
+            if (next.isDone()) {
+                block = await(next);
+            } else {
+                long start = System.nanoTime();
+                block = await(next);
+                writeWaitTimer.recordSince(start);
+            }
+            blockOffsets[writtenBlocks * 2] = compressedOffset;
+            writtenBlocks++;
+            out.write(block);
+            compressedOffset += block.length;
+        }
+    }
+
+    private byte[] compress(byte[] input, int length) {
+        long start = System.nanoTime();
+        Deflater deflater = codecs.obtainDeflater();
+        byte[] block = codecs.obtainBuffer();
+        try {
+            int size = deflate(deflater, input, length, block);
+            if (size < 0) {
+                Deflater stored = new Deflater(Deflater.NO_COMPRESSION, true);
+                try {
+                    size = deflate(stored, input, length, block);
+                } finally {
+                    stored.end();
+                }
+            }
+            CRC32 crc = new CRC32();
+            crc.update(input, 0, length);
+            int blockSize = headerSize + size + footerSize;
+            writeHeader(block, blockSize);
+            int pos = headerSize + size;
+            writeInt(block, pos, (int) crc.getValue());
+            writeInt(block, pos + 4, length);
+            return Arrays.copyOf(block, blockSize);
+        } finally {
+            codecs.release(deflater);
+            codecs.release(block);
+            codecs.release(input);
+            compressTimer.recordSince(start);
+        }
+    }
+
+    private static int deflate(Deflater deflater, byte[] input, int length, byte[] block) {
+        deflater.reset();
+        deflater.setInput(input, 0, length);
+        deflater.finish();
+        int capacity = maxBlockSize - headerSize - footerSize;
+        int size = 0;
+        while (!deflater.finished() && size < capacity) {
+            size += deflater.deflate(block, headerSize + size, capacity - size);
+        }
+        return deflater.finished() ? size : -1;
+    }
+
+    private static void writeHeader(byte[] block, int blockSize) {
+        block[0] = 31;
+        block[1] = (byte) 139;
+        block[2] = 8;
+        block[3] = 4;
+        block[4] = 0;
+        block[5] = 0;
+        block[6] = 0;
+        block[7] = 0;
+        block[8] = 0;
+        block[9] = (byte) 255;
+        block[10] = 6;
+        block[11] = 0;
+        block[12] = 66;
+        block[13] = 67;
+        block[14] = 2;
+        block[15] = 0;
+        block[16] = (byte) (blockSize - 1);
+        block[17] = (byte) ((blockSize - 1) >>> 8);
+    }
+
+    private void recordBlock(long blockUncompressedOffset) {
+        if (blockCount * 2 == blockOffsets.length) {
+            blockOffsets = Arrays.copyOf(blockOffsets, blockOffsets.length * 2);
+        }
+        blockOffsets[blockCount * 2 + 1] = blockUncompressedOffset;
+        blockCount++;
+    }
+
+    private static int readFully(InputStream in, byte[] buffer, int len) throws IOException {
+        int total = 0;
+        int n;
+        while (total < len && (n = in.read(buffer, total, len - total)) >= 0) {
+            total += n;
+        }
+        return total;
+    }
+
+    private static byte[] await(Future<byte[]> block) throws IOException {
+        try {
+            return block.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while compressing block");
+        } catch (ExecutionException e) {
+            throw new IOException("Unable to compress block", e.getCause());
+        }
+    }
+
+    private static void writeInt(byte[] block, int pos, int value) {
+        block[pos] = (byte) value;
+        block[pos + 1] = (byte) (value >>> 8);
+        block[pos + 2] = (byte) (value >>> 16);
+        block[pos + 3] = (byte) (value >>> 24);
+    }
+
+    private static void writeLong(OutputStream stream, byte[] entry, long value) throws IOException {
+        for (int i = 0; i < 8; i++) {
+            entry[i] = (byte) (value >>> (i * 8));
+        }
+        stream.write(entry);
+    }
+}
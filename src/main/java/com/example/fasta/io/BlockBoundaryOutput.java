@@ -0,0 +1,22 @@
+package com.example.fasta.io;
+
+import java.io.IOException;
+
+/**
+ * Compressed output which can be ended at a block boundary. Everything written before the boundary
+ * is decompressed correctly even if the rest of the file is lost, and the file can be truncated
+ * to the boundary to continue writing.
+ *
+ * @author rdanilov
+ * @since 21.10.2018
+ */
+public interface BlockBoundaryOutput {
+
+    /**
+     * Compresses all written bytes, ends the current block and writes it into the underlying stream.
+     *
+     * @return number of compressed bytes written into the underlying stream
+     * @throws IOException if unable to write into the stream
+     */
+    long endBlock() throws IOException;
+}
@@ -0,0 +1,162 @@
+package com.example.fasta.io;
+
+import java.io.Closeable;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Pool of raw deflate inflaters, deflaters and buffers of BGZF blocks shared by BGZF streams.
+ * A stream without a shared pool creates its own one and closes it together with the stream,
+ * a shared pool keeps native memory of codecs and buffers warm between jobs. Objects released
+ * above the limit of idle ones or after the pool is closed are discarded at once. Thread safe.
+ *
+ * @author rdanilov
+ * @since 21.10.2018
+ */
+public class CodecPool implements Closeable {
+
+    /**
+     * Size of pooled buffers, enough for any compressed or uncompressed BGZF block
+     */
+    public static final int bufferSize = 0x10000;
+
+    private final int maxIdle;
+    private final Queue<Inflater> inflaters;
+    private final Queue<Deflater> deflaters;
+    private final Queue<byte[]> buffers;
+    private final AtomicInteger idleInflaters;
+    private final AtomicInteger idleDeflaters;
+    private final AtomicInteger idleBuffers;
+    private volatile boolean closed;
+
+    /**
+     * Constructs an instance of {@link CodecPool} without a limit of idle objects
+     */
+    public CodecPool() {
+        this(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Constructs an instance of {@link CodecPool}
+     *
+     * @param maxIdle maximal number of idle objects of every kind kept in the pool
+     */
+    public CodecPool(int maxIdle) {
+        if (maxIdle < 0) {
+            throw new IllegalArgumentException("Number of idle objects must not be negative");
+        }
+        this.maxIdle = maxIdle;
+        this.inflaters = new ConcurrentLinkedQueue<>();
+        this.deflaters = new ConcurrentLinkedQueue<>();
+        this.buffers = new ConcurrentLinkedQueue<>();
+        this.idleInflaters = new AtomicInteger();
+        this.idleDeflaters = new AtomicInteger();
+        this.idleBuffers = new AtomicInteger();
+    }
+
+    /**
+     * @return reset inflater of raw deflate data
+     */
+    public Inflater obtainInflater() {
+        Inflater inflater = inflaters.poll();
+        if (inflater == null) {
+            return new Inflater(true);
+        }
+        idleInflaters.decrementAndGet();
+        inflater.reset();
+        return inflater;
+    }
+
+    /**
+     * @param inflater inflater obtained from the pool, which isn't used anymore
+     */
+    public void release(Inflater inflater) {
+        if (!reserveIdle(idleInflaters)) {
+            inflater.end();
+            return;
+        }
+        inflaters.offer(inflater);
+        if (closed && inflaters.remove(inflater)) {
+            inflater.end();
+        }
+    }
+
+    /**
+     * @return reset deflater of raw deflate data with default compression
+     */
+    public Deflater obtainDeflater() {
+        Deflater deflater = deflaters.poll();
+        if (deflater == null) {
+            return new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        }
+        idleDeflaters.decrementAndGet();
+        deflater.reset();
+        return deflater;
+    }
+
+    /**
+     * @param deflater deflater obtained from the pool, which isn't used anymore
+     */
+    public void release(Deflater deflater) {
+        if (!reserveIdle(idleDeflaters)) {
+            deflater.end();
+            return;
+        }
+        deflaters.offer(deflater);
+        if (closed && deflaters.remove(deflater)) {
+            deflater.end();
+        }
+    }
+
+    /**
+     * @return buffer of {@value #bufferSize} bytes with undefined content
+     */
+    public byte[] obtainBuffer() {
+        byte[] buffer = buffers.poll();
+        if (buffer == null) {
+            return new byte[bufferSize];
+        }
+        idleBuffers.decrementAndGet();
+        return buffer;
+    }
+
+    /**
+     * @param buffer buffer obtained from the pool, which isn't used anymore
+     */
+    public void release(byte[] buffer) {
+        if (buffer.length == bufferSize && reserveIdle(idleBuffers)) {
+            buffers.offer(buffer);
+        }
+    }
+
+    /**
+     * Ends all idle codecs and drops idle buffers, objects released later are discarded.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        Inflater inflater;
+        while ((inflater = inflaters.poll()) != null) {
+            inflater.end();
+        }
+        Deflater deflater;
+        while ((deflater = deflaters.poll()) != null) {
+            deflater.end();
+        }
+        buffers.clear();
+    }
+
+    private boolean reserveIdle(AtomicInteger idle) {
+        if (closed) {
+            return false;
+        }
+        if (idle.incrementAndGet() > maxIdle) {
+            idle.decrementAndGet();
+            return false;
+        }
+        return true;
+    }
+}
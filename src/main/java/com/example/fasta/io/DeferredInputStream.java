@@ -0,0 +1,77 @@
+package com.example.fasta.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Input stream opened on first use. Workers of many files get their streams in advance,
+ * while a file is actually open only from the first read until its worker closes it.
+ *
+ * @author rdanilov
+ * @since 21.10.2018
+ */
+public class DeferredInputStream extends InputStream {
+
+    /**
+     * Opens the underlying stream
+     */
+    public interface Opener {
+
+        /**
+         * @return opened stream
+         * @throws IOException if unable to open the stream
+         */
+        InputStream open() throws IOException;
+    }
+
+    private final Opener opener;
+    private InputStream in;
+    private boolean closed;
+
+    /**
+     * Constructs an instance of {@link DeferredInputStream}
+     *
+     * @param opener opener of the underlying stream
+     */
+    public DeferredInputStream(Opener opener) {
+        this.opener = opener;
+    }
+
+    @Override
+    public int read() throws IOException {
+        return stream().read();
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        return stream().read(b, off, len);
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        return stream().skip(n);
+    }
+
+    @Override
+    public int available() throws IOException {
+        return stream().available();
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        if (in != null) {
+            in.close();
+        }
+    }
+
+    private InputStream stream() throws IOException {
+        if (closed) {
+            throw new IOException("Stream is closed");
+        }
+        if (in == null) {
+            in = opener.open();
+        }
+        return in;
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.fasta.io;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes .fai index of records of the sequence file while the file is written. Every line contains
+ * name of the record, number of bases, offset of the first base in the uncompressed file, number of bases
+ * in a line and number of bytes in a line, separated by tabs. Name of the record is its description
+ * up to the first whitespace. Together with .gzi index of BGZF file a record is read by a seek to its block,
+ * see {@link FastaRecordReader}.
+ *
+ * @author rdanilov
+ * @since 21.10.2018
+ */
+public class FastaIndexWriter implements Closeable {
+
+    private final Writer out;
+    private final StringBuilder recordName;
+    private long offset;
+    private long recordOffset;
+    private long recordBases;
+    private long lineBases;
+    private boolean recordStarted;
+
+    /**
+     * Constructs an instance of {@link FastaIndexWriter}
+     *
+     * @param out stream to write the index into
+     * @param offset current offset in the uncompressed sequence file
+     */
+    public FastaIndexWriter(OutputStream out, long offset) {
+        this.out = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.US_ASCII));
+        this.offset = offset;
+        this.recordName = new StringBuilder();
+    }
+
+    /**
+     * Finishes the current record and starts the next one after its description.
+     *
+     * @param description buffer containing the description
+     * @param from index of the first byte of the description after {@code '>'}
+     * @param to index after the last byte of the description
+     * @param length number of bytes of the description including {@code '>'} and line terminators
+     * @throws IOException if unable to write the index
+     */
+    public void description(byte[] description, int from, int to, int length) throws IOException {
+        finishRecord();
+        offset += length;
+        recordName.setLength(0);
+        for (int i = from; i < to && !isWhitespace(description[i]); i++) {
+            recordName.append((char) (description[i] & 0xFF));
+        }
+        recordOffset = offset;
+        recordBases = 0;
+        lineBases = -1;
+        recordStarted = true;
+    }
+
+    /**
+     * Adds bases to the current record.
+     *
+     * @param length number of bases
+     */
+    public void sequence(int length) {
+        offset += length;
+        recordBases += length;
+    }
+
+    /**
+     * Adds line terminator to the current record. All lines of the record except the last one
+     * must have the same length.
+     */
+    public void lineBreak() {
+        if (lineBases < 0) {
+            lineBases = recordBases;
+        }
+        offset++;
+    }
+
+    /**
+     * Finishes the last record and flushes the index.
+     *
+     * @throws IOException if unable to write the index
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            finishRecord();
+        } finally {
+            out.close();
+        }
+    }
+
+    private void finishRecord() throws IOException {
+        if (recordStarted) {
+            long basesPerLine = lineBases < 0 ? recordBases : lineBases;
+            out.append(recordName).append('\t')
+                    .append(String.valueOf(recordBases)).append('\t')
+                    .append(String.valueOf(recordOffset)).append('\t')
+                    .append(String.valueOf(basesPerLine)).append('\t')
+                    .append(String.valueOf(basesPerLine + 1)).append('\n');
+            recordStarted = false;
+        }
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t';
+    }
+}
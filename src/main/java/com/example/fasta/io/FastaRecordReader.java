@@ -0,0 +1,199 @@
+package com.example.fasta.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads single records of BGZF sequence file using its .fai and .gzi indexes written by
+ * {@link FastaIndexWriter} and {@link BgzfOutputStream#writeIndex}. A record is read by a seek
+ * to the block containing its first base, so only blocks of the record are inflated. Records are numbered
+ * in order of the index starting from 1, line terminators of wrapped records are dropped.
+ * Records are read through positional reads of one channel, so the reader can be used by several threads.
+ *
+ * @author rdanilov
+ * @since 21.10.2018
+ */
+public class FastaRecordReader implements Closeable {
+
+    private static final int bufferSize = 8 * 1024;
+
+    private final FileChannel channel;
+    private final BgzfIndex blocks;
+    private long[] offsets;
+    private long[] lengths;
+    private int recordCount;
+
+    /**
+     * Constructs an instance of {@link FastaRecordReader} and reads both indexes
+     *
+     * @param sequenceFile path of the BGZF sequence file
+     * @param recordIndexFile path of .fai index of the records
+     * @param blockIndexFile path of .gzi index of the blocks
+     * @throws IOException if unable to read the indexes or to open the sequence file
+     */
+    public FastaRecordReader(Path sequenceFile, Path recordIndexFile, Path blockIndexFile) throws IOException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(blockIndexFile))) {
+            this.blocks = BgzfIndex.read(in);
+        }
+        this.offsets = new long[64];
+        this.lengths = new long[64];
+        try (BufferedReader reader = Files.newBufferedReader(recordIndexFile, StandardCharsets.US_ASCII)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                addRecord(line);
+            }
+        }
+        this.channel = FileChannel.open(sequenceFile, StandardOpenOption.READ);
+    }
+
+    /**
+     * @return number of records
+     */
+    public int getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * @param number number of the record starting from 1
+     * @return number of bases of the record
+     */
+    public long getRecordLength(long number) {
+        return lengths[recordIndex(number)];
+    }
+
+    /**
+     * Reads bases of the record.
+     *
+     * @param number number of the record starting from 1
+     * @return bases of the record
+     * @throws IOException if unable to read the sequence file
+     */
+    public byte[] readRecord(long number) throws IOException {
+        long length = getRecordLength(number);
+        if (length > Integer.MAX_VALUE - 8) {
+            throw new IOException("Record " + number + " is too long to be read into an array");
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream((int) length);
+        readRecord(number, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Reads bases of the record into the given stream.
+     *
+     * @param number number of the record starting from 1
+     * @param out stream to write the bases into
+     * @throws IOException if unable to read the sequence file or to write into the stream
+     */
+    public void readRecord(long number, OutputStream out) throws IOException {
+        int record = recordIndex(number);
+        long offset = offsets[record];
+        int block = blocks.findBlock(offset);
+        try (InputStream in = new GZIPInputStream(
+                new ChannelInputStream(channel, blocks.getCompressedOffset(block)), bufferSize)) {
+            long skip = offset - blocks.getUncompressedOffset(block);
+            while (skip > 0) {
+                long n = in.skip(skip);
+                if (n <= 0) {
+                    throw new EOFException("Sequence file is shorter than its index");
+                }
+                skip -= n;
+            }
+            byte[] buffer = new byte[bufferSize];
+            long remaining = lengths[record];
+            while (remaining > 0) {
+                int n = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (n < 0) {
+                    throw new EOFException("Sequence file is shorter than its index");
+                }
+                int bases = 0;
+                for (int i = 0; i < n; i++) {
+                    if (buffer[i] != '\n' && buffer[i] != '\r') {
+                        buffer[bases++] = buffer[i];
+                    }
+                }
+                out.write(buffer, 0, bases);
+                remaining -= bases;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private int recordIndex(long number) {
+        if (number < 1 || number > recordCount) {
+            throw new IllegalArgumentException("No record " + number);
+        }
+        return (int) (number - 1);
+    }
+
+    private void addRecord(String line) throws IOException {
+        String[] fields = line.split("\t");
+        if (fields.length < 3) {
+            throw new IOException("Unexpected line of record index: " + line);
+        }
+        if (recordCount == offsets.length) {
+            offsets = Arrays.copyOf(offsets, recordCount * 2);
+            lengths = Arrays.copyOf(lengths, recordCount * 2);
+        }
+        lengths[recordCount] = Long.parseLong(fields[1]);
+        offsets[recordCount] = Long.parseLong(fields[2]);
+        recordCount++;
+    }
+
+    /**
+     * Stream reading the channel from the given position with positional reads. The remaining bytes
+     * of the channel are reported as available, since {@link GZIPInputStream} reads the next member
+     * only if its buffer holds enough of it or more bytes are available.
+     */
+    private static final class ChannelInputStream extends InputStream {
+
+        private final FileChannel channel;
+        private long position;
+
+        private ChannelInputStream(FileChannel channel, long position) {
+            this.channel = channel;
+            this.position = position;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            int n = channel.read(ByteBuffer.wrap(b, off, len), position);
+            if (n > 0) {
+                position += n;
+            }
+            return n;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.max(0, Math.min(Integer.MAX_VALUE, channel.size() - position));
+        }
+    }
+}
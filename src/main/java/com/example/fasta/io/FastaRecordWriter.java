@@ -0,0 +1,222 @@
+package com.example.fasta.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Writes records of the sequence file. By default every row is one record named by the number of the row,
+ * and lines of all files are concatenated into one line of the record. Lines may be wrapped at the given
+ * width, every line of every file may be written as a separate record named by the number of the row and
+ * the number of the file, and records may be named by the original description of their first line.
+ * Descriptions and fragments are collected in a reusable buffer, fragments longer than the buffer
+ * are written straight from the chunk.
+ *
+ * @author rdanilov
+ * @since 21.10.2018
+ */
+public class FastaRecordWriter implements RecordWriter {
+
+    private static final int bufferSize = 64 * 1024;
+
+    private final OutputStream out;
+    private final FastaIndexWriter index;
+    private final int lineWidth;
+    private final boolean recordPerFile;
+    private final boolean originalHeaders;
+    private final byte[] buffer;
+    private byte[] header;
+    private int count;
+    private boolean atStart;
+    private long rowNum;
+    private boolean recordPending;
+    private boolean lineStarted;
+    private int column;
+
+    /**
+     * Constructs an instance of {@link FastaRecordWriter} writing one record per row without wrapping
+     *
+     * @param out stream of the sequence file
+     * @param continued true if the stream continues a file which already contains records
+     * @param index writer of the index of records, may be null
+     */
+    public FastaRecordWriter(OutputStream out, boolean continued, FastaIndexWriter index) {
+        this(out, continued, index, 0, false, false);
+    }
+
+    /**
+     * Constructs an instance of {@link FastaRecordWriter}
+     *
+     * @param out stream of the sequence file
+     * @param continued true if the stream continues a file which already contains records
+     * @param index writer of the index of records, may be null
+     * @param lineWidth maximal number of bases in a line, 0 if lines aren't wrapped
+     * @param recordPerFile true to write every line of every file as a separate record
+     * @param originalHeaders true to name records by the original description of their first line
+     *                        when it is known
+     */
+    public FastaRecordWriter(OutputStream out, boolean continued, FastaIndexWriter index, int lineWidth,
+                             boolean recordPerFile, boolean originalHeaders) {
+        if (lineWidth < 0) {
+            throw new IllegalArgumentException("Line width must not be negative");
+        }
+        this.out = out;
+        this.index = index;
+        this.lineWidth = lineWidth;
+        this.recordPerFile = recordPerFile;
+        this.originalHeaders = originalHeaders;
+        this.buffer = new byte[bufferSize];
+        this.header = new byte[64];
+        this.atStart = !continued;
+    }
+
+    /**
+     * Starts the next row. Description of the row is written at once unless it depends on the first line.
+     *
+     * @param rowNum number of the row starting from 1
+     * @throws IOException if unable to write into the stream
+     */
+    @Override
+    public void startRow(long rowNum) throws IOException {
+        this.rowNum = rowNum;
+        if (!recordPerFile) {
+            if (originalHeaders) {
+                recordPending = true;
+            } else {
+                writeHeader(0, null, 0);
+            }
+        }
+    }
+
+    @Override
+    public void write(int fileNumber, LineChunk chunk, int line) throws IOException {
+        if (recordPerFile ? !lineStarted : recordPending) {
+            writeHeader(fileNumber, chunk, line);
+            lineStarted = true;
+        }
+        byte[] data = chunk.data();
+        int from = chunk.start(line);
+        int to = chunk.end(line);
+        if (lineWidth == 0) {
+            writeBases(data, from, to - from);
+        } else {
+            while (from < to) {
+                if (column == lineWidth) {
+                    put((byte) '\n');
+                    if (index != null) {
+                        index.lineBreak();
+                    }
+                    column = 0;
+                }
+                int length = Math.min(to - from, lineWidth - column);
+                writeBases(data, from, length);
+                column += length;
+                from += length;
+            }
+        }
+        if (chunk.isComplete(line)) {
+            lineStarted = false;
+        }
+    }
+
+    @Override
+    public boolean isResumable() {
+        return lineWidth == 0 || (recordPerFile ? !lineStarted : recordPending);
+    }
+
+    /**
+     * Writes the buffered bytes into the stream without flushing the stream.
+     *
+     * @throws IOException if unable to write into the stream
+     */
+    @Override
+    public void flush() throws IOException {
+        if (count > 0) {
+            out.write(buffer, 0, count);
+            count = 0;
+        }
+    }
+
+    private void writeHeader(int fileNumber, LineChunk chunk, int line) throws IOException {
+        int length = 0;
+        if (!atStart) {
+            length = putHeader(length, (byte) '\n');
+        }
+        length = putHeader(length, (byte) '>');
+        int nameStart = length;
+        int descriptionStart = originalHeaders && chunk != null ? chunk.descriptionStart(line) : -1;
+        if (descriptionStart >= 0) {
+            int descriptionLength = chunk.descriptionEnd(line) - descriptionStart;
+            ensureHeaderCapacity(length + descriptionLength + 1);
+            System.arraycopy(chunk.descriptions(), descriptionStart, header, length, descriptionLength);
+            length += descriptionLength;
+        } else {
+            length = putNumber(length, rowNum);
+            if (recordPerFile) {
+                length = putHeader(length, (byte) '.');
+                length = putNumber(length, fileNumber);
+            }
+        }
+        int nameEnd = length;
+        length = putHeader(length, (byte) '\n');
+        writeBytes(header, 0, length);
+        if (index != null) {
+            index.description(header, nameStart, nameEnd, length);
+        }
+        atStart = false;
+        recordPending = false;
+        column = 0;
+    }
+
+    private int putHeader(int length, byte b) {
+        ensureHeaderCapacity(length + 1);
+        header[length] = b;
+        return length + 1;
+    }
+
+    private int putNumber(int length, long number) {
+        int digits = 1;
+        for (long rest = number / 10; rest != 0; rest /= 10) {
+            digits++;
+        }
+        ensureHeaderCapacity(length + digits);
+        long rest = number;
+        for (int pos = length + digits - 1; pos >= length; pos--) {
+            header[pos] = (byte) ('0' + rest % 10);
+            rest /= 10;
+        }
+        return length + digits;
+    }
+
+    private void ensureHeaderCapacity(int capacity) {
+        if (capacity > header.length) {
+            header = Arrays.copyOf(header, Math.max(header.length * 2, capacity));
+        }
+    }
+
+    private void writeBases(byte[] data, int from, int length) throws IOException {
+        writeBytes(data, from, length);
+        if (index != null) {
+            index.sequence(length);
+        }
+    }
+
+    private void writeBytes(byte[] data, int from, int length) throws IOException {
+        if (length > buffer.length - count) {
+            flush();
+            if (length > buffer.length) {
+                out.write(data, from, length);
+                return;
+            }
+        }
+        System.arraycopy(data, from, buffer, count, length);
+        count += length;
+    }
+
+    private void put(byte b) throws IOException {
+        if (count == buffer.length) {
+            flush();
+        }
+        buffer[count++] = b;
+    }
+}
@@ -0,0 +1,203 @@
+package com.example.fasta.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Scans raw bytes of .fasta file and finds sequence lines without decoding them into strings.
+ * Description lines starting with {@code '>'} and empty lines are skipped.
+ * Both {@code '\n'} and {@code '\r'} are treated as line terminators.
+ * The first sequence line after a description is marked as the start of a record.
+ * If descriptions are kept, the description of the record every sequence line belongs to
+ * is passed in the chunk together with the line.
+ *
+ * @author rdanilov
+ * @since 21.10.2018
+ */
+public class FastaScanner implements Closeable {
+
+    private static final byte descriptionPrefix = '>';
+
+    private enum State {
+        LINE_START, SEQUENCE, DESCRIPTION
+    }
+
+    private final InputStream in;
+    private final boolean keepDescriptions;
+    private byte[] description;
+    private int descriptionLength;
+    private boolean descriptionKnown;
+    private boolean recordStart;
+    private int chunkDescriptionStart;
+    private State state;
+    private boolean eof;
+    private long bytesRead;
+
+    /**
+     * Constructs an instance of {@link FastaScanner}
+     *
+     * @param in stream of raw .fasta bytes
+     */
+    public FastaScanner(InputStream in) {
+        this(in, 0);
+    }
+
+    /**
+     * Constructs an instance of {@link FastaScanner} for a stream positioned at the beginning of a line
+     * in the middle of the file.
+     *
+     * @param in stream of raw .fasta bytes
+     * @param startOffset offset of the first byte of the stream in the file
+     */
+    public FastaScanner(InputStream in, long startOffset) {
+        this(in, startOffset, false);
+    }
+
+    /**
+     * Constructs an instance of {@link FastaScanner} for a stream positioned at the beginning of a line
+     * in the middle of the file, optionally keeping descriptions of records. If the stream starts
+     * in the middle of a record, description of the record isn't known.
+     *
+     * @param in stream of raw .fasta bytes
+     * @param startOffset offset of the first byte of the stream in the file
+     * @param keepDescriptions true to pass descriptions of records in the chunks
+     */
+    public FastaScanner(InputStream in, long startOffset, boolean keepDescriptions) {
+        this.in = in;
+        this.keepDescriptions = keepDescriptions;
+        this.description = keepDescriptions ? new byte[256] : null;
+        this.state = State.LINE_START;
+        this.eof = false;
+        this.bytesRead = startOffset;
+    }
+
+    /**
+     * Fills the chunk with the next bytes of the stream and finds sequence lines in it.
+     *
+     * @param chunk chunk to be filled
+     * @return false if there are no sequence lines left
+     * @throws IOException if unable to read the stream
+     */
+    public boolean next(LineChunk chunk) throws IOException {
+        chunk.clear();
+        chunkDescriptionStart = -1;
+        while (chunk.lineCount() == 0 && !eof) {
+            long offset = bytesRead;
+            int length = fill(chunk.data());
+            chunk.setData(offset, length);
+            scan(chunk, length);
+            if (eof && state == State.SEQUENCE) {
+                chunk.completeLastLine();
+                if (keepDescriptions) {
+                    describeLastLine(chunk);
+                }
+                state = State.LINE_START;
+            }
+        }
+        return chunk.lineCount() > 0;
+    }
+
+    /**
+     * @return offset in the file after the last byte read from the stream
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private int fill(byte[] buffer) throws IOException {
+        int length = 0;
+        while (length < buffer.length) {
+            int read = in.read(buffer, length, buffer.length - length);
+            if (read < 0) {
+                eof = true;
+                break;
+            }
+            length += read;
+        }
+        bytesRead += length;
+        return length;
+    }
+
+    private void scan(LineChunk chunk, int length) {
+        byte[] data = chunk.data();
+        int i = 0;
+        while (i < length) {
+            if (state == State.LINE_START) {
+                while (i < length && isLineEnd(data[i])) {
+                    i++;
+                }
+                if (i == length) {
+                    break;
+                }
+                state = data[i] == descriptionPrefix ? State.DESCRIPTION : State.SEQUENCE;
+                if (state == State.DESCRIPTION) {
+                    recordStart = true;
+                }
+                if (keepDescriptions && state == State.DESCRIPTION) {
+                    descriptionLength = 0;
+                    descriptionKnown = true;
+                    chunkDescriptionStart = -1;
+                    i++;
+                }
+            }
+            int end = findLineEnd(data, i, length);
+            if (state == State.SEQUENCE) {
+                chunk.addLine(i, end, end < length, recordStart);
+                recordStart = false;
+                if (keepDescriptions) {
+                    describeLastLine(chunk);
+                }
+            } else if (keepDescriptions) {
+                appendDescription(data, i, end);
+            }
+            if (end < length) {
+                state = State.LINE_START;
+                end++;
+            }
+            i = end;
+        }
+    }
+
+    private void appendDescription(byte[] data, int from, int to) {
+        int length = to - from;
+        if (descriptionLength + length > description.length) {
+            description = Arrays.copyOf(description, Math.max(description.length * 2, descriptionLength + length));
+        }
+        System.arraycopy(data, from, description, descriptionLength, length);
+        descriptionLength += length;
+    }
+
+    private void describeLastLine(LineChunk chunk) {
+        int line = chunk.lineCount() - 1;
+        if (!descriptionKnown) {
+            if (chunk.descriptions() != null) {
+                chunk.setDescription(line, -1, -1);
+            }
+            return;
+        }
+        if (chunkDescriptionStart < 0) {
+            chunkDescriptionStart = chunk.addDescription(description, descriptionLength);
+        }
+        chunk.setDescription(line, chunkDescriptionStart, chunkDescriptionStart + descriptionLength);
+    }
+
+    private static int findLineEnd(byte[] data, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (isLineEnd(data[i])) {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    private static boolean isLineEnd(byte b) {
+        return b == '\n' || b == '\r';
+    }
+}
@@ -0,0 +1,142 @@
+package com.example.fasta.io;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Output stream writing gzip file as a series of members. A new member is started after every
+ * {@link #endBlock()}, so the file can be truncated to any block boundary and appended to.
+ * Concatenated members are read by any gzip reader as a single file.
+ *
+ * @author rdanilov
+ * @since 21.10.2018
+ */
+public class GzipMemberOutputStream extends OutputStream implements BlockBoundaryOutput {
+
+    private final OutputStream target;
+    private final CountingOutputStream out;
+    private final byte[] buffer;
+    private int count;
+    private GZIPOutputStream member;
+
+    /**
+     * Constructs an instance of {@link GzipMemberOutputStream}
+     *
+     * @param out stream to write gzip members into
+     * @param bufferSize size of the buffer of uncompressed bytes
+     */
+    public GzipMemberOutputStream(OutputStream out, int bufferSize) {
+        this(out, bufferSize, 0);
+    }
+
+    /**
+     * Constructs an instance of {@link GzipMemberOutputStream} appending to an existing file
+     *
+     * @param out stream to write gzip members into
+     * @param bufferSize size of the buffer of uncompressed bytes
+     * @param startOffset number of compressed bytes already present in the file
+     */
+    public GzipMemberOutputStream(OutputStream out, int bufferSize, long startOffset) {
+        this.target = out;
+        this.out = new CountingOutputStream(out, startOffset);
+        this.buffer = new byte[bufferSize];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (count == buffer.length) {
+            flushBuffer();
+        }
+        buffer[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (len >= buffer.length) {
+            flushBuffer();
+            member().write(b, off, len);
+            return;
+        }
+        if (len > buffer.length - count) {
+            flushBuffer();
+        }
+        System.arraycopy(b, off, buffer, count, len);
+        count += len;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+
+    @Override
+    public long endBlock() throws IOException {
+        flushBuffer();
+        if (member != null) {
+            GZIPOutputStream finished = member;
+            member = null;
+            // close rather than finish, it ends the deflater of the member and leaves the target open
+            finished.close();
+        }
+        out.flush();
+        return out.count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (member == null && count == 0 && out.count == 0) {
+                member();
+            }
+            endBlock();
+        } finally {
+            target.close();
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        if (count > 0) {
+            member().write(buffer, 0, count);
+            count = 0;
+        }
+    }
+
+    private GZIPOutputStream member() throws IOException {
+        if (member == null) {
+            member = new GZIPOutputStream(out, buffer.length);
+        }
+        return member;
+    }
+
+    /**
+     * Counts written bytes and keeps the underlying stream open when a member is finished.
+     */
+    private static final class CountingOutputStream extends FilterOutputStream {
+
+        private long count;
+
+        private CountingOutputStream(OutputStream out, long count) {
+            super(out);
+            this.count = count;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
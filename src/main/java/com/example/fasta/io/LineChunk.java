@@ -0,0 +1,236 @@
+package com.example.fasta.io;
+
+import com.example.fasta.model.FastaResult;
+
+import java.util.Arrays;
+
+/**
+ * Chunk of raw .fasta bytes together with positions of sequence lines found in it.
+ * A line that doesn't fit into one chunk is split into fragments, only the last fragment
+ * of a line is marked as complete, and the first fragment of the first line after a description
+ * is marked as the start of a record. Chunks are reused, so the data must not be kept
+ * after the chunk is released. If the scanner keeps descriptions, the description of the record
+ * every fragment belongs to is copied into the chunk too.
+ *
+ * @author rdanilov
+ * @since 21.10.2018
+ */
+public class LineChunk {
+
+    private static final int initialLineCapacity = 1024;
+
+    private final byte[] data;
+    private long offset;
+    private int length;
+    private int[] starts;
+    private int[] ends;
+    private boolean[] recordStarts;
+    private boolean lastComplete;
+    private int lineCount;
+    private int position;
+    private FastaResult counts;
+    private byte[] descriptions;
+    private int descriptionsLength;
+    private int[] descriptionStarts;
+    private int[] descriptionEnds;
+
+    /**
+     * Constructs an empty chunk
+     *
+     * @param capacity size of the data buffer in bytes
+     */
+    public LineChunk(int capacity) {
+        this.data = new byte[capacity];
+        this.starts = new int[initialLineCapacity];
+        this.ends = new int[initialLineCapacity];
+        this.recordStarts = new boolean[initialLineCapacity];
+    }
+
+    /**
+     * @return buffer containing raw bytes of the chunk
+     */
+    public byte[] data() {
+        return data;
+    }
+
+    /**
+     * @return offset of the first byte of the buffer in the decompressed file
+     */
+    public long offset() {
+        return offset;
+    }
+
+    /**
+     * @return number of bytes in the buffer
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * @return number of bytes taken by the buffer and the fragment bounds
+     */
+    public long memorySize() {
+        long size = data.length + (long) Integer.BYTES * (starts.length + ends.length);
+        if (descriptions != null) {
+            size += descriptions.length + (long) Integer.BYTES * (descriptionStarts.length + descriptionEnds.length);
+        }
+        return size;
+    }
+
+    /**
+     * @return number of line fragments in the chunk
+     */
+    public int lineCount() {
+        return lineCount;
+    }
+
+    /**
+     * @param line index of the fragment
+     * @return index of the first byte of the fragment
+     */
+    public int start(int line) {
+        return starts[line];
+    }
+
+    /**
+     * @param line index of the fragment
+     * @return index after the last byte of the fragment
+     */
+    public int end(int line) {
+        return ends[line];
+    }
+
+    /**
+     * @param line index of the fragment
+     * @return true if the fragment finishes the line
+     */
+    public boolean isComplete(int line) {
+        return line < lineCount - 1 || lastComplete;
+    }
+
+    /**
+     * @param line index of the fragment
+     * @return true if the fragment starts the first line after a description, so the previous
+     * fragment of the file belongs to another record
+     */
+    public boolean isRecordStart(int line) {
+        return recordStarts[line];
+    }
+
+    /**
+     * @return buffer containing descriptions of the chunk, null if descriptions aren't kept
+     */
+    public byte[] descriptions() {
+        return descriptions;
+    }
+
+    /**
+     * @param line index of the fragment
+     * @return index of the first byte of the description of the record in {@link #descriptions()}
+     * without {@code '>'}, -1 if the description isn't known
+     */
+    public int descriptionStart(int line) {
+        return descriptions != null ? descriptionStarts[line] : -1;
+    }
+
+    /**
+     * @param line index of the fragment
+     * @return index after the last byte of the description of the record in {@link #descriptions()},
+     * -1 if the description isn't known
+     */
+    public int descriptionEnd(int line) {
+        return descriptions != null ? descriptionEnds[line] : -1;
+    }
+
+    /**
+     * @return number of fragments read by {@link #next()}
+     */
+    public int position() {
+        return position;
+    }
+
+    /**
+     * @return counts of bases and sequences of this chunk, created on first use and kept while the chunk is reused
+     */
+    public FastaResult counts() {
+        if (counts == null) {
+            counts = new FastaResult();
+        }
+        return counts;
+    }
+
+    /**
+     * @return true if there are fragments which haven't been read by {@link #next()}
+     */
+    public boolean hasNext() {
+        return position < lineCount;
+    }
+
+    /**
+     * @return index of the next unread fragment
+     */
+    public int next() {
+        return position++;
+    }
+
+    /**
+     * Clears the chunk to be filled again
+     */
+    public void clear() {
+        length = 0;
+        lineCount = 0;
+        position = 0;
+        lastComplete = true;
+        descriptionsLength = 0;
+    }
+
+    void setData(long offset, int length) {
+        this.offset = offset;
+        this.length = length;
+    }
+
+    void completeLastLine() {
+        if (lineCount > 0) {
+            lastComplete = true;
+        } else {
+            addLine(length, length, true, false);
+        }
+    }
+
+    int addDescription(byte[] description, int length) {
+        if (descriptions == null) {
+            descriptions = new byte[Math.max(initialLineCapacity, length)];
+            descriptionStarts = new int[starts.length];
+            descriptionEnds = new int[starts.length];
+        } else if (descriptionsLength + length > descriptions.length) {
+            descriptions = Arrays.copyOf(descriptions, Math.max(descriptions.length * 2, descriptionsLength + length));
+        }
+        int start = descriptionsLength;
+        System.arraycopy(description, 0, descriptions, start, length);
+        descriptionsLength += length;
+        return start;
+    }
+
+    void setDescription(int line, int start, int end) {
+        descriptionStarts[line] = start;
+        descriptionEnds[line] = end;
+    }
+
+    void addLine(int start, int end, boolean complete, boolean recordStart) {
+        if (lineCount == starts.length) {
+            starts = Arrays.copyOf(starts, lineCount * 2);
+            ends = Arrays.copyOf(ends, lineCount * 2);
+            recordStarts = Arrays.copyOf(recordStarts, lineCount * 2);
+            if (descriptions != null) {
+                descriptionStarts = Arrays.copyOf(descriptionStarts, lineCount * 2);
+                descriptionEnds = Arrays.copyOf(descriptionEnds, lineCount * 2);
+            }
+        }
+        starts[lineCount] = start;
+        ends[lineCount] = end;
+        recordStarts[lineCount] = recordStart;
+        lineCount++;
+        lastComplete = complete;
+    }
+}
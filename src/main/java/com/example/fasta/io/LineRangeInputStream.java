@@ -0,0 +1,171 @@
+package com.example.fasta.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Input stream reading lines which start in the given byte range of the underlying data.
+ * A line crossing the start of the range belongs to the previous range and is skipped,
+ * a line crossing the end of the range is read completely. So ranges following each other
+ * give every line exactly once. Both {@code '\n'} and {@code '\r'} are treated as line terminators.
+ * <p>
+ * If whole records are read, a record belongs to the range where its description line starts:
+ * lines before the first description starting in the range are skipped, and lines after the end
+ * of the range are read up to the next description. Lines before the first description of the data
+ * belong to the first range.
+ *
+ * @author rdanilov
+ * @since 21.10.2018
+ */
+public class LineRangeInputStream extends InputStream {
+
+    private final InputStream in;
+    private final long start;
+    private final long end;
+    private final boolean records;
+
+    private long position;
+    private int pending = -1;
+    private boolean lineStart;
+    private boolean started;
+    private boolean eof;
+
+    /**
+     * Constructs an instance of {@link LineRangeInputStream}
+     *
+     * @param in underlying stream positioned at the byte before the start of the range,
+     *           or at the start if the range starts at 0
+     * @param start offset of the first byte of the range
+     * @param end offset after the last byte of the range
+     */
+    public LineRangeInputStream(InputStream in, long start, long end) {
+        this(in, start, end, false);
+    }
+
+    /**
+     * Constructs an instance of {@link LineRangeInputStream}
+     *
+     * @param in underlying stream positioned at the byte before the start of the range,
+     *           or at the start if the range starts at 0
+     * @param start offset of the first byte of the range
+     * @param end offset after the last byte of the range
+     * @param records true to read whole records which descriptions start in the range
+     */
+    public LineRangeInputStream(InputStream in, long start, long end, boolean records) {
+        this.in = in;
+        this.start = start;
+        this.end = end;
+        this.records = records;
+        this.position = start;
+        this.lineStart = true;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!started) {
+            started = true;
+            if (start > 0) {
+                skipPartialLine();
+                if (records) {
+                    skipToRecord();
+                }
+            }
+        }
+        if (pending >= 0) {
+            b[off] = (byte) pending;
+            pending = -1;
+            return 1;
+        }
+        if (eof) {
+            return -1;
+        }
+        if (position >= end && lineStart) {
+            if (!records) {
+                return -1;
+            }
+            int next = in.read();
+            if (next < 0 || next == '>') {
+                eof = true;
+                return -1;
+            }
+            b[off] = (byte) next;
+            position++;
+            lineStart = isLineEnd(b[off]);
+            return 1;
+        }
+        int n = in.read(b, off, position < end ? (int) Math.min(len, end - position) : len);
+        if (n < 0) {
+            eof = true;
+            return -1;
+        }
+        if (position >= end && records) {
+            for (int i = off + 1; i < off + n; i++) {
+                if (b[i] == '>' && isLineEnd(b[i - 1])) {
+                    n = i - off;
+                    eof = true;
+                    break;
+                }
+            }
+        } else if (position >= end) {
+            for (int i = off; i < off + n; i++) {
+                if (isLineEnd(b[i])) {
+                    n = i - off + 1;
+                    break;
+                }
+            }
+        }
+        position += n;
+        lineStart = isLineEnd(b[off + n - 1]);
+        return n;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private void skipPartialLine() throws IOException {
+        int b = in.read();
+        while (b >= 0 && !isLineEnd((byte) b)) {
+            b = in.read();
+            position++;
+        }
+        if (b < 0) {
+            eof = true;
+        }
+    }
+
+    private void skipToRecord() throws IOException {
+        while (!eof && position < end) {
+            int b = in.read();
+            if (b < 0) {
+                eof = true;
+                return;
+            }
+            position++;
+            if (b == '>') {
+                pending = b;
+                lineStart = false;
+                return;
+            }
+            if (!isLineEnd((byte) b)) {
+                skipPartialLine();
+                position++;
+            }
+        }
+        eof = true;
+    }
+
+    private static boolean isLineEnd(byte b) {
+        return b == '\n' || b == '\r';
+    }
+}
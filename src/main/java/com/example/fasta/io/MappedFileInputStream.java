@@ -0,0 +1,102 @@
+package com.example.fasta.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Input stream reading uncompressed file through memory mapped windows of the given size.
+ * Bytes are copied straight from the page cache into the caller's buffer, without read system calls
+ * and intermediate buffers. Skipping only moves the position.
+ *
+ * @author rdanilov
+ * @since 21.10.2018
+ */
+public class MappedFileInputStream extends InputStream {
+
+    private final FileChannel channel;
+    private final long size;
+    private final int windowSize;
+
+    private MappedByteBuffer window;
+    private long windowOffset;
+    private long position;
+
+    /**
+     * Constructs an instance of {@link MappedFileInputStream} reading the file from the beginning
+     *
+     * @param channel channel of the file, closed together with the stream
+     * @param windowSize number of bytes mapped at once
+     * @throws IOException if unable to get size of the file
+     */
+    public MappedFileInputStream(FileChannel channel, int windowSize) throws IOException {
+        if (windowSize < 1) {
+            throw new IllegalArgumentException("Size of mapped window must be positive");
+        }
+        this.channel = channel;
+        this.size = channel.size();
+        this.windowSize = windowSize;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureMapped()) {
+            return -1;
+        }
+        position++;
+        return window.get() & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!ensureMapped()) {
+            return -1;
+        }
+        int n = Math.min(len, window.remaining());
+        window.get(b, off, n);
+        position += n;
+        return n;
+    }
+
+    @Override
+    public long skip(long n) {
+        long skipped = Math.max(0, Math.min(n, size - position));
+        position += skipped;
+        if (window != null) {
+            long windowPosition = position - windowOffset;
+            if (windowPosition <= window.limit()) {
+                window.position((int) windowPosition);
+            } else {
+                window = null;
+            }
+        }
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return (int) Math.min(Integer.MAX_VALUE, size - position);
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+
+    private boolean ensureMapped() throws IOException {
+        if (window != null && window.hasRemaining()) {
+            return true;
+        }
+        if (position >= size) {
+            return false;
+        }
+        windowOffset = position;
+        window = channel.map(FileChannel.MapMode.READ_ONLY, windowOffset, Math.min(windowSize, size - windowOffset));
+        return true;
+    }
+}
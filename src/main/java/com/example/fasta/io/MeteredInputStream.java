@@ -0,0 +1,52 @@
+package com.example.fasta.io;
+
+import com.example.fasta.metrics.Counter;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Input stream counting bytes read from the underlying stream. Skipped bytes aren't counted.
+ *
+ * @author rdanilov
+ * @since 21.10.2018
+ */
+public class MeteredInputStream extends FilterInputStream {
+
+    private final Counter bytes;
+
+    /**
+     * Constructs an instance of {@link MeteredInputStream}
+     *
+     * @param in underlying stream
+     * @param bytes counter of read bytes
+     */
+    public MeteredInputStream(InputStream in, Counter bytes) {
+        super(in);
+        this.bytes = bytes;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = in.read();
+        if (b >= 0) {
+            bytes.increment();
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = in.read(b, off, len);
+        if (n > 0) {
+            bytes.add(n);
+        }
+        return n;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+}
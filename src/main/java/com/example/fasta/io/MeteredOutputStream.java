@@ -0,0 +1,57 @@
+package com.example.fasta.io;
+
+import com.example.fasta.metrics.Counter;
+import com.example.fasta.metrics.Timer;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Output stream counting bytes and timing writes into the underlying stream.
+ * Meant to be placed under a buffer, so every write is large and timing it is cheap.
+ *
+ * @author rdanilov
+ * @since 21.10.2018
+ */
+public class MeteredOutputStream extends FilterOutputStream {
+
+    private final Counter bytes;
+    private final Timer writes;
+
+    /**
+     * Constructs an instance of {@link MeteredOutputStream}
+     *
+     * @param out underlying stream
+     * @param bytes counter of written bytes
+     * @param writes timer of writes and flushes
+     */
+    public MeteredOutputStream(OutputStream out, Counter bytes, Timer writes) {
+        super(out);
+        this.bytes = bytes;
+        this.writes = writes;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        long start = System.nanoTime();
+        out.write(b);
+        writes.recordSince(start);
+        bytes.increment();
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        long start = System.nanoTime();
+        out.write(b, off, len);
+        writes.recordSince(start);
+        bytes.add(len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        long start = System.nanoTime();
+        out.flush();
+        writes.recordSince(start);
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.fasta.io;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes lines merged from several .fasta files into the sequence file. The merger passes every row
+ * and every fragment of a line as a slice of the chunk it was read into, the layout of records
+ * is defined by the implementation. Called by the merger thread only.
+ *
+ * @author rdanilov
+ * @since 21.10.2018
+ */
+public interface RecordWriter extends Flushable {
+
+    /**
+     * Creates writers of the sequence file
+     */
+    interface Factory {
+
+        /**
+         * @param out stream of the sequence file
+         * @param continued true if the stream continues a file which already contains records
+         * @param index writer of the index of records, may be null
+         * @return writer of records
+         */
+        RecordWriter create(OutputStream out, boolean continued, FastaIndexWriter index);
+    }
+
+    /**
+     * Starts the next row, it contains the next line of every file that still has lines.
+     *
+     * @param rowNum number of the row starting from 1
+     * @throws IOException if unable to write into the stream
+     */
+    void startRow(long rowNum) throws IOException;
+
+    /**
+     * Writes a fragment of a line of the current row.
+     *
+     * @param fileNumber number of the file the line comes from, starting from 1 in order of file names
+     * @param chunk chunk containing the fragment
+     * @param line index of the fragment, the fragment finishes the line if {@link LineChunk#isComplete} is true
+     * @throws IOException if unable to write into the stream
+     */
+    void write(int fileNumber, LineChunk chunk, int line) throws IOException;
+
+    /**
+     * A writer which isn't resumable keeps state that a new writer can't restore, for example
+     * the position in a wrapped line, so no checkpoint is made until it becomes resumable.
+     *
+     * @return true if writing can be continued by a new writer after everything written is flushed
+     */
+    boolean isResumable();
+}
@@ -0,0 +1,47 @@
+package com.example.fasta.metrics;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Monotonic counter updated by many threads without contention.
+ * Besides the total, the average rate per second since the start of the run is reported.
+ *
+ * @author rdanilov
+ * @since 21.10.2018
+ */
+public class Counter implements Metric {
+
+    private final LongAdder value = new LongAdder();
+
+    /**
+     * @param delta number to add
+     */
+    public void add(long delta) {
+        value.add(delta);
+    }
+
+    /**
+     * Adds one
+     */
+    public void increment() {
+        value.increment();
+    }
+
+    /**
+     * @return current total
+     */
+    public long get() {
+        return value.sum();
+    }
+
+    @Override
+    public void collect(String name, long elapsedNanos, Map<String, Long> values) {
+        long total = get();
+        values.put(name, total);
+        if (elapsedNanos > 0) {
+            values.put(name + ".perSecond", (long) (total * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos));
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.fasta.metrics;
+
+/**
+ * Metrics of reading one file, named {@code file.<name>.<metric>}.
+ * Reading time covers decompression and scanning, handoff wait is the time the reader waits
+ * for the merger, merger wait is the time the merger waits for the reader.
+ *
+ * @author rdanilov
+ * @since 21.10.2018
+ */
+public class FileMetrics {
+
+    private final String prefix;
+    private final Counter bytesRead;
+    private final Counter lines;
+    private final Counter bases;
+    private final Timer read;
+    private final Timer handoffWait;
+    private final Timer mergerWait;
+
+    /**
+     * Constructs an instance of {@link FileMetrics} registering its metrics
+     *
+     * @param registry registry of the run
+     * @param fileName name of the file
+     */
+    public FileMetrics(MetricsRegistry registry, String fileName) {
+        this.prefix = "file." + fileName + ".";
+        this.bytesRead = registry.counter(prefix + "bytesRead");
+        this.lines = registry.counter(prefix + "lines");
+        this.bases = registry.counter(prefix + "bases");
+        this.read = registry.timer(prefix + "read");
+        this.handoffWait = registry.timer(prefix + "handoffWait");
+        this.mergerWait = registry.timer(prefix + "mergerWait");
+    }
+
+    /**
+     * @return prefix of names of the file metrics
+     */
+    public String getPrefix() {
+        return prefix;
+    }
+
+    /**
+     * @return number of decompressed bytes read
+     */
+    public Counter getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * @return number of complete sequence lines read
+     */
+    public Counter getLines() {
+        return lines;
+    }
+
+    /**
+     * @return number of bases read
+     */
+    public Counter getBases() {
+        return bases;
+    }
+
+    /**
+     * @return time of reading and scanning chunks
+     */
+    public Timer getRead() {
+        return read;
+    }
+
+    /**
+     * @return time of waiting for space in the queue or in the memory budget
+     */
+    public Timer getHandoffWait() {
+        return handoffWait;
+    }
+
+    /**
+     * @return time the merger waits for chunks of the file
+     */
+    public Timer getMergerWait() {
+        return mergerWait;
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.fasta.metrics;
+
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Current value read from its owner, such as fill of a buffer.
+ *
+ * @author rdanilov
+ * @since 21.10.2018
+ */
+class Gauge implements Metric {
+
+    private final LongSupplier value;
+
+    Gauge(LongSupplier value) {
+        this.value = value;
+    }
+
+    @Override
+    public void collect(String name, long elapsedNanos, Map<String, Long> values) {
+        values.put(name, value.getAsLong());
+    }
+}
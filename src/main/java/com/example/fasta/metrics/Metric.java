@@ -0,0 +1,21 @@
+package com.example.fasta.metrics;
+
+import java.util.Map;
+
+/**
+ * Value registered in {@link MetricsRegistry}.
+ *
+ * @author rdanilov
+ * @since 21.10.2018
+ */
+interface Metric {
+
+    /**
+     * Puts current values of the metric into the map.
+     *
+     * @param name name of the metric, used as prefix of its values
+     * @param elapsedNanos time since the registry was created
+     * @param values map collecting values
+     */
+    void collect(String name, long elapsedNanos, Map<String, Long> values);
+}
@@ -0,0 +1,100 @@
+package com.example.fasta.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.LongSupplier;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Named counters, gauges and timers of one run. Metrics are created on first use and
+ * are updated by the threads doing the work, values are read as a consistent-enough snapshot
+ * by a dump file or through JMX.
+ *
+ * @author rdanilov
+ * @since 21.10.2018
+ */
+public class MetricsRegistry {
+
+    private final ConcurrentMap<String, Metric> metrics;
+    private final long startNanos;
+
+    /**
+     * Constructs an empty registry, rates of counters are measured from now
+     */
+    public MetricsRegistry() {
+        this.metrics = new ConcurrentSkipListMap<>();
+        this.startNanos = System.nanoTime();
+    }
+
+    /**
+     * @param name name of the counter
+     * @return existing or new counter
+     */
+    public Counter counter(String name) {
+        return get(name, Counter.class);
+    }
+
+    /**
+     * @param name name of the timer
+     * @return existing or new timer
+     */
+    public Timer timer(String name) {
+        return get(name, Timer.class);
+    }
+
+    /**
+     * Registers a gauge replacing the previous one with the same name.
+     *
+     * @param name name of the gauge
+     * @param value supplier of the current value, called by the reading thread
+     */
+    public void gauge(String name, LongSupplier value) {
+        metrics.put(name, new Gauge(value));
+    }
+
+    /**
+     * @return current values of all metrics sorted by name
+     */
+    public SortedMap<String, Long> snapshot() {
+        long elapsedNanos = System.nanoTime() - startNanos;
+        SortedMap<String, Long> values = new TreeMap<>();
+        for (Map.Entry<String, Metric> entry : metrics.entrySet()) {
+            entry.getValue().collect(entry.getKey(), elapsedNanos, values);
+        }
+        return values;
+    }
+
+    /**
+     * Registers the registry in the platform MBean server, every value is a read-only attribute.
+     *
+     * @param objectName name of the MBean
+     * @return name of the registered MBean
+     * @throws JMException if unable to register the MBean
+     */
+    public ObjectName registerMBean(String objectName) throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        return server.registerMBean(new MetricsMBean(this), new ObjectName(objectName)).getObjectName();
+    }
+
+    /**
+     * @param objectName name of the MBean registered by {@link #registerMBean(String)}
+     * @throws JMException if unable to unregister the MBean
+     */
+    public static void unregisterMBean(ObjectName objectName) throws JMException {
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+    }
+
+    private <T extends Metric> T get(String name, Class<T> type) {
+        Metric metric = metrics.computeIfAbsent(name, key -> type == Counter.class ? new Counter() : new Timer());
+        if (!type.isInstance(metric)) {
+            throw new IllegalStateException("Metric " + name + " is already registered with other type");
+        }
+        return type.cast(metric);
+    }
+}
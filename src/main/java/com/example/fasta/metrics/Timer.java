@@ -0,0 +1,58 @@
+package com.example.fasta.metrics;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Number, total and maximal duration of timed events, such as waits or block compressions.
+ *
+ * @author rdanilov
+ * @since 21.10.2018
+ */
+public class Timer implements Metric {
+
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Records duration of an event started at the given time.
+     *
+     * @param startNanos value of {@link System#nanoTime()} when the event started
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * @param nanos duration of an event in nanoseconds
+     */
+    public void record(long nanos) {
+        count.increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+    }
+
+    /**
+     * @return number of recorded events
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * @return total duration of recorded events in nanoseconds
+     */
+    public long getTotalNanos() {
+        return totalNanos.sum();
+    }
+
+    @Override
+    public void collect(String name, long elapsedNanos, Map<String, Long> values) {
+        values.put(name + ".count", getCount());
+        values.put(name + ".totalMicros", TimeUnit.NANOSECONDS.toMicros(getTotalNanos()));
+        values.put(name + ".maxMicros", TimeUnit.NANOSECONDS.toMicros(maxNanos.get()));
+    }
+}
@@ -1,20 +1,53 @@
 package com.example.fasta.model;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.TreeMap;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 /**
  * Provides result of .fasta file computation.
+ * Bases are counted in a histogram indexed by byte value. Lower case letters are counted
+ * separately and are folded into upper case ones only when the counts are read.
+ * Optional {@link SequenceStats} are fed by the code reading lines, because they need bases
+ * of every sequence in order, and are merged together with the counts.
+ * Results are written in a compact versioned binary format, so results of parts of a job computed
+ * on different machines are merged later, see {@link #write} and {@link #read}.
  *
  * @author rdanilov
  * @since 21.10.2018
  */
 public class FastaResult {
 
-    private Map<Integer, Long> baseCounts;
+    private static final int symbolCount = 256;
+    private static final int magic = 0x46415252;
+    private static final int version = 1;
+
+    private final long[] baseCounts;
     private long sequenceCount;
+    private SequenceStats stats;
+
+    /**
+     * Constructs an empty instance of {@link FastaResult}
+     */
+    public FastaResult() {
+        this.baseCounts = new long[symbolCount];
+        this.sequenceCount = 0;
+    }
+
+    /**
+     * Constructs an empty instance of {@link FastaResult} with sequence statistics
+     *
+     * @param stats empty statistics of sequences, null if statistics aren't collected
+     */
+    public FastaResult(SequenceStats stats) {
+        this();
+        this.stats = stats;
+    }
 
     /**
      * Constructs an instance of {@link FastaResult}
@@ -22,15 +55,87 @@ public class FastaResult {
      * @param sequenceCount number of sequences
      */
     public FastaResult(Map<Integer, Long> baseCounts, long sequenceCount) {
-        this.baseCounts = baseCounts;
+        this();
+        for (Map.Entry<Integer, Long> entry : baseCounts.entrySet()) {
+            int base = entry.getKey();
+            if (base < 0 || base >= symbolCount) {
+                throw new IllegalArgumentException("Base must be a single byte symbol: " + base);
+            }
+            this.baseCounts[base] += entry.getValue();
+        }
         this.sequenceCount = sequenceCount;
     }
 
     /**
-     * @return number of each base separately
+     * Counts bases of a sequence line or of its part.
+     *
+     * @param bytes array containing the bases
+     * @param from index of the first base
+     * @param to index after the last base
+     */
+    public void countBases(byte[] bytes, int from, int to) {
+        long[] counts = baseCounts;
+        for (int i = from; i < to; i++) {
+            counts[bytes[i] & 0xFF]++;
+        }
+    }
+
+    /**
+     * Counts one more sequence line.
+     */
+    public void countSequence() {
+        sequenceCount++;
+    }
+
+    /**
+     * Resets all counts to zero.
+     */
+    public void clear() {
+        Arrays.fill(baseCounts, 0);
+        sequenceCount = 0;
+        if (stats != null) {
+            stats.clear();
+        }
+    }
+
+    /**
+     * @return number of each base separately, sorted by base
      */
     public Map<Integer, Long> getBaseCounts() {
-        return baseCounts;
+        Map<Integer, Long> result = new TreeMap<>();
+        for (int base = 0; base < symbolCount; base++) {
+            long count = getBaseCount(base);
+            if (count != 0 && !isLowerCase(base)) {
+                result.put(base, count);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param base symbol of the base, case insensitive
+     * @return number of the given base
+     */
+    public long getBaseCount(int base) {
+        if (isLowerCase(base)) {
+            base -= 'a' - 'A';
+        }
+        long count = baseCounts[base];
+        if (base >= 'A' && base <= 'Z') {
+            count += baseCounts[base + ('a' - 'A')];
+        }
+        return count;
+    }
+
+    /**
+     * @return number of all bases
+     */
+    public long getTotalBaseCount() {
+        long total = 0;
+        for (long count : baseCounts) {
+            total += count;
+        }
+        return total;
     }
 
     /**
@@ -40,6 +145,13 @@ public class FastaResult {
         return sequenceCount;
     }
 
+    /**
+     * @return statistics of sequences, null if they aren't collected
+     */
+    public SequenceStats getStats() {
+        return stats;
+    }
+
 
     /**
      * Merges two {@link FastaResult} into the first one.
@@ -49,11 +161,84 @@ public class FastaResult {
      * @return result of merged results as result1
      */
     public static FastaResult merge(FastaResult result1, FastaResult result2) {
-        Map<Integer, Long> mergedMap = Stream.of(result1.getBaseCounts(), result2.getBaseCounts())
-                .flatMap(m -> m.entrySet().stream())
-                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue, Long::sum));
-        result1.baseCounts = new TreeMap<>(mergedMap);
-        result1.sequenceCount = result1.getSequenceCount() + result2.getSequenceCount();
+        long[] counts1 = result1.baseCounts;
+        long[] counts2 = result2.baseCounts;
+        for (int i = 0; i < symbolCount; i++) {
+            counts1[i] += counts2[i];
+        }
+        result1.sequenceCount += result2.sequenceCount;
+        if (result2.stats != null) {
+            if (result1.stats == null) {
+                result1.stats = new SequenceStats(result2.stats.getKmerSize());
+            }
+            SequenceStats.merge(result1.stats, result2.stats);
+        }
         return result1;
     }
+
+    /**
+     * Writes the result in binary format: magic number and version followed by the number of sequences,
+     * counts of symbols which occurred and optional sequence statistics. Numbers are written in
+     * variable length encoding, so the size depends on the number of different symbols and k-mers only.
+     * The stream isn't closed.
+     *
+     * @param out stream to write the result into
+     * @throws IOException if unable to write into the stream
+     */
+    public void write(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(magic);
+        data.writeByte(version);
+        Varints.write(data, sequenceCount);
+        int symbols = 0;
+        for (long count : baseCounts) {
+            if (count != 0) {
+                symbols++;
+            }
+        }
+        Varints.write(data, symbols);
+        for (int base = 0; base < symbolCount; base++) {
+            if (baseCounts[base] != 0) {
+                data.writeByte(base);
+                Varints.write(data, baseCounts[base]);
+            }
+        }
+        data.writeBoolean(stats != null);
+        if (stats != null) {
+            stats.write(data);
+        }
+        data.flush();
+    }
+
+    /**
+     * Reads a result written by {@link #write}. The stream isn't closed.
+     *
+     * @param in stream to read the result from
+     * @return result
+     * @throws IOException if unable to read the stream, it doesn't contain a result or its version isn't supported
+     */
+    public static FastaResult read(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != magic) {
+            throw new IOException("Not a binary result");
+        }
+        int resultVersion = data.readUnsignedByte();
+        if (resultVersion != version) {
+            throw new IOException("Unsupported version of binary result " + resultVersion);
+        }
+        FastaResult result = new FastaResult();
+        result.sequenceCount = Varints.read(data);
+        int symbols = Varints.readInt(data, symbolCount);
+        for (int i = 0; i < symbols; i++) {
+            result.baseCounts[data.readUnsignedByte()] = Varints.read(data);
+        }
+        if (data.readBoolean()) {
+            result.stats = SequenceStats.read(data);
+        }
+        return result;
+    }
+
+    private static boolean isLowerCase(int base) {
+        return base >= 'a' && base <= 'z';
+    }
 }
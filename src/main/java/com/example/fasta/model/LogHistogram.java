@@ -0,0 +1,242 @@
+package com.example.fasta.model;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Histogram of non-negative values in buckets growing with the magnitude of values, so it takes
+ * fixed memory for any number of values and is merged by adding buckets. Values below
+ * {@value #subBucketCount} have their own buckets, every next power of two is split into
+ * {@value #subBucketCount} buckets, so a value is known with relative error below 1/{@value #subBucketCount}.
+ * Quantiles are estimated by the middle of the bucket, limited by the exact minimum and maximum.
+ *
+ * @author rdanilov
+ * @since 21.10.2018
+ */
+public class LogHistogram {
+
+    private static final int subBucketBits = 6;
+    private static final int subBucketCount = 1 << subBucketBits;
+    private static final int bucketCount = (Long.SIZE - subBucketBits) * subBucketCount;
+
+    private final long[] counts;
+    private long count;
+    private long total;
+    private long min;
+    private long max;
+
+    /**
+     * Constructs an empty instance of {@link LogHistogram}
+     */
+    public LogHistogram() {
+        this.counts = new long[bucketCount];
+        this.min = Long.MAX_VALUE;
+        this.max = -1;
+    }
+
+    /**
+     * Adds one value.
+     *
+     * @param value non-negative value
+     */
+    public void add(long value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Value must not be negative: " + value);
+        }
+        counts[bucket(value)]++;
+        count++;
+        total += value;
+        if (value < min) {
+            min = value;
+        }
+        if (value > max) {
+            max = value;
+        }
+    }
+
+    /**
+     * Resets the histogram.
+     */
+    public void clear() {
+        Arrays.fill(counts, 0);
+        count = 0;
+        total = 0;
+        min = Long.MAX_VALUE;
+        max = -1;
+    }
+
+    /**
+     * @return number of values
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return sum of all values
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * @return the least value, -1 if there are no values
+     */
+    public long getMin() {
+        return count > 0 ? min : -1;
+    }
+
+    /**
+     * @return the greatest value, -1 if there are no values
+     */
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * @param quantile quantile from 0 to 1
+     * @return estimate of the value at the quantile by the nearest rank, -1 if there are no values
+     */
+    public long getQuantile(double quantile) {
+        if (quantile < 0 || quantile > 1) {
+            throw new IllegalArgumentException("Quantile must be from 0 to 1: " + quantile);
+        }
+        if (count == 0) {
+            return -1;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * count));
+        long seen = 0;
+        for (int bucket = 0; bucket < bucketCount; bucket++) {
+            seen += counts[bucket];
+            if (seen >= rank) {
+                return estimate(bucket);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * N50 is the value such that values not less than it sum up to at least half of the total,
+     * for lengths of sequences it is the length of the shortest sequence among the longest ones
+     * containing half of all bases.
+     *
+     * @return estimate of N50, -1 if there are no values
+     */
+    public long getN50() {
+        if (count == 0) {
+            return -1;
+        }
+        double sum = 0;
+        for (int bucket = bucketCount - 1; bucket >= 0; bucket--) {
+            if (counts[bucket] != 0) {
+                sum += (double) counts[bucket] * estimate(bucket);
+                if (sum * 2 >= total) {
+                    return estimate(bucket);
+                }
+            }
+        }
+        return min;
+    }
+
+    /**
+     * Merges two {@link LogHistogram} into the first one.
+     *
+     * @param histogram1 the first histogram which will be merged in
+     * @param histogram2 the second histogram to be merged
+     * @return merged histogram as histogram1
+     */
+    public static LogHistogram merge(LogHistogram histogram1, LogHistogram histogram2) {
+        for (int bucket = 0; bucket < bucketCount; bucket++) {
+            histogram1.counts[bucket] += histogram2.counts[bucket];
+        }
+        histogram1.count += histogram2.count;
+        histogram1.total += histogram2.total;
+        histogram1.min = Math.min(histogram1.min, histogram2.min);
+        histogram1.max = Math.max(histogram1.max, histogram2.max);
+        return histogram1;
+    }
+
+    /**
+     * Writes the histogram as the number of values, their sum, minimum and maximum followed by
+     * non-empty buckets, each as the distance from the previous one and its count.
+     *
+     * @param out output of the binary format
+     * @throws IOException if unable to write
+     */
+    void write(DataOutput out) throws IOException {
+        Varints.write(out, count);
+        if (count == 0) {
+            return;
+        }
+        Varints.write(out, total);
+        Varints.write(out, min);
+        Varints.write(out, max);
+        int buckets = 0;
+        for (long bucketCount : counts) {
+            if (bucketCount != 0) {
+                buckets++;
+            }
+        }
+        Varints.write(out, buckets);
+        int previous = 0;
+        for (int bucket = 0; bucket < bucketCount; bucket++) {
+            if (counts[bucket] != 0) {
+                Varints.write(out, bucket - previous);
+                Varints.write(out, counts[bucket]);
+                previous = bucket;
+            }
+        }
+    }
+
+    /**
+     * Reads the histogram written by {@link #write}, replacing all values of this one.
+     *
+     * @param in input of the binary format
+     * @throws IOException if unable to read or the data is malformed
+     */
+    void read(DataInput in) throws IOException {
+        clear();
+        count = Varints.read(in);
+        if (count == 0) {
+            return;
+        }
+        total = Varints.read(in);
+        min = Varints.read(in);
+        max = Varints.read(in);
+        int buckets = Varints.readInt(in, bucketCount);
+        int bucket = 0;
+        for (int i = 0; i < buckets; i++) {
+            bucket += Varints.readInt(in, bucketCount - 1 - bucket);
+            counts[bucket] = Varints.read(in);
+        }
+    }
+
+    private long estimate(int bucket) {
+        long lower = lowerBound(bucket);
+        long middle = lower + (width(bucket) - 1) / 2;
+        return Math.max(min, Math.min(max, middle));
+    }
+
+    private static int bucket(long value) {
+        if (value < subBucketCount) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        return (exponent - subBucketBits + 1) * subBucketCount
+                + (int) (value >>> (exponent - subBucketBits)) - subBucketCount;
+    }
+
+    private static long lowerBound(int bucket) {
+        if (bucket < subBucketCount) {
+            return bucket;
+        }
+        int shift = bucket / subBucketCount - 1;
+        return (long) (bucket % subBucketCount + subBucketCount) << shift;
+    }
+
+    private static long width(int bucket) {
+        return bucket < subBucketCount ? 1 : 1L << (bucket / subBucketCount - 1);
+    }
+}
@@ -0,0 +1,429 @@
+package com.example.fasta.model;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Statistics of sequences collected in the same pass as base counts: histogram of lengths
+ * of sequences, histograms of GC content and of ambiguous bases of sequences and optionally frequency
+ * of k-mers. A sequence is a whole record, its bases are added in order, possibly in several parts
+ * such as wrapped lines, and the sequence is finished by {@link #endSequence} at the next description
+ * or at the end of the file. Bases A, C, G and T in any case are encoded by 2 bits and the last k
+ * of them are kept as a rolling k-mer, any other symbol is ambiguous and breaks the k-mer.
+ * K-mers span line breaks but don't span sequences. Counts of k-mers are kept in an open addressing table
+ * of primitive longs, so only k-mers which occur take memory, all other statistics take fixed memory,
+ * see {@link LogHistogram}.
+ * GC content of a sequence is the percent of G and C among its A, C, G and T bases, ambiguous content
+ * is the percent of other symbols among all its bases. Empty sequences are counted only in lengths,
+ * a record without sequence lines isn't a sequence.
+ *
+ * @author rdanilov
+ * @since 21.10.2018
+ */
+public class SequenceStats {
+
+    /**
+     * Maximal size of k-mers, a k-mer is encoded in one long
+     */
+    public static final int maxKmerSize = 31;
+
+    private static final int percentCount = 101;
+    private static final int initialCapacity = 1024;
+    private static final long hashMultiplier = 0x9E3779B97F4A7C15L;
+    private static final byte[] codes = new byte[256];
+    private static final char[] bases = {'A', 'C', 'G', 'T'};
+
+    static {
+        Arrays.fill(codes, (byte) -1);
+        for (int code = 0; code < bases.length; code++) {
+            codes[bases[code]] = (byte) code;
+            codes[Character.toLowerCase(bases[code])] = (byte) code;
+        }
+    }
+
+    private final int kmerSize;
+    private final long kmerMask;
+    private final LogHistogram lengths;
+    private final long[] gcHistogram;
+    private final long[] ambiguousHistogram;
+    private long[] table;
+    private int shift;
+    private int distinctKmers;
+
+    private boolean sequenceStarted;
+    private long kmer;
+    private int kmerBases;
+    private long sequenceLength;
+    private long sequenceGc;
+    private long sequenceBases;
+
+    /**
+     * Constructs an empty instance of {@link SequenceStats} without k-mers
+     */
+    public SequenceStats() {
+        this(0);
+    }
+
+    /**
+     * Constructs an empty instance of {@link SequenceStats}
+     *
+     * @param kmerSize size of k-mers from 1 to {@value #maxKmerSize}, 0 if k-mers aren't counted
+     */
+    public SequenceStats(int kmerSize) {
+        if (kmerSize < 0 || kmerSize > maxKmerSize) {
+            throw new IllegalArgumentException("K-mer size must be from 0 to " + maxKmerSize);
+        }
+        this.kmerSize = kmerSize;
+        this.kmerMask = (1L << 2 * kmerSize) - 1;
+        this.lengths = new LogHistogram();
+        this.gcHistogram = new long[percentCount];
+        this.ambiguousHistogram = new long[percentCount];
+        this.table = new long[kmerSize > 0 ? initialCapacity * 2 : 0];
+        this.shift = 64 - Integer.numberOfTrailingZeros(initialCapacity);
+    }
+
+    /**
+     * Adds bases of the current sequence, starting a new one if the previous one is finished.
+     *
+     * @param bytes array containing the bases
+     * @param from index of the first base
+     * @param to index after the last base
+     */
+    public void addBases(byte[] bytes, int from, int to) {
+        sequenceStarted = true;
+        sequenceLength += to - from;
+        if (kmerSize == 0) {
+            addBasesWithoutKmers(bytes, from, to);
+            return;
+        }
+        long kmer = this.kmer;
+        int kmerBases = this.kmerBases;
+        long gc = 0;
+        long acgt = 0;
+        for (int i = from; i < to; i++) {
+            int code = codes[bytes[i] & 0xFF];
+            if (code < 0) {
+                kmerBases = 0;
+                continue;
+            }
+            acgt++;
+            gc += (code ^ code >>> 1) & 1;
+            kmer = (kmer << 2 | code) & kmerMask;
+            if (kmerBases < kmerSize) {
+                kmerBases++;
+            }
+            if (kmerBases == kmerSize) {
+                increment(kmer);
+            }
+        }
+        this.kmer = kmer;
+        this.kmerBases = kmerBases;
+        this.sequenceGc += gc;
+        this.sequenceBases += acgt;
+    }
+
+    /**
+     * Finishes the current sequence, the next bases start a new one. Does nothing if no bases
+     * were added since the previous sequence was finished.
+     */
+    public void endSequence() {
+        if (!sequenceStarted) {
+            return;
+        }
+        lengths.add(sequenceLength);
+        if (sequenceBases > 0) {
+            gcHistogram[percent(sequenceGc, sequenceBases)]++;
+        }
+        if (sequenceLength > 0) {
+            ambiguousHistogram[percent(sequenceLength - sequenceBases, sequenceLength)]++;
+        }
+        resetSequence();
+    }
+
+    /**
+     * Resets all statistics and the current sequence.
+     */
+    public void clear() {
+        Arrays.fill(table, 0);
+        distinctKmers = 0;
+        lengths.clear();
+        Arrays.fill(gcHistogram, 0);
+        Arrays.fill(ambiguousHistogram, 0);
+        resetSequence();
+    }
+
+    /**
+     * @return size of k-mers, 0 if k-mers aren't counted
+     */
+    public int getKmerSize() {
+        return kmerSize;
+    }
+
+    /**
+     * @return number of different k-mers which occurred
+     */
+    public int getDistinctKmerCount() {
+        return distinctKmers;
+    }
+
+    /**
+     * @return codes of k-mers which occurred in ascending order, which is the alphabetical order of k-mers
+     */
+    public long[] getKmers() {
+        long[] kmers = new long[distinctKmers];
+        int count = 0;
+        for (int slot = 0; slot < table.length; slot += 2) {
+            if (table[slot] != 0) {
+                kmers[count++] = table[slot] - 1;
+            }
+        }
+        Arrays.sort(kmers);
+        return kmers;
+    }
+
+    /**
+     * @param kmer code of the k-mer
+     * @return number of occurrences of the k-mer
+     */
+    public long getKmerCount(long kmer) {
+        if (table.length == 0) {
+            return 0;
+        }
+        long key = kmer + 1;
+        int mask = table.length - 2;
+        for (int slot = slot(kmer); ; slot = (slot + 2) & mask) {
+            if (table[slot] == key) {
+                return table[slot + 1];
+            }
+            if (table[slot] == 0) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * @param kmer k-mer of the size of these statistics, case insensitive
+     * @return number of occurrences of the k-mer
+     */
+    public long getKmerCount(String kmer) {
+        if (kmer.length() != kmerSize) {
+            throw new IllegalArgumentException("K-mer must be of size " + kmerSize + ": " + kmer);
+        }
+        long code = 0;
+        for (int i = 0; i < kmer.length(); i++) {
+            char base = kmer.charAt(i);
+            if (base >= codes.length || codes[base] < 0) {
+                throw new IllegalArgumentException("K-mer must consist of A, C, G and T: " + kmer);
+            }
+            code = code << 2 | codes[base];
+        }
+        return getKmerCount(code);
+    }
+
+    /**
+     * @param kmer code of the k-mer
+     * @return bases of the k-mer
+     */
+    public String decode(long kmer) {
+        char[] chars = new char[kmerSize];
+        for (int i = kmerSize - 1; i >= 0; i--) {
+            chars[i] = bases[(int) (kmer & 3)];
+            kmer >>>= 2;
+        }
+        return new String(chars);
+    }
+
+    /**
+     * @return histogram of lengths of sequences, must not be modified
+     */
+    public LogHistogram getLengths() {
+        return lengths;
+    }
+
+    /**
+     * @return number of sequences by percent of GC content from 0 to 100
+     */
+    public long[] getGcHistogram() {
+        return gcHistogram.clone();
+    }
+
+    /**
+     * @return number of sequences by percent of ambiguous bases from 0 to 100
+     */
+    public long[] getAmbiguousHistogram() {
+        return ambiguousHistogram.clone();
+    }
+
+    /**
+     * Merges two {@link SequenceStats} into the first one. The current sequence of the second one
+     * isn't merged.
+     *
+     * @param stats1 the first statistics which will be merged in
+     * @param stats2 the second statistics to be merged
+     * @return merged statistics as stats1
+     */
+    public static SequenceStats merge(SequenceStats stats1, SequenceStats stats2) {
+        if (stats1.kmerSize != stats2.kmerSize) {
+            throw new IllegalArgumentException("Statistics of different k-mer sizes can't be merged");
+        }
+        long[] table2 = stats2.table;
+        for (int slot = 0; slot < table2.length; slot += 2) {
+            if (table2[slot] != 0) {
+                stats1.add(table2[slot] - 1, table2[slot + 1]);
+            }
+        }
+        LogHistogram.merge(stats1.lengths, stats2.lengths);
+        for (int percent = 0; percent < percentCount; percent++) {
+            stats1.gcHistogram[percent] += stats2.gcHistogram[percent];
+            stats1.ambiguousHistogram[percent] += stats2.ambiguousHistogram[percent];
+        }
+        return stats1;
+    }
+
+    /**
+     * Writes the statistics as the size of k-mers, the histogram of lengths, non-empty percents of GC content
+     * and of ambiguous bases and k-mers in ascending order, each as the distance from the previous one
+     * and its count. The current sequence isn't written.
+     *
+     * @param out output of the binary format
+     * @throws IOException if unable to write
+     */
+    void write(DataOutput out) throws IOException {
+        out.writeByte(kmerSize);
+        lengths.write(out);
+        writePercents(out, gcHistogram);
+        writePercents(out, ambiguousHistogram);
+        long[] kmers = getKmers();
+        Varints.write(out, kmers.length);
+        long previous = 0;
+        for (long kmer : kmers) {
+            Varints.write(out, kmer - previous);
+            Varints.write(out, getKmerCount(kmer));
+            previous = kmer;
+        }
+    }
+
+    /**
+     * Reads statistics written by {@link #write}.
+     *
+     * @param in input of the binary format
+     * @return statistics
+     * @throws IOException if unable to read or the data is malformed
+     */
+    static SequenceStats read(DataInput in) throws IOException {
+        int kmerSize = in.readUnsignedByte();
+        if (kmerSize > maxKmerSize) {
+            throw new IOException("Unexpected k-mer size " + kmerSize);
+        }
+        SequenceStats stats = new SequenceStats(kmerSize);
+        stats.lengths.read(in);
+        readPercents(in, stats.gcHistogram);
+        readPercents(in, stats.ambiguousHistogram);
+        int kmers = Varints.readInt(in, kmerSize > 0 ? Integer.MAX_VALUE : 0);
+        long kmer = 0;
+        for (int i = 0; i < kmers; i++) {
+            kmer += Varints.read(in);
+            if (kmer > stats.kmerMask) {
+                throw new IOException("K-mer code " + kmer + " is out of range");
+            }
+            stats.add(kmer, Varints.read(in));
+        }
+        return stats;
+    }
+
+    private static void writePercents(DataOutput out, long[] histogram) throws IOException {
+        int percents = 0;
+        for (long count : histogram) {
+            if (count != 0) {
+                percents++;
+            }
+        }
+        Varints.write(out, percents);
+        for (int percent = 0; percent < percentCount; percent++) {
+            if (histogram[percent] != 0) {
+                out.writeByte(percent);
+                Varints.write(out, histogram[percent]);
+            }
+        }
+    }
+
+    private static void readPercents(DataInput in, long[] histogram) throws IOException {
+        int percents = Varints.readInt(in, percentCount);
+        for (int i = 0; i < percents; i++) {
+            int percent = in.readUnsignedByte();
+            if (percent >= percentCount) {
+                throw new IOException("Unexpected percent " + percent);
+            }
+            histogram[percent] = Varints.read(in);
+        }
+    }
+
+    private void addBasesWithoutKmers(byte[] bytes, int from, int to) {
+        long gc = 0;
+        long acgt = 0;
+        for (int i = from; i < to; i++) {
+            int code = codes[bytes[i] & 0xFF];
+            if (code >= 0) {
+                acgt++;
+                gc += (code ^ code >>> 1) & 1;
+            }
+        }
+        sequenceGc += gc;
+        sequenceBases += acgt;
+    }
+
+    private void resetSequence() {
+        sequenceStarted = false;
+        kmer = 0;
+        kmerBases = 0;
+        sequenceLength = 0;
+        sequenceGc = 0;
+        sequenceBases = 0;
+    }
+
+    private static int percent(long part, long whole) {
+        return (int) ((part * 100 + whole / 2) / whole);
+    }
+
+    private void increment(long kmer) {
+        add(kmer, 1);
+    }
+
+    private void add(long kmer, long count) {
+        long key = kmer + 1;
+        int mask = table.length - 2;
+        int slot = slot(kmer);
+        while (table[slot] != key) {
+            if (table[slot] == 0) {
+                if ((distinctKmers + 1) * 4L > table.length * 3L / 2) {
+                    grow();
+                    add(kmer, count);
+                    return;
+                }
+                table[slot] = key;
+                distinctKmers++;
+                break;
+            }
+            slot = (slot + 2) & mask;
+        }
+        table[slot + 1] += count;
+    }
+
+    private int slot(long kmer) {
+        return (int) ((kmer * hashMultiplier) >>> shift) << 1;
+    }
+
+    private void grow() {
+        long[] oldTable = table;
+        table = new long[oldTable.length * 2];
+        shift--;
+        distinctKmers = 0;
+        for (int slot = 0; slot < oldTable.length; slot += 2) {
+            if (oldTable[slot] != 0) {
+                add(oldTable[slot] - 1, oldTable[slot + 1]);
+            }
+        }
+    }
+}
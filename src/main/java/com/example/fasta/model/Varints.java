@@ -0,0 +1,50 @@
+package com.example.fasta.model;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Variable length encoding of non-negative numbers used by the binary format of {@link FastaResult}:
+ * 7 bits per byte starting from the lowest ones, the high bit is set in every byte except the last one.
+ * Small counts, which are the most frequent ones, take one or two bytes.
+ *
+ * @author rdanilov
+ * @since 21.10.2018
+ */
+final class Varints {
+
+    private Varints() {
+    }
+
+    static void write(DataOutput out, long value) throws IOException {
+        if (value < 0) {
+            throw new IllegalArgumentException("Value must not be negative: " + value);
+        }
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    static long read(DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < Long.SIZE; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable length number");
+    }
+
+    static int readInt(DataInput in, int max) throws IOException {
+        long value = read(in);
+        if (value > max) {
+            throw new IOException("Number " + value + " is out of range, at most " + max + " is expected");
+        }
+        return (int) value;
+    }
+}
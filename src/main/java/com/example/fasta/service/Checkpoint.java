@@ -0,0 +1,259 @@
+package com.example.fasta.service;
+
+import com.example.fasta.model.FastaResult;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * State of an interrupted job saved as tab separated lines: input files with their sizes and
+ * offsets of the next unread line, position of the merger, length of the sequence file
+ * and counts of all lines written before the checkpoint.
+ * The file is replaced atomically, so it always describes a complete checkpoint.
+ *
+ * @author rdanilov
+ * @since 21.10.2018
+ */
+final class Checkpoint {
+
+    private static final Logger log = Logger.getLogger(Checkpoint.class.getName());
+
+    private static final int version = 1;
+
+    /**
+     * Offset of a file which has no lines left
+     */
+    static final long fileDone = -1;
+
+    private final List<InputFile> files;
+    private final int currentTaskNum;
+    private final long currentRowNum;
+    private final boolean rowChanged;
+    private final long outputOffset;
+    private final FastaResult result;
+
+    /**
+     * Constructs an instance of {@link Checkpoint}
+     *
+     * @param files input files in order of arguments
+     * @param currentTaskNum index of the active file whose line is written next
+     * @param currentRowNum current row number
+     * @param rowChanged true if description of the current row hasn't been written yet
+     * @param outputOffset length of the sequence file containing all lines before the checkpoint
+     * @param result counts of all lines before the checkpoint
+     */
+    Checkpoint(List<InputFile> files, int currentTaskNum, long currentRowNum, boolean rowChanged,
+               long outputOffset, FastaResult result) {
+        this.files = Collections.unmodifiableList(new ArrayList<>(files));
+        this.currentTaskNum = currentTaskNum;
+        this.currentRowNum = currentRowNum;
+        this.rowChanged = rowChanged;
+        this.outputOffset = outputOffset;
+        this.result = result;
+    }
+
+    List<InputFile> getFiles() {
+        return files;
+    }
+
+    int getCurrentTaskNum() {
+        return currentTaskNum;
+    }
+
+    long getCurrentRowNum() {
+        return currentRowNum;
+    }
+
+    boolean isRowChanged() {
+        return rowChanged;
+    }
+
+    long getOutputOffset() {
+        return outputOffset;
+    }
+
+    FastaResult getResult() {
+        return result;
+    }
+
+    /**
+     * Checks if the checkpoint was made for the same files, which haven't been changed since then.
+     *
+     * @param names names of files in order of arguments
+     * @param inputFiles files in order of arguments
+     * @return result of the check
+     */
+    boolean matches(List<String> names, List<File> inputFiles) {
+        if (files.size() != inputFiles.size()) {
+            return false;
+        }
+        for (int i = 0; i < files.size(); i++) {
+            InputFile saved = files.get(i);
+            File file = inputFiles.get(i);
+            if (!saved.getName().equals(names.get(i)) || saved.getSize() != file.length()
+                    || saved.getLastModified() != file.lastModified()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes the checkpoint into a temporary file and moves it to the given path.
+     *
+     * @param path path of the checkpoint file
+     * @throws IOException if unable to write the file
+     */
+    void write(Path path) throws IOException {
+        Path tmpPath = Paths.get(path + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(tmpPath)) {
+            FastaReport.writeLine(writer, "VERSION", version);
+            for (InputFile file : files) {
+                writer.append("FILE")
+                        .append("\t").append(String.valueOf(file.getSize()))
+                        .append("\t").append(String.valueOf(file.getLastModified()))
+                        .append("\t").append(String.valueOf(file.getOffset()))
+                        .append("\t").append(file.getName())
+                        .append("\n");
+            }
+            FastaReport.writeLine(writer, "TASK", currentTaskNum);
+            FastaReport.writeLine(writer, "ROW", currentRowNum);
+            FastaReport.writeLine(writer, "ROW_CHANGED", rowChanged ? 1 : 0);
+            FastaReport.writeLine(writer, "OUTPUT", outputOffset);
+            FastaReport.writeLine(writer, "SEQUENCE_CNT", result.getSequenceCount());
+            for (Map.Entry<Integer, Long> entry : result.getBaseCounts().entrySet()) {
+                writer.append("BASE")
+                        .append("\t").append(String.valueOf(entry.getKey()))
+                        .append("\t").append(String.valueOf(entry.getValue()))
+                        .append("\n");
+            }
+        }
+        Files.move(tmpPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads the checkpoint file to continue a job from it. The file is deleted if checkpoints are disabled
+     * or it was made for other files, a file which can't be read is ignored.
+     *
+     * @param path path of the checkpoint file
+     * @param enabled true if checkpoints are enabled
+     * @param fileNames names of input files of the job
+     * @param files input files of the job
+     * @return checkpoint or null if the job starts from the beginning
+     */
+    static Checkpoint load(Path path, boolean enabled, List<String> fileNames, List<File> files) {
+        try {
+            if (enabled) {
+                Checkpoint checkpoint = read(path);
+                if (checkpoint != null && checkpoint.matches(fileNames, files)) {
+                    log.info("Continuing from checkpoint at row " + checkpoint.getCurrentRowNum());
+                    return checkpoint;
+                }
+            }
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.severe("Can't read checkpoint " + path.getFileName() + ": " + e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Reads the checkpoint file.
+     *
+     * @param path path of the checkpoint file
+     * @return checkpoint or null if the file doesn't exist
+     * @throws IOException if unable to read the file or its format is wrong
+     */
+    static Checkpoint read(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return null;
+        }
+        List<InputFile> files = new ArrayList<>();
+        Map<Integer, Long> baseCounts = new HashMap<>();
+        Map<String, Long> values = new HashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(path)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t", 5);
+                try {
+                    if ("FILE".equals(fields[0]) && fields.length == 5) {
+                        files.add(new InputFile(fields[4], Long.parseLong(fields[1]),
+                                Long.parseLong(fields[2]), Long.parseLong(fields[3])));
+                    } else if ("BASE".equals(fields[0]) && fields.length == 3) {
+                        baseCounts.put(Integer.parseInt(fields[1]), Long.parseLong(fields[2]));
+                    } else if (fields.length == 2) {
+                        values.put(fields[0], Long.parseLong(fields[1]));
+                    } else {
+                        throw new IOException("Wrong checkpoint line: " + line);
+                    }
+                } catch (NumberFormatException e) {
+                    throw new IOException("Wrong checkpoint line: " + line, e);
+                }
+            }
+        }
+        if (values.getOrDefault("VERSION", 0L) != version) {
+            throw new IOException("Unsupported checkpoint version");
+        }
+        try {
+            return new Checkpoint(files, Math.toIntExact(requireValue(values, "TASK")),
+                    requireValue(values, "ROW"), requireValue(values, "ROW_CHANGED") != 0,
+                    requireValue(values, "OUTPUT"), new FastaResult(baseCounts, requireValue(values, "SEQUENCE_CNT")));
+        } catch (IllegalArgumentException | ArithmeticException e) {
+            throw new IOException("Wrong checkpoint: " + e.getMessage(), e);
+        }
+    }
+
+    private static long requireValue(Map<String, Long> values, String name) throws IOException {
+        Long value = values.get(name);
+        if (value == null) {
+            throw new IOException("Checkpoint has no " + name);
+        }
+        return value;
+    }
+
+    /**
+     * Input file of the job and offset of its next unread line in decompressed bytes.
+     */
+    static final class InputFile {
+
+        private final String name;
+        private final long size;
+        private final long lastModified;
+        private final long offset;
+
+        InputFile(String name, long size, long lastModified, long offset) {
+            this.name = name;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.offset = offset;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        long getSize() {
+            return size;
+        }
+
+        long getLastModified() {
+            return lastModified;
+        }
+
+        long getOffset() {
+            return offset;
+        }
+    }
+}
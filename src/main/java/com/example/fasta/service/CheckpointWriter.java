@@ -0,0 +1,94 @@
+package com.example.fasta.service;
+
+import com.example.fasta.concurrent.CheckpointHandler;
+import com.example.fasta.concurrent.FastaFileWorker;
+import com.example.fasta.concurrent.MergePosition;
+import com.example.fasta.io.BlockBoundaryOutput;
+import com.example.fasta.metrics.Timer;
+import com.example.fasta.model.FastaResult;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Saves {@link Checkpoint}s of a running job. The sequence file is ended at a block boundary
+ * and synced to disk before the checkpoint file is replaced, so the checkpoint never refers
+ * to bytes which haven't been written.
+ *
+ * @author rdanilov
+ * @since 21.10.2018
+ */
+class CheckpointWriter implements CheckpointHandler {
+
+    private final Path checkpointPath;
+    private final Path sequencePath;
+    private final BlockBoundaryOutput output;
+    private final List<String> fileNames;
+    private final List<File> files;
+    private final FastaFileWorker[] workers;
+    private final FastaResult initialResult;
+    private final Timer timer;
+
+    /**
+     * Constructs an instance of {@link CheckpointWriter}
+     *
+     * @param checkpointPath path of the checkpoint file
+     * @param sequencePath path of the sequence file
+     * @param output compressed stream of the sequence file
+     * @param fileNames names of files in order of arguments
+     * @param files files in order of arguments
+     * @param workers workers of files in order of arguments, null for files done before the job was resumed
+     * @param initialResult counts of lines written before the job was resumed
+     * @param timer timer of checkpoints
+     */
+    CheckpointWriter(Path checkpointPath, Path sequencePath, BlockBoundaryOutput output, List<String> fileNames,
+                     List<File> files, FastaFileWorker[] workers, FastaResult initialResult, Timer timer) {
+        this.checkpointPath = checkpointPath;
+        this.sequencePath = sequencePath;
+        this.output = output;
+        this.fileNames = fileNames;
+        this.files = files;
+        this.workers = workers;
+        this.initialResult = initialResult;
+        this.timer = timer;
+    }
+
+    @Override
+    public void checkpoint(MergePosition position) throws IOException {
+        long start = System.nanoTime();
+        long outputOffset = output.endBlock();
+        try (FileChannel channel = FileChannel.open(sequencePath, StandardOpenOption.WRITE)) {
+            channel.force(false);
+        }
+        long[] offsets = new long[workers.length];
+        Arrays.fill(offsets, Checkpoint.fileDone);
+        FastaResult result = FastaResult.merge(new FastaResult(), initialResult);
+        Set<FastaFileWorker> activeWorkers = Collections.newSetFromMap(new IdentityHashMap<>());
+        activeWorkers.addAll(position.getActiveWorkers());
+        for (int i = 0; i < workers.length; i++) {
+            if (workers[i] != null) {
+                FastaResult.merge(result, workers[i].getConsumedResult());
+                if (activeWorkers.contains(workers[i])) {
+                    offsets[i] = workers[i].getConsumedOffset();
+                }
+            }
+        }
+        List<Checkpoint.InputFile> inputFiles = new ArrayList<>();
+        for (int i = 0; i < workers.length; i++) {
+            File file = files.get(i);
+            inputFiles.add(new Checkpoint.InputFile(fileNames.get(i), file.length(), file.lastModified(), offsets[i]));
+        }
+        new Checkpoint(inputFiles, position.getCurrentTaskNum(), position.getCurrentRowNum(), position.isRowChanged(),
+                outputOffset, result).write(checkpointPath);
+        timer.recordSince(start);
+    }
+}
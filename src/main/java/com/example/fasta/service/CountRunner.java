@@ -0,0 +1,201 @@
+package com.example.fasta.service;
+
+import com.example.fasta.concurrent.FastaFileCounter;
+import com.example.fasta.concurrent.FastaRangeCounter;
+import com.example.fasta.io.BgzfIndex;
+import com.example.fasta.io.FastaScanner;
+import com.example.fasta.metrics.Counter;
+import com.example.fasta.metrics.FileMetrics;
+import com.example.fasta.metrics.MetricsRegistry;
+import com.example.fasta.model.FastaResult;
+import com.example.fasta.model.SequenceStats;
+import com.example.fasta.service.FastaInputs.InputFormat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * Runner of counting files without writing the sequence file, used by report-only mode and by shards.
+ * Every file is counted by its own {@link FastaFileCounter}, or by {@link FastaRangeCounter} if it is split
+ * into ranges, and results of unchanged files are taken from {@link StatsCache}.
+ *
+ * @author rdanilov
+ * @since 21.10.2018
+ */
+final class CountRunner {
+
+    private static final Logger log = Logger.getLogger(CountRunner.class.getName());
+
+    private final JobContext context;
+    private final FastaInputs inputs;
+    private final PackedStore packedStore;
+
+    /**
+     * Constructs an instance of {@link CountRunner}
+     *
+     * @param context folder, settings and resources of the job
+     * @param inputs opener of input files of the job
+     * @param packedStore store of packed copies of input files
+     */
+    CountRunner(JobContext context, FastaInputs inputs, PackedStore packedStore) {
+        this.context = context;
+        this.inputs = inputs;
+        this.packedStore = packedStore;
+    }
+
+    /**
+     * Counts files, see {@link FastaFileService#countFastaFiles}.
+     *
+     * @param fileNames names of files to be read
+     * @return counts of all files together
+     */
+    FastaResult count(List<String> fileNames) {
+        List<File> files = context.getFiles(fileNames);
+        MetricsRegistry metrics = new MetricsRegistry();
+        MetricsPublisher publisher = null;
+        try {
+            publisher = context.startMetricsPublisher(metrics);
+            return countFiles(fileNames, files, metrics);
+        } catch (IOException e) {
+            log.severe("Something went wrong: " + e.getMessage());
+            throw new IllegalStateException("Unable to read some files", e);
+        } finally {
+            if (publisher != null) {
+                publisher.close();
+            }
+        }
+    }
+
+    /**
+     * Counts files and writes their result into {@value FastaFileService#reportFileName}.
+     *
+     * @param fileNames names of files to be read
+     */
+    void report(List<String> fileNames) {
+        FastaResult result = count(fileNames);
+        try {
+            context.writeReportFile(result, fileNames.size());
+        } catch (IOException e) {
+            log.severe("Something went wrong: " + e.getMessage());
+        }
+    }
+
+    private FastaResult countFiles(List<String> fileNames, List<File> files, MetricsRegistry metrics)
+            throws IOException {
+        StatsCache cache = StatsCache.load(context.getSettings());
+        Supplier<SequenceStats> statsFactory = context.getStatsFactory(false);
+        Counter cacheHits = metrics.counter("cache.hits");
+        ExecutorService inflaters = context.obtainInflaters();
+        ExecutorService service = context.newWorkerExecutor();
+        try {
+            List<File> sources = packedStore.getPackedFiles(fileNames, files, inflaters, metrics);
+            FastaResult result = new FastaResult(statsFactory != null ? statsFactory.get() : null);
+            StatsCache.Fingerprint[] fingerprints = new StatsCache.Fingerprint[files.size()];
+            List<Future<FastaResult>> futures = new ArrayList<>();
+            List<Integer> counted = new ArrayList<>();
+            for (int i = 0; i < files.size(); i++) {
+                File file = files.get(i);
+                if (!inputs.isReadable(file)) {
+                    throw new IllegalStateException("Unable to read some files");
+                }
+                FastaResult cached = null;
+                if (cache != null && !inputs.isStreamed(file)) {
+                    fingerprints[i] = StatsCache.tryFingerprint(file);
+                    cached = fingerprints[i] != null && statsFactory == null
+                            ? cache.get(file, fingerprints[i])
+                            : null;
+                }
+                if (cached != null) {
+                    FastaResult.merge(result, cached);
+                    cacheHits.increment();
+                    continue;
+                }
+                FileMetrics fileMetrics = new FileMetrics(metrics, fileNames.get(i));
+                File input = sources.get(i);
+                InputFormat format = inputs.getInputFormat(input);
+                FastaRangeCounter rangeCounter = getRangeCounter(input, format, inflaters, fileMetrics, metrics,
+                        statsFactory);
+                if (rangeCounter != null) {
+                    futures.add(service.submit(rangeCounter::invoke));
+                } else {
+                    FastaScanner scanner = inputs.openFastaScanner(input, format, 0, inflaters, fileMetrics, metrics,
+                            false);
+                    futures.add(service.submit(new FastaFileCounter(scanner, fileMetrics, statsFactory)));
+                }
+                counted.add(i);
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                FastaResult fileResult = JobContext.getResult(futures.get(i));
+                if (fileResult == null) {
+                    throw new IllegalStateException("Unable to process some files");
+                }
+                int fileIndex = counted.get(i);
+                if (cache != null && fingerprints[fileIndex] != null) {
+                    cache.put(files.get(fileIndex), fingerprints[fileIndex], fileResult);
+                }
+                FastaResult.merge(result, fileResult);
+            }
+            if (cache != null) {
+                cache.trySave();
+            }
+            return result;
+        } finally {
+            service.shutdownNow();
+            context.releaseInflaters(inflaters);
+        }
+    }
+
+    private FastaRangeCounter getRangeCounter(File file, InputFormat format, ExecutorService inflaters,
+                                              FileMetrics fileMetrics, MetricsRegistry metrics,
+                                              Supplier<SequenceStats> statsFactory) throws IOException {
+        long splitSize = context.getSettings().getSplitSize();
+        if (splitSize == 0 || format == InputFormat.GZIP || format == InputFormat.PACKED
+                || format == InputFormat.STREAM) {
+            return null;
+        }
+        Counter fileBytes = metrics.counter(fileMetrics.getPrefix() + "fileBytesRead");
+        long[] bounds;
+        FastaRangeCounter.RangeOpener opener;
+        if (format == InputFormat.PLAIN) {
+            long size = file.length();
+            int rangeCount = (int) Math.min(Integer.MAX_VALUE - 1, (size + splitSize - 1) / splitSize);
+            bounds = new long[rangeCount + 1];
+            for (int i = 1; i <= rangeCount; i++) {
+                bounds[i] = size / rangeCount * i + size % rangeCount * i / rangeCount;
+            }
+            opener = offset -> inputs.openInputFile(file, format, offset, inflaters, fileBytes, metrics);
+        } else {
+            BgzfIndex index;
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                index = BgzfIndex.scan(channel);
+            }
+            bounds = getBlockBounds(index, splitSize);
+            opener = offset -> inputs.openBgzfRange(file, index, offset, inflaters, fileBytes, metrics);
+        }
+        return bounds.length > 2
+                ? new FastaRangeCounter(opener, bounds, fileMetrics, statsFactory)
+                : null;
+    }
+
+    private static long[] getBlockBounds(BgzfIndex index, long splitSize) {
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(0L);
+        long size = index.getUncompressedSize();
+        for (int block = 1; block < index.getBlockCount(); block++) {
+            long offset = index.getUncompressedOffset(block);
+            if (offset - bounds.get(bounds.size() - 1) >= splitSize && offset < size) {
+                bounds.add(offset);
+            }
+        }
+        bounds.add(size);
+        return bounds.stream().mapToLong(Long::longValue).toArray();
+    }
+}
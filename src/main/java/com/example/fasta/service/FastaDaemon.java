@@ -0,0 +1,264 @@
+package com.example.fasta.service;
+
+import com.example.fasta.concurrent.NamedThreadFactory;
+import com.example.fasta.metrics.Counter;
+import com.example.fasta.metrics.MetricsRegistry;
+import com.example.fasta.metrics.Timer;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Resident process running jobs put into a queue folder, so threads, codecs and buffers of
+ * {@link FastaResources} are reused instead of being created for every job and the JVM is already warm.
+ * A job is a file named {@code NAME.job} with one argument per line in the same form as on the command
+ * line, and optionally {@code --folder=PATH} with the folder of the files and the reports, the queue folder
+ * by default. A job is claimed by renaming it to {@code NAME.running}, so several daemons may share one queue.
+ * Jobs of different folders run in parallel up to the given number, each in its own {@link FastaFileService}
+ * with its own synchronizer and merger, jobs of the same folder run one after another.
+ * When a job ends, {@code NAME.done} is written atomically with its status, the error if it failed,
+ * time it waited in the queue and time it ran in milliseconds, and the running file is deleted.
+ * Latency of all jobs is kept in the daemon metrics file in the queue folder.
+ *
+ * @author rdanilov
+ * @since 21.10.2018
+ */
+public class FastaDaemon implements Closeable {
+
+    private static final Logger log = Logger.getLogger(FastaDaemon.class.getName());
+
+    public static final String jobSuffix = ".job";
+    public static final String runningSuffix = ".running";
+    public static final String doneSuffix = ".done";
+    public static final String metricsFileName = "daemon.metrics.txt";
+
+    private static final long pollInterval = 100;
+    private static final String folderOption = "--folder";
+
+    private final Path queueFolder;
+    private final FastaResources resources;
+    private final int maxJobs;
+    private final ExecutorService jobRunner;
+    private final Set<String> busyFolders;
+    private final CountDownLatch stopped;
+    private final MetricsRegistry metrics;
+    private final Timer jobTimer;
+    private final Timer queueWaitTimer;
+    private final Counter completedJobs;
+    private final Counter failedJobs;
+
+    /**
+     * Constructs an instance of {@link FastaDaemon}
+     *
+     * @param queueFolder folder polled for jobs
+     * @param resources resources shared by all jobs
+     * @param maxJobs maximal number of jobs running at the same time
+     */
+    public FastaDaemon(Path queueFolder, FastaResources resources, int maxJobs) {
+        if (maxJobs < 1) {
+            throw new IllegalArgumentException("Number of daemon jobs must be positive");
+        }
+        this.queueFolder = queueFolder;
+        this.resources = resources;
+        this.maxJobs = maxJobs;
+        this.jobRunner = Executors.newFixedThreadPool(maxJobs, new NamedThreadFactory("fasta-job"));
+        this.busyFolders = new HashSet<>();
+        this.stopped = new CountDownLatch(1);
+        this.metrics = new MetricsRegistry();
+        this.jobTimer = metrics.timer("daemon.job");
+        this.queueWaitTimer = metrics.timer("daemon.queueWait");
+        this.completedJobs = metrics.counter("daemon.completedJobs");
+        this.failedJobs = metrics.counter("daemon.failedJobs");
+        metrics.gauge("daemon.runningJobs", this::getRunningJobs);
+    }
+
+    /**
+     * Polls the queue folder and starts jobs until the daemon is closed.
+     *
+     * @throws InterruptedException if the calling thread is interrupted
+     */
+    public void run() throws InterruptedException {
+        log.info("Waiting for jobs in " + queueFolder.toAbsolutePath());
+        do {
+            try {
+                pollQueue();
+            } catch (IOException e) {
+                log.severe("Can't read queue folder " + queueFolder + ": " + e.getMessage());
+            }
+        } while (!stopped.await(pollInterval, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Stops polling and waits for the running jobs. Queued jobs stay in the queue folder.
+     */
+    @Override
+    public void close() {
+        synchronized (busyFolders) {
+            stopped.countDown();
+            jobRunner.shutdown();
+        }
+        try {
+            jobRunner.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private long getRunningJobs() {
+        synchronized (busyFolders) {
+            return busyFolders.size();
+        }
+    }
+
+    private void pollQueue() throws IOException {
+        List<Path> jobs = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(queueFolder, "*" + jobSuffix)) {
+            for (Path job : stream) {
+                jobs.add(job);
+            }
+        }
+        jobs.sort(null);
+        for (Path job : jobs) {
+            synchronized (busyFolders) {
+                if (stopped.getCount() == 0 || busyFolders.size() == maxJobs) {
+                    return;
+                }
+                claim(job);
+            }
+        }
+    }
+
+    private void claim(Path job) {
+        String fileName = job.getFileName().toString();
+        String name = fileName.substring(0, fileName.length() - jobSuffix.length());
+        List<String> args;
+        long queuedAt;
+        try {
+            args = Files.readAllLines(job, StandardCharsets.UTF_8);
+            queuedAt = Files.getLastModifiedTime(job).toMillis();
+        } catch (IOException e) {
+            log.fine("Job " + name + " is gone: " + e.getMessage());
+            return;
+        }
+        String folder = getFolder(args);
+        if (busyFolders.contains(folder)) {
+            return;
+        }
+        Path running = queueFolder.resolve(name + runningSuffix);
+        try {
+            Files.move(job, running, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.fine("Job " + name + " is claimed by another daemon: " + e.getMessage());
+            return;
+        }
+        busyFolders.add(folder);
+        long claimedAt = System.currentTimeMillis();
+        jobRunner.execute(() -> {
+            try {
+                runJob(name, running, folder, args, Math.max(0, claimedAt - queuedAt));
+            } finally {
+                synchronized (busyFolders) {
+                    busyFolders.remove(folder);
+                }
+            }
+        });
+    }
+
+    private String getFolder(List<String> args) {
+        String folder = queueFolder.toString();
+        for (String arg : args) {
+            String value = FastaOptions.getValue(arg.trim());
+            if (FastaOptions.getName(arg.trim()).equals(folderOption) && value != null && !value.isEmpty()) {
+                folder = value;
+            }
+        }
+        return folder.isEmpty() || folder.endsWith(File.separator) ? folder : folder + File.separator;
+    }
+
+    private void runJob(String name, Path running, String folder, List<String> args, long queueMillis) {
+        queueWaitTimer.record(TimeUnit.MILLISECONDS.toNanos(queueMillis));
+        long start = System.nanoTime();
+        String error = null;
+        try {
+            FastaSettings settings = new FastaSettings();
+            List<String> fileNames = new ArrayList<>();
+            for (String line : args) {
+                String arg = line.trim();
+                if (arg.isEmpty() || FastaOptions.getName(arg).equals(folderOption)) {
+                    continue;
+                }
+                if (arg.startsWith("--")) {
+                    FastaOptions.apply(settings, arg);
+                } else {
+                    fileNames.add(arg);
+                }
+            }
+            if (fileNames.isEmpty()) {
+                throw new IllegalArgumentException("You must specify at least one argument");
+            }
+            Path reportPath = Paths.get(folder + FastaFileService.reportFileName);
+            Files.deleteIfExists(reportPath);
+            new FastaFileService(folder, settings, resources).processFastaFiles(fileNames);
+            if (!Files.exists(reportPath)) {
+                error = "Report isn't written";
+            }
+        } catch (RuntimeException | IOException e) {
+            error = e.getMessage() != null ? e.getMessage() : e.toString();
+        }
+        long runNanos = System.nanoTime() - start;
+        jobTimer.record(runNanos);
+        (error == null ? completedJobs : failedJobs).increment();
+        log.info("Job " + name + (error == null ? " is done" : " failed: " + error) + " in "
+                + TimeUnit.NANOSECONDS.toMillis(runNanos) + " ms");
+        try {
+            writeDone(name, error, queueMillis, TimeUnit.NANOSECONDS.toMillis(runNanos));
+            Files.deleteIfExists(running);
+            writeMetrics();
+        } catch (IOException e) {
+            log.severe("Can't write result of job " + name + ": " + e.getMessage());
+        }
+    }
+
+    private void writeDone(String name, String error, long queueMillis, long runMillis) throws IOException {
+        Path tmpPath = queueFolder.resolve(name + doneSuffix + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(tmpPath)) {
+            writer.append("STATUS\t").append(error == null ? "OK" : "FAILED").append("\n");
+            if (error != null) {
+                writer.append("ERROR\t").append(error.replace('\n', ' ')).append("\n");
+            }
+            FastaReport.writeLine(writer, "QUEUE_MS", queueMillis);
+            FastaReport.writeLine(writer, "RUN_MS", runMillis);
+        }
+        Files.move(tmpPath, queueFolder.resolve(name + doneSuffix), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private synchronized void writeMetrics() throws IOException {
+        Path tmpPath = queueFolder.resolve(metricsFileName + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(tmpPath)) {
+            for (Map.Entry<String, Long> entry : metrics.snapshot().entrySet()) {
+                FastaReport.writeLine(writer, entry.getKey(), entry.getValue());
+            }
+        }
+        Files.move(tmpPath, queueFolder.resolve(metricsFileName), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+}
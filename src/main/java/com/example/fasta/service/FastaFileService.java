@@ -1,31 +1,16 @@
 package com.example.fasta.service;
 
+import com.example.fasta.concurrent.FastaFileCounter;
 import com.example.fasta.concurrent.FastaFileWorker;
-import com.example.fasta.concurrent.FastaSynchronizer;
+import com.example.fasta.concurrent.FastaMerger;
+import com.example.fasta.concurrent.FastaRangeCounter;
+import com.example.fasta.io.PackedSequenceFile;
+import com.example.fasta.io.RecordWriter;
 import com.example.fasta.model.FastaResult;
+import com.example.fasta.model.SequenceStats;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
 import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.util.List;
-import java.util.Map;
-import java.util.Objects;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.logging.Logger;
-import java.util.stream.Collectors;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
 
 /**
  * Service processing *.fasta files.
@@ -35,21 +20,27 @@ import java.util.zip.GZIPOutputStream;
  */
 public class FastaFileService {
 
-    private static final Logger log = Logger.getLogger(FastaFileService.class.getName());
-
     public static final String reportFileName = "report.txt";
     public static final String sequenceFileName = "sequence.fasta.gz";
-
-    private final String pathToFolder;
-    private FastaSynchronizer sync = new FastaSynchronizer();
-
+    public static final String sequenceIndexFileName = sequenceFileName + ".gzi";
+    public static final String recordIndexFileName = sequenceFileName + ".fai";
+    public static final String progressFileName = "report.progress.txt";
+    public static final String checkpointFileName = sequenceFileName + ".checkpoint";
+    public static final String metricsFileName = "report.metrics.txt";
+    public static final String partialFileSuffix = ".part";
+    public static final String stdinFileName = "-";
+
+    private final FastaSettings settings;
+    private final JobContext context;
+    private final FastaInputs inputs;
+    private final PackedStore packedStore;
 
     /**
      * Constructs an instance with default path to files folder.
      * Current folder will be used
      */
     public FastaFileService() {
-        this.pathToFolder = "";
+        this("");
     }
 
     /**
@@ -58,120 +49,112 @@ public class FastaFileService {
      * @param pathToFolder path used to read files and create reports
      */
     public FastaFileService(String pathToFolder) {
-        this.pathToFolder = pathToFolder;
+        this(pathToFolder, new FastaSettings());
     }
 
+    /**
+     * Constructs an instance with given path to files folder and settings
+     *
+     * @param pathToFolder path used to read files and create reports
+     * @param settings settings of processing
+     */
+    public FastaFileService(String pathToFolder, FastaSettings settings) {
+        this(pathToFolder, settings, null);
+    }
 
     /**
-     * Processes .fasta files with given names of files.
+     * Constructs an instance with given path to files folder and settings using resources shared with
+     * other jobs. Numbers of decompression and compression threads of the resources are used instead of the
+     * numbers of the settings.
+     *
+     * @param pathToFolder path used to read files and create reports
+     * @param settings settings of processing
+     * @param resources shared threads and codecs, null if the job uses its own ones
+     */
+    public FastaFileService(String pathToFolder, FastaSettings settings, FastaResources resources) {
+        this.settings = settings;
+        this.context = new JobContext(pathToFolder, settings, resources);
+        this.inputs = new FastaInputs(context);
+        this.packedStore = new PackedStore(context, inputs);
+    }
+
+
+    /**
+     * Processes .fasta files with given names of files. Files may be compressed by gzip or BGZF,
+     * uncompressed text files are read through memory mapping.
      * Method creates instances of {@link FastaFileWorker}. Each .fasta file corresponds to one
-     * {@link FastaFileWorker} that runs in a separate thread in {@link java.util.concurrent.ForkJoinPool}.
-     * Results of computation are collected and are written as reports.
+     * {@link FastaFileWorker} that runs in a separate thread in {@link java.util.concurrent.ForkJoinPool}
+     * or in its own virtual thread. Files are opened when their workers start reading them.
+     * Workers read files in parallel while {@link FastaMerger} writes their lines in right order
+     * in the calling thread. Results of computation are collected and are written as reports.
+     * If progress interval is set, running totals are published while files are processed.
+     * If checkpoint interval is set, checkpoints are saved while files are processed and the job
+     * is continued from the last checkpoint made for the same files.
+     * If metrics interval is set, metrics of reading, merging and writing are dumped and exposed through JMX.
+     * Layout of records is defined by {@link RecordWriter}, by default every row is one record written
+     * as one line. If block compression is set, .gzi index of blocks and .fai index of records are written next to
+     * the sequence file, so single records are read by {@link com.example.fasta.io.FastaRecordReader}.
+     * If sequence statistics are set, histograms of lengths, GC content and ambiguous bases of sequences
+     * and optionally frequency of k-mers are collected in the same pass and written into the report,
+     * see {@link SequenceStats}.
+     * If statistics cache is set, results of completely read files are stored in it. In report only mode
+     * the sequence file isn't written and only new or changed files are read, see {@link #countFastaFiles}.
+     * If packed store is set, files are read from their copies packed by 2 bits per base, which are made
+     * when a file is read for the first time or has changed, see {@link PackedSequenceFile}.
+     * If shards are set, only files of the shard are counted and their result is written as a partial result,
+     * see {@link #getPartialFileName}. In reduce mode names of files are names of partial results, which are
+     * merged into the report.
+     * Named pipes, {@value #stdinFileName} for the standard input and files given as channels in the settings
+     * are read as streams once, without probing, mapping, splitting or caching them. If output channel is set,
+     * the sequence data is streamed into it instead of the sequence file.
      *
      * @param fileNames names of files to be read
+     * @throws IllegalStateException if unable to read the files or to write the sequence data,
+     * for example into a closed pipe
      */
     public void processFastaFiles(List<String> fileNames) {
 
-        try (BufferedWriter sequenceWriter = getSequenceFileWriter()) {
-
-            if (sequenceWriter == null) {
-                throw new IllegalStateException("Unable to create " + sequenceFileName);
-            }
-
-            ExecutorService service = Executors.newWorkStealingPool();
-            List<FastaFileWorker> tasks = fileNames.stream()
-                    .map(fileName -> pathToFolder + fileName)
-                    .map(Paths::get)
-                    .filter(Files::exists)
-                    .map(Path::toFile)
-                    .map(file -> getFastaFileWorker(file, sequenceWriter))
-                    .filter(Objects::nonNull)
-                    .collect(Collectors.toList());
-
-            if (tasks.size() < fileNames.size()) {
-                throw new IllegalStateException("Unable to read some files");
-            }
-
-            writeFirstDescription(sequenceWriter);
-
-            FastaResult result = service.invokeAll(tasks).stream()
-                    .map(this::getResult)
-                    .filter(Objects::nonNull)
-                    .reduce(FastaResult::merge)
-                    .orElseThrow(() -> new IllegalStateException("Unable to process some files"));
-
-            service.shutdown();
-
-            writeReportFile(result, fileNames.size());
-        } catch (IOException | InterruptedException e) {
-            log.severe("Something went wrong: " + e.getMessage());
+        if (settings.isReduce()) {
+            new ShardRunner(context, newCountRunner()).reduce(fileNames);
+            return;
         }
-    }
-
-    private FastaFileWorker getFastaFileWorker(File file, BufferedWriter sequenceWriter) {
-        try {
-            GZIPInputStream gzipStream = new GZIPInputStream(new FileInputStream(file));
-            BufferedReader reader = new BufferedReader(new InputStreamReader(gzipStream));
-            return new FastaFileWorker(sync, reader, sequenceWriter);
-        } catch (IOException e) {
-            log.severe("Can't open file to read " + file.getName() + ": " + e.getMessage());
-            return null;
+        if (settings.getShardCount() > 0) {
+            new ShardRunner(context, newCountRunner()).process(fileNames);
+            return;
         }
-    }
-
-    private FastaResult getResult(Future<FastaResult> result) {
-        try {
-            return result.get();
-        } catch (InterruptedException | ExecutionException e) {
-            log.severe("Can't obtain result: " + e.getMessage());
-            return null;
-        }
-    }
-
-    private BufferedWriter getSequenceFileWriter() {
-        Path sequencePath = Paths.get(pathToFolder + sequenceFileName);
-        try {
-            Files.deleteIfExists(sequencePath);
-            File file = sequencePath.toFile();
-            GZIPOutputStream outputStream = new GZIPOutputStream(new FileOutputStream(file));
-            return new BufferedWriter(new OutputStreamWriter(outputStream));
-        } catch (IOException e) {
-            log.severe("Can't create buffered writer for " + sequenceFileName + ": " + e.getMessage());
-            return null;
+        if (settings.isReportOnly()) {
+            newCountRunner().report(fileNames);
+            return;
         }
+        new InterleaveRunner(context, inputs, packedStore).run(fileNames);
     }
 
-    private BufferedWriter getReportFileWriter() {
-        Path reportPath = Paths.get(pathToFolder + reportFileName);
-        try {
-            Files.deleteIfExists(reportPath);
-            File file = reportPath.toFile();
-            return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file)));
-        } catch (IOException e) {
-            log.severe("Can't create buffered writer for " + reportFileName + ": " + e.getMessage());
-            return null;
-        }
+    /**
+     * Counts .fasta files with given names without writing the sequence file or reports.
+     * Files are read in parallel without any order, and lines of every file are counted in
+     * {@link java.util.concurrent.ForkJoinPool} while the file is decompressed, see {@link FastaFileCounter}.
+     * Uncompressed and BGZF files larger than the split size are split into ranges counted in parallel,
+     * see {@link FastaRangeCounter}.
+     * If statistics cache is set, results of files which haven't changed since they were cached
+     * are taken from the cache and all other files are cached. The cache doesn't keep sequence statistics,
+     * so all files are read if they are set.
+     *
+     * @param fileNames names of files to be read
+     * @return counts of all files together
+     */
+    public FastaResult countFastaFiles(List<String> fileNames) {
+        return newCountRunner().count(fileNames);
     }
 
-    private void writeReportFile(FastaResult result, int filesCount) throws IOException {
-        try (BufferedWriter writer = getReportFileWriter()) {
-            if (writer == null) {
-                throw new IllegalStateException("Unable to write into " + reportFileName);
-            }
-            long baseCounts = result.getBaseCounts().values().stream().reduce(0L, Long::sum);
-            writer.append("FILE_CNT\t").append(String.valueOf(filesCount)).append("\n");
-            writer.append("SEQUENCE_CNT\t").append(String.valueOf(result.getSequenceCount())).append("\n");
-            writer.append("BASE_CNT\t").append(String.valueOf(baseCounts)).append("\n");
-            for (Map.Entry<Integer, Long> entry : result.getBaseCounts().entrySet()) {
-                writer.append((char) entry.getKey().intValue())
-                        .append("\t")
-                        .append(String.valueOf(entry.getValue()))
-                        .append("\n");
-            }
-        }
+    /**
+     * @param shard index of the shard from 0
+     * @return name of the file of the partial result of the shard
+     */
+    public static String getPartialFileName(int shard) {
+        return "report." + shard + partialFileSuffix;
     }
 
-    private void writeFirstDescription(BufferedWriter sequenceWriter) throws IOException {
-        sequenceWriter.append(">1\n");
+    private CountRunner newCountRunner() {
+        return new CountRunner(context, inputs, packedStore);
     }
 }
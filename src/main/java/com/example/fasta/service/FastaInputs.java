@@ -0,0 +1,276 @@
+package com.example.fasta.service;
+
+import com.example.fasta.io.BgzfIndex;
+import com.example.fasta.io.BgzfInputStream;
+import com.example.fasta.io.DeferredInputStream;
+import com.example.fasta.io.FastaScanner;
+import com.example.fasta.io.MappedFileInputStream;
+import com.example.fasta.io.MeteredInputStream;
+import com.example.fasta.io.PackedSequenceFile;
+import com.example.fasta.metrics.Counter;
+import com.example.fasta.metrics.FileMetrics;
+import com.example.fasta.metrics.MetricsRegistry;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Opens input files of a job. Named pipes, {@value FastaFileService#stdinFileName} for the standard input
+ * and files given as channels in the settings are read as streams once. Other files are probed by their first
+ * bytes: packed, BGZF and gzip files are recognized by their headers, and text files are read as plain FASTA
+ * through memory mapping.
+ *
+ * @author rdanilov
+ * @since 21.10.2018
+ */
+final class FastaInputs {
+
+    private static final int bufferSize = 64 * 1024;
+    private static final int headerProbeSize = 64;
+    private static final int mappedWindowSize = 64 * 1024 * 1024;
+
+    /**
+     * Format of an input file.
+     */
+    enum InputFormat {
+        PLAIN, BGZF, GZIP, PACKED, STREAM
+    }
+
+    private final JobContext context;
+
+    /**
+     * Constructs an instance of {@link FastaInputs}
+     *
+     * @param context folder, settings and resources of the job
+     */
+    FastaInputs(JobContext context) {
+        this.context = context;
+    }
+
+    /**
+     * @param file input file
+     * @return true if the file is read as a stream once, without probing, mapping, splitting or caching it
+     */
+    boolean isStreamed(File file) {
+        return file.getName().equals(FastaFileService.stdinFileName) && !file.exists()
+                || getInputChannel(file) != null || file.exists() && !file.isFile();
+    }
+
+    /**
+     * @param file input file
+     * @return true if the file exists or is read as a stream
+     */
+    boolean isReadable(File file) {
+        return file.exists() || isStreamed(file);
+    }
+
+    /**
+     * @param file input file
+     * @return format of the file, {@link InputFormat#STREAM} if it is read as a stream
+     * @throws IOException if unable to read the file or its format isn't known
+     */
+    InputFormat getInputFormat(File file) throws IOException {
+        return isStreamed(file) ? InputFormat.STREAM : probeInputFile(file);
+    }
+
+    /**
+     * @param file regular input file
+     * @return format of the file found by its first bytes
+     * @throws IOException if unable to read the file or its format isn't known
+     */
+    static InputFormat probeInputFile(File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            return probeInputFormat(in);
+        }
+    }
+
+    /**
+     * Opens a scanner of the file, which opens the file when it is read for the first time.
+     *
+     * @param file input file
+     * @param format format of the file
+     * @param offset offset of uncompressed data the scanner starts from
+     * @param inflaters threads inflating BGZF blocks
+     * @param fileMetrics metrics of the file
+     * @param metrics metrics of the job
+     * @param keepDescriptions true to pass descriptions of records to the scanned chunks
+     * @return scanner of the file
+     */
+    FastaScanner openFastaScanner(File file, InputFormat format, long offset, ExecutorService inflaters,
+                                  FileMetrics fileMetrics, MetricsRegistry metrics, boolean keepDescriptions) {
+        Counter fileBytes = metrics.counter(fileMetrics.getPrefix() + "fileBytesRead");
+        InputStream in = new DeferredInputStream(
+                () -> openInputFile(file, format, offset, inflaters, fileBytes, metrics));
+        return new FastaScanner(in, offset, keepDescriptions);
+    }
+
+    /**
+     * Opens uncompressed data of the file.
+     *
+     * @param file input file
+     * @param format format of the file
+     * @param offset offset of uncompressed data the stream starts from
+     * @param inflaters threads inflating BGZF blocks
+     * @param fileBytes counter of bytes read from the file
+     * @param metrics metrics of the job
+     * @return stream of uncompressed data
+     * @throws IOException if unable to open the file or it is shorter than the offset
+     */
+    InputStream openInputFile(File file, InputFormat format, long offset, ExecutorService inflaters,
+                              Counter fileBytes, MetricsRegistry metrics) throws IOException {
+        InputStream in;
+        if (format == InputFormat.PLAIN) {
+            FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            try {
+                in = new MeteredInputStream(new MappedFileInputStream(channel, mappedWindowSize), fileBytes);
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+        } else if (format == InputFormat.PACKED) {
+            in = new MeteredInputStream(PackedSequenceFile.open(file.toPath()).newInputStream(), fileBytes);
+        } else if (format == InputFormat.STREAM) {
+            in = new BufferedInputStream(new MeteredInputStream(openStream(file), fileBytes), bufferSize);
+            try {
+                in.mark(headerProbeSize);
+                format = probeInputFormat(in);
+                in.reset();
+            } catch (IOException e) {
+                in.close();
+                throw e;
+            }
+            if (format == InputFormat.PACKED) {
+                in.close();
+                throw new IOException("Packed file " + file.getName() + " can't be read as a stream");
+            }
+        } else {
+            in = new BufferedInputStream(new MeteredInputStream(new FileInputStream(file), fileBytes), bufferSize);
+        }
+        try {
+            if (format == InputFormat.BGZF) {
+                in = new BgzfInputStream(in, inflaters, context.getSettings().getReadAheadBlocks(), metrics,
+                        context.getCodecs());
+            } else if (format == InputFormat.GZIP) {
+                in = new GZIPInputStream(in, bufferSize);
+            }
+            skipFully(in, offset);
+            return in;
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens uncompressed data of a BGZF file from the given offset, only blocks from the one containing
+     * the offset are read.
+     *
+     * @param file BGZF file
+     * @param index index of blocks of the file
+     * @param offset offset of uncompressed data the stream starts from
+     * @param inflaters threads inflating BGZF blocks
+     * @param fileBytes counter of bytes read from the file
+     * @param metrics metrics of the job
+     * @return stream of uncompressed data
+     * @throws IOException if unable to open the file
+     */
+    InputStream openBgzfRange(File file, BgzfIndex index, long offset, ExecutorService inflaters,
+                              Counter fileBytes, MetricsRegistry metrics) throws IOException {
+        int block = index.findBlock(offset);
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        InputStream in;
+        try {
+            channel.position(index.getCompressedOffset(block));
+            in = new BufferedInputStream(new MeteredInputStream(Channels.newInputStream(channel), fileBytes),
+                    bufferSize);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        try {
+            in = new BgzfInputStream(in, inflaters, context.getSettings().getReadAheadBlocks(), metrics,
+                    context.getCodecs());
+            skipFully(in, offset - index.getUncompressedOffset(block));
+            return in;
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    private ReadableByteChannel getInputChannel(File file) {
+        for (Map.Entry<String, ReadableByteChannel> entry : context.getSettings().getInputChannels().entrySet()) {
+            if (context.getPath(entry.getKey()).toFile().equals(file)) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    private InputStream openStream(File file) throws IOException {
+        ReadableByteChannel channel = getInputChannel(file);
+        if (channel != null) {
+            return Channels.newInputStream(channel);
+        }
+        if (file.getName().equals(FastaFileService.stdinFileName) && !file.exists()) {
+            return System.in;
+        }
+        return new FileInputStream(file);
+    }
+
+    private static InputFormat probeInputFormat(InputStream in) throws IOException {
+        byte[] header = new byte[headerProbeSize];
+        int length = 0;
+        int n;
+        while (length < headerProbeSize && (n = in.read(header, length, headerProbeSize - length)) >= 0) {
+            length += n;
+        }
+        if (PackedSequenceFile.isPacked(header, length)) {
+            return InputFormat.PACKED;
+        }
+        if (BgzfInputStream.isBgzf(header, length)) {
+            return InputFormat.BGZF;
+        }
+        if (length >= 2 && (header[0] & 0xFF) == 31 && (header[1] & 0xFF) == 139) {
+            return InputFormat.GZIP;
+        }
+        if (length > 0 && isText(header, length)) {
+            return InputFormat.PLAIN;
+        }
+        throw new IOException("Not in GZIP format");
+    }
+
+    private static boolean isText(byte[] header, int length) {
+        for (int i = 0; i < length; i++) {
+            if ((header[i] < ' ' || header[i] > '~') && header[i] != '\n' && header[i] != '\r' && header[i] != '\t') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void skipFully(InputStream in, long count) throws IOException {
+        long remaining = count;
+        while (remaining > 0) {
+            long skipped = in.skip(remaining);
+            if (skipped <= 0) {
+                if (in.read() < 0) {
+                    throw new EOFException("File is shorter than the checkpoint offset");
+                }
+                skipped = 1;
+            }
+            remaining -= skipped;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.example.fasta.service;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+
+/**
+ * Parses options of a job given as {@code --name} or {@code --name=VALUE} into {@link FastaSettings}.
+ * Options are the same for the command line and for jobs of {@link FastaDaemon}.
+ *
+ * @author rdanilov
+ * @since 21.10.2018
+ */
+public final class FastaOptions {
+
+    private FastaOptions() {
+    }
+
+    /**
+     * Applies one option to the settings.
+     *
+     * @param settings settings to be changed
+     * @param option option starting with {@code --}
+     * @throws IllegalArgumentException if the option is unknown or its value is invalid
+     */
+    public static void apply(FastaSettings settings, String option) {
+        String name = getName(option);
+        String value = getValue(option);
+        switch (name) {
+            case "--bgzf":
+                settings.setBlockCompression(true);
+                break;
+            case "--compression-threads":
+                settings.setCompressionThreads(Integer.parseInt(requireValue(name, value)));
+                break;
+            case "--progress-interval":
+                settings.setProgressInterval(Long.parseLong(requireValue(name, value)));
+                break;
+            case "--checkpoint-interval":
+                settings.setCheckpointInterval(Long.parseLong(requireValue(name, value)));
+                break;
+            case "--buffer-budget":
+                settings.setBufferBudget(Long.parseLong(requireValue(name, value)));
+                break;
+            case "--virtual-threads":
+                settings.setVirtualThreads(true);
+                break;
+            case "--metrics-interval":
+                settings.setMetricsInterval(Long.parseLong(requireValue(name, value)));
+                break;
+            case "--report-only":
+                settings.setReportOnly(true);
+                break;
+            case "--stats-cache":
+                settings.setStatsCache(requireValue(name, value));
+                break;
+            case "--stats-cache-size":
+                settings.setStatsCacheSize(Long.parseLong(requireValue(name, value)));
+                break;
+            case "--split-size":
+                settings.setSplitSize(Long.parseLong(requireValue(name, value)));
+                break;
+            case "--line-width":
+                settings.setLineWidth(Integer.parseInt(requireValue(name, value)));
+                break;
+            case "--record-per-file":
+                settings.setRecordPerFile(true);
+                break;
+            case "--original-headers":
+                settings.setOriginalHeaders(true);
+                break;
+            case "--sequence-stats":
+                settings.setSequenceStats(true);
+                break;
+            case "--kmer-size":
+                settings.setKmerSize(Integer.parseInt(requireValue(name, value)));
+                break;
+            case "--packed-store":
+                settings.setPackedStore(requireValue(name, value));
+                break;
+            case "--shard":
+                applyShard(settings, name, requireValue(name, value));
+                break;
+            case "--reduce":
+                settings.setReduce(true);
+                break;
+            case "--stdout":
+                // not System.out, PrintStream swallows errors and a closed pipe wouldn't stop the job
+                settings.setOutputChannel(new FileOutputStream(FileDescriptor.out).getChannel());
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown option " + name);
+        }
+    }
+
+    private static void applyShard(FastaSettings settings, String name, String value) {
+        int separator = value.indexOf('/');
+        if (separator < 0) {
+            throw new IllegalArgumentException("Option " + name + " requires a value as INDEX/COUNT");
+        }
+        settings.setShard(Integer.parseInt(value.substring(0, separator)),
+                Integer.parseInt(value.substring(separator + 1)));
+    }
+
+    /**
+     * @param option option starting with {@code --}
+     * @return name of the option without its value
+     */
+    public static String getName(String option) {
+        int separator = option.indexOf('=');
+        return separator < 0 ? option : option.substring(0, separator);
+    }
+
+    /**
+     * @param option option starting with {@code --}
+     * @return value of the option after {@code =}, null if it has no value
+     */
+    public static String getValue(String option) {
+        int separator = option.indexOf('=');
+        return separator < 0 ? null : option.substring(separator + 1);
+    }
+
+    /**
+     * @param name name of the option
+     * @param value value of the option, may be null
+     * @return the value
+     * @throws IllegalArgumentException if the value is missing
+     */
+    public static String requireValue(String name, String value) {
+        if (value == null || value.isEmpty()) {
+            throw new IllegalArgumentException("Option " + name + " requires a value");
+        }
+        return value;
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.fasta.service;
+
+import com.example.fasta.model.FastaResult;
+import com.example.fasta.model.LogHistogram;
+import com.example.fasta.model.SequenceStats;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+
+/**
+ * Formats results of .fasta files computation as tab separated report lines.
+ *
+ * @author rdanilov
+ * @since 21.10.2018
+ */
+final class FastaReport {
+
+    private static final int[] lengthPercentiles = {10, 50, 90, 99};
+
+    private FastaReport() {
+    }
+
+    /**
+     * Writes number of files, sequences and bases followed by the number of every base.
+     * If sequence statistics are collected, they follow as the least and the greatest length of sequences,
+     * estimates of N50 and of percentiles of lengths, the number of sequences by percent of GC content
+     * and by percent of ambiguous bases and, if k-mers are counted, the size of k-mers
+     * and the number of every k-mer in alphabetical order.
+     *
+     * @param writer writer of the report
+     * @param result result to be written
+     * @param filesCount number of files
+     * @throws IOException if unable to write
+     */
+    static void write(Writer writer, FastaResult result, int filesCount) throws IOException {
+        writeLine(writer, "FILE_CNT", filesCount);
+        writeLine(writer, "SEQUENCE_CNT", result.getSequenceCount());
+        writeLine(writer, "BASE_CNT", result.getTotalBaseCount());
+        for (Map.Entry<Integer, Long> entry : result.getBaseCounts().entrySet()) {
+            writer.append((char) entry.getKey().intValue())
+                    .append("\t")
+                    .append(String.valueOf(entry.getValue()))
+                    .append("\n");
+        }
+        if (result.getStats() != null) {
+            writeStats(writer, result.getStats());
+        }
+    }
+
+    private static void writeStats(Writer writer, SequenceStats stats) throws IOException {
+        LogHistogram lengths = stats.getLengths();
+        writeLine(writer, "RECORD_CNT", lengths.getCount());
+        writeLine(writer, "LENGTH_MIN", lengths.getMin());
+        writeLine(writer, "LENGTH_MAX", lengths.getMax());
+        writeLine(writer, "LENGTH_N50", lengths.getN50());
+        for (int percentile : lengthPercentiles) {
+            writeLine(writer, "LENGTH_P" + percentile, lengths.getQuantile(percentile / 100.0));
+        }
+        writePercents(writer, "GC_PERCENT", stats.getGcHistogram());
+        writePercents(writer, "AMBIGUOUS_PERCENT", stats.getAmbiguousHistogram());
+        if (stats.getKmerSize() > 0) {
+            writeLine(writer, "KMER_SIZE", stats.getKmerSize());
+            for (long kmer : stats.getKmers()) {
+                writer.append("KMER\t").append(stats.decode(kmer)).append("\t")
+                        .append(String.valueOf(stats.getKmerCount(kmer))).append("\n");
+            }
+        }
+    }
+
+    private static void writePercents(Writer writer, String name, long[] histogram) throws IOException {
+        for (int percent = 0; percent < histogram.length; percent++) {
+            if (histogram[percent] != 0) {
+                writer.append(name).append("\t").append(String.valueOf(percent)).append("\t")
+                        .append(String.valueOf(histogram[percent])).append("\n");
+            }
+        }
+    }
+
+    /**
+     * Writes one line of the report.
+     *
+     * @param writer writer of the report
+     * @param name name of the value
+     * @param value value to be written
+     * @throws IOException if unable to write
+     */
+    static void writeLine(Writer writer, String name, long value) throws IOException {
+        writer.append(name).append("\t").append(String.valueOf(value)).append("\n");
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.fasta.service;
+
+import com.example.fasta.concurrent.NamedThreadFactory;
+import com.example.fasta.io.CodecPool;
+
+import java.io.Closeable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Resources shared by jobs of one process: threads inflating and compressing BGZF blocks and the pool
+ * of inflaters, deflaters and buffers of blocks. Jobs given the same resources don't start threads
+ * or allocate native memory of codecs of their own, so a resident process keeps them warm between jobs.
+ * Workers reading files aren't shared, since they wait for the merger of their own job.
+ *
+ * @author rdanilov
+ * @since 21.10.2018
+ */
+public class FastaResources implements Closeable {
+
+    private final ExecutorService inflaters;
+    private final ExecutorService compressors;
+    private final int compressionThreads;
+    private final CodecPool codecs;
+
+    /**
+     * Constructs an instance of {@link FastaResources} with numbers of threads of the given settings
+     *
+     * @param settings settings defining numbers of decompression and compression threads
+     */
+    public FastaResources(FastaSettings settings) {
+        this.inflaters = Executors.newFixedThreadPool(settings.getDecompressionThreads(),
+                new NamedThreadFactory("bgzf-inflater"));
+        this.compressors = Executors.newFixedThreadPool(settings.getCompressionThreads(),
+                new NamedThreadFactory("bgzf-compressor"));
+        this.compressionThreads = settings.getCompressionThreads();
+        this.codecs = new CodecPool();
+    }
+
+    ExecutorService getInflaters() {
+        return inflaters;
+    }
+
+    ExecutorService getCompressors() {
+        return compressors;
+    }
+
+    int getCompressionThreads() {
+        return compressionThreads;
+    }
+
+    CodecPool getCodecs() {
+        return codecs;
+    }
+
+    /**
+     * Stops the threads and ends idle codecs. Jobs must not be running.
+     */
+    @Override
+    public void close() {
+        inflaters.shutdownNow();
+        compressors.shutdownNow();
+        codecs.close();
+    }
+}
@@ -0,0 +1,569 @@
+package com.example.fasta.service;
+
+import com.example.fasta.concurrent.FastaProgress;
+import com.example.fasta.io.RecordWriter;
+import com.example.fasta.model.SequenceStats;
+
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Settings of {@link FastaFileService}. Default values keep the original behaviour.
+ *
+ * @author rdanilov
+ * @since 21.10.2018
+ */
+public class FastaSettings {
+
+    private boolean blockCompression;
+    private int compressionThreads;
+    private int decompressionThreads;
+    private int readAheadBlocks;
+    private long progressInterval;
+    private Consumer<FastaProgress.Snapshot> progressListener;
+    private long checkpointInterval;
+    private long bufferBudget;
+    private long metricsInterval;
+    private boolean virtualThreads;
+    private String statsCache;
+    private long statsCacheSize;
+    private boolean reportOnly;
+    private long splitSize;
+    private int lineWidth;
+    private boolean recordPerFile;
+    private boolean originalHeaders;
+    private RecordWriter.Factory recordWriterFactory;
+    private boolean sequenceStats;
+    private int kmerSize;
+    private String packedStore;
+    private int shard;
+    private int shardCount;
+    private boolean reduce;
+    private final Map<String, ReadableByteChannel> inputChannels;
+    private WritableByteChannel outputChannel;
+
+    /**
+     * Constructs an instance of {@link FastaSettings} with default values
+     */
+    public FastaSettings() {
+        this.blockCompression = false;
+        this.compressionThreads = Runtime.getRuntime().availableProcessors();
+        this.decompressionThreads = Runtime.getRuntime().availableProcessors();
+        this.readAheadBlocks = Math.max(2, decompressionThreads * 2);
+        this.progressInterval = 0;
+        this.checkpointInterval = 0;
+        this.bufferBudget = 0;
+        this.metricsInterval = 0;
+        this.virtualThreads = false;
+        this.statsCache = null;
+        this.statsCacheSize = 64 * 1024 * 1024;
+        this.reportOnly = false;
+        this.splitSize = 64 * 1024 * 1024;
+        this.lineWidth = 0;
+        this.recordPerFile = false;
+        this.originalHeaders = false;
+        this.recordWriterFactory = null;
+        this.sequenceStats = false;
+        this.kmerSize = 0;
+        this.packedStore = null;
+        this.shard = 0;
+        this.shardCount = 0;
+        this.reduce = false;
+        this.inputChannels = new HashMap<>();
+        this.outputChannel = null;
+    }
+
+    /**
+     * @return true if {@value FastaFileService#sequenceFileName} is written as BGZF blocks
+     */
+    public boolean isBlockCompression() {
+        return blockCompression;
+    }
+
+    /**
+     * @param blockCompression true to write {@value FastaFileService#sequenceFileName} as BGZF blocks
+     *                         compressed in parallel, together with .gzi index
+     * @return this settings
+     */
+    public FastaSettings setBlockCompression(boolean blockCompression) {
+        this.blockCompression = blockCompression;
+        return this;
+    }
+
+    /**
+     * @return number of threads compressing BGZF blocks
+     */
+    public int getCompressionThreads() {
+        return compressionThreads;
+    }
+
+    /**
+     * @param compressionThreads number of threads compressing BGZF blocks
+     * @return this settings
+     */
+    public FastaSettings setCompressionThreads(int compressionThreads) {
+        if (compressionThreads < 1) {
+            throw new IllegalArgumentException("Number of compression threads must be positive");
+        }
+        this.compressionThreads = compressionThreads;
+        return this;
+    }
+
+    /**
+     * @return number of threads inflating blocks of BGZF input files
+     */
+    public int getDecompressionThreads() {
+        return decompressionThreads;
+    }
+
+    /**
+     * @param decompressionThreads number of threads inflating blocks of BGZF input files,
+     *                             shared by all files
+     * @return this settings
+     */
+    public FastaSettings setDecompressionThreads(int decompressionThreads) {
+        if (decompressionThreads < 1) {
+            throw new IllegalArgumentException("Number of decompression threads must be positive");
+        }
+        this.decompressionThreads = decompressionThreads;
+        return this;
+    }
+
+    /**
+     * @return number of blocks of one BGZF input file read and inflated ahead
+     */
+    public int getReadAheadBlocks() {
+        return readAheadBlocks;
+    }
+
+    /**
+     * @param readAheadBlocks number of blocks of one BGZF input file read and inflated ahead
+     * @return this settings
+     */
+    public FastaSettings setReadAheadBlocks(int readAheadBlocks) {
+        if (readAheadBlocks < 1) {
+            throw new IllegalArgumentException("Number of read ahead blocks must be positive");
+        }
+        this.readAheadBlocks = readAheadBlocks;
+        return this;
+    }
+
+    /**
+     * @return interval in milliseconds between publications of progress, 0 if progress isn't published
+     */
+    public long getProgressInterval() {
+        return progressInterval;
+    }
+
+    /**
+     * @param progressInterval interval in milliseconds between publications of progress.
+     *                         Progress is written into {@value FastaFileService#progressFileName}
+     *                         and passed to the progress listener. 0 disables publication
+     * @return this settings
+     */
+    public FastaSettings setProgressInterval(long progressInterval) {
+        if (progressInterval < 0) {
+            throw new IllegalArgumentException("Progress interval must not be negative");
+        }
+        this.progressInterval = progressInterval;
+        return this;
+    }
+
+    /**
+     * @return listener receiving published progress, may be null
+     */
+    public Consumer<FastaProgress.Snapshot> getProgressListener() {
+        return progressListener;
+    }
+
+    /**
+     * @param progressListener listener receiving published progress
+     * @return this settings
+     */
+    public FastaSettings setProgressListener(Consumer<FastaProgress.Snapshot> progressListener) {
+        this.progressListener = progressListener;
+        return this;
+    }
+
+    /**
+     * @return minimal interval in milliseconds between checkpoints, 0 if checkpoints aren't saved
+     */
+    public long getCheckpointInterval() {
+        return checkpointInterval;
+    }
+
+    /**
+     * @param checkpointInterval minimal interval in milliseconds between checkpoints saved into
+     *                           {@value FastaFileService#checkpointFileName}. The sequence file is written
+     *                           as a series of gzip members and an interrupted job is continued from
+     *                           the last checkpoint on restart. 0 disables checkpoints
+     * @return this settings
+     */
+    public FastaSettings setCheckpointInterval(long checkpointInterval) {
+        if (checkpointInterval < 0) {
+            throw new IllegalArgumentException("Checkpoint interval must not be negative");
+        }
+        this.checkpointInterval = checkpointInterval;
+        return this;
+    }
+
+    /**
+     * @return maximal number of bytes of chunks buffered by all files, 0 if every file buffers a few chunks
+     */
+    public long getBufferBudget() {
+        return bufferBudget;
+    }
+
+    /**
+     * @param bufferBudget maximal number of bytes of chunks read ahead by all files together.
+     *                     Files which are too far ahead wait for the others, every file may always
+     *                     buffer one chunk. 0 limits every file to a few chunks instead
+     * @return this settings
+     */
+    public FastaSettings setBufferBudget(long bufferBudget) {
+        if (bufferBudget < 0) {
+            throw new IllegalArgumentException("Buffer budget must not be negative");
+        }
+        this.bufferBudget = bufferBudget;
+        return this;
+    }
+
+    /**
+     * @return interval in milliseconds between dumps of metrics, 0 if metrics aren't published
+     */
+    public long getMetricsInterval() {
+        return metricsInterval;
+    }
+
+    /**
+     * @param metricsInterval interval in milliseconds between dumps of metrics into
+     *                        {@value FastaFileService#metricsFileName}. While the job runs, metrics are
+     *                        also exposed through JMX. 0 disables publication
+     * @return this settings
+     */
+    public FastaSettings setMetricsInterval(long metricsInterval) {
+        if (metricsInterval < 0) {
+            throw new IllegalArgumentException("Metrics interval must not be negative");
+        }
+        this.metricsInterval = metricsInterval;
+        return this;
+    }
+
+    /**
+     * @return true if every file is read in its own virtual thread
+     */
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * @param virtualThreads true to read every file in its own virtual thread instead of work stealing pool.
+     *                       Requires Java 21 or newer, otherwise work stealing pool is used
+     * @return this settings
+     */
+    public FastaSettings setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+        return this;
+    }
+
+    /**
+     * @return path of the cache of results of single files, null if results aren't cached
+     */
+    public String getStatsCache() {
+        return statsCache;
+    }
+
+    /**
+     * @param statsCache path of the file caching results of single files between jobs. A file whose size,
+     *                   modification time and fingerprint haven't changed isn't read again in report only mode.
+     *                   null disables the cache
+     * @return this settings
+     */
+    public FastaSettings setStatsCache(String statsCache) {
+        this.statsCache = statsCache;
+        return this;
+    }
+
+    /**
+     * @return maximal size of the cache file in bytes
+     */
+    public long getStatsCacheSize() {
+        return statsCacheSize;
+    }
+
+    /**
+     * @param statsCacheSize maximal size of the cache file in bytes, least recently used results are evicted first
+     * @return this settings
+     */
+    public FastaSettings setStatsCacheSize(long statsCacheSize) {
+        if (statsCacheSize < 1) {
+            throw new IllegalArgumentException("Size of statistics cache must be positive");
+        }
+        this.statsCacheSize = statsCacheSize;
+        return this;
+    }
+
+    /**
+     * @return true if only {@value FastaFileService#reportFileName} is written
+     */
+    public boolean isReportOnly() {
+        return reportOnly;
+    }
+
+    /**
+     * @param reportOnly true to write only {@value FastaFileService#reportFileName} without
+     *                   {@value FastaFileService#sequenceFileName}. Files are counted independently and
+     *                   results of unchanged files are taken from the statistics cache
+     * @return this settings
+     */
+    public FastaSettings setReportOnly(boolean reportOnly) {
+        this.reportOnly = reportOnly;
+        return this;
+    }
+
+    /**
+     * @return number of uncompressed bytes of one range of a file counted in parallel, 0 if files aren't split
+     */
+    public long getSplitSize() {
+        return splitSize;
+    }
+
+    /**
+     * @param splitSize number of uncompressed bytes of one range of a file. Uncompressed and BGZF files
+     *                  larger than that are split into ranges at line boundaries, and the ranges are counted
+     *                  in parallel when only the counts are needed. 0 disables splitting
+     * @return this settings
+     */
+    public FastaSettings setSplitSize(long splitSize) {
+        if (splitSize < 0) {
+            throw new IllegalArgumentException("Split size must not be negative");
+        }
+        this.splitSize = splitSize;
+        return this;
+    }
+
+    /**
+     * @return maximal number of bases in a line of {@value FastaFileService#sequenceFileName}, 0 if lines
+     * aren't wrapped
+     */
+    public int getLineWidth() {
+        return lineWidth;
+    }
+
+    /**
+     * @param lineWidth maximal number of bases in a line of {@value FastaFileService#sequenceFileName}.
+     *                  0 writes every record as one line
+     * @return this settings
+     */
+    public FastaSettings setLineWidth(int lineWidth) {
+        if (lineWidth < 0) {
+            throw new IllegalArgumentException("Line width must not be negative");
+        }
+        this.lineWidth = lineWidth;
+        return this;
+    }
+
+    /**
+     * @return true if every line of every file is written as a separate record
+     */
+    public boolean isRecordPerFile() {
+        return recordPerFile;
+    }
+
+    /**
+     * @param recordPerFile true to write every line of every file as a separate record named by the number
+     *                      of the row and the number of the file instead of one record per row
+     * @return this settings
+     */
+    public FastaSettings setRecordPerFile(boolean recordPerFile) {
+        this.recordPerFile = recordPerFile;
+        return this;
+    }
+
+    /**
+     * @return true if records are named by original descriptions
+     */
+    public boolean isOriginalHeaders() {
+        return originalHeaders;
+    }
+
+    /**
+     * @param originalHeaders true to name every record by the original description of its first line.
+     *                        Descriptions are kept by the scanners of all files, a record whose first line
+     *                        has no description keeps its number
+     * @return this settings
+     */
+    public FastaSettings setOriginalHeaders(boolean originalHeaders) {
+        this.originalHeaders = originalHeaders;
+        return this;
+    }
+
+    /**
+     * @return factory of custom writers of records, null if the built-in layout is used
+     */
+    public RecordWriter.Factory getRecordWriterFactory() {
+        return recordWriterFactory;
+    }
+
+    /**
+     * @param recordWriterFactory factory of writers defining the layout of {@value FastaFileService#sequenceFileName}
+     *                            instead of line width, record per file and original headers settings.
+     *                            Descriptions are passed in chunks only if original headers are set.
+     *                            null uses the built-in layout
+     * @return this settings
+     */
+    public FastaSettings setRecordWriterFactory(RecordWriter.Factory recordWriterFactory) {
+        this.recordWriterFactory = recordWriterFactory;
+        return this;
+    }
+
+    /**
+     * @return true if sequence statistics are collected, either set explicitly or by k-mer size
+     */
+    public boolean isSequenceStats() {
+        return sequenceStats || kmerSize > 0;
+    }
+
+    /**
+     * @param sequenceStats true to collect histograms of lengths, GC content and ambiguous bases
+     *                      of sequences while files are read and to write them into the report
+     * @return this settings
+     */
+    public FastaSettings setSequenceStats(boolean sequenceStats) {
+        this.sequenceStats = sequenceStats;
+        return this;
+    }
+
+    /**
+     * @return size of k-mers of sequence statistics, 0 if k-mers aren't counted
+     */
+    public int getKmerSize() {
+        return kmerSize;
+    }
+
+    /**
+     * @param kmerSize size of k-mers from 1 to {@value SequenceStats#maxKmerSize}. Frequency of k-mers
+     *                 is collected together with other sequence statistics and written into the report.
+     *                 0 doesn't count k-mers
+     * @return this settings
+     */
+    public FastaSettings setKmerSize(int kmerSize) {
+        if (kmerSize < 0 || kmerSize > SequenceStats.maxKmerSize) {
+            throw new IllegalArgumentException("K-mer size must be from 0 to " + SequenceStats.maxKmerSize);
+        }
+        this.kmerSize = kmerSize;
+        return this;
+    }
+
+    /**
+     * @return folder of packed copies of input files, null if files are always read from their sources
+     */
+    public String getPackedStore() {
+        return packedStore;
+    }
+
+    /**
+     * @param packedStore folder keeping input files packed by 2 bits per base, see
+     *                    {@link com.example.fasta.io.PackedSequenceFile}. A file is packed when it is read for
+     *                    the first time or after it has changed, later jobs read the packed copy without inflating
+     *                    the source. Not used while checkpoints are set. null disables packing
+     * @return this settings
+     */
+    public FastaSettings setPackedStore(String packedStore) {
+        this.packedStore = packedStore;
+        return this;
+    }
+
+    /**
+     * @return index of the shard of files counted by this job from 0
+     */
+    public int getShard() {
+        return shard;
+    }
+
+    /**
+     * @return number of shards the files are split into, 0 if the job isn't split
+     */
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    /**
+     * @param shard index of the shard from 0
+     * @param shardCount number of shards the files are split into by jobs given the same files. The job counts
+     *                   only files of its shard and writes their result into a partial result file instead of
+     *                   the report. Files are assigned to shards by their sizes, so all jobs find the same
+     *                   assignment. 0 doesn't split the job
+     * @return this settings
+     */
+    public FastaSettings setShard(int shard, int shardCount) {
+        if (shardCount < 0 || shardCount > 0 && (shard < 0 || shard >= shardCount)) {
+            throw new IllegalArgumentException("Shard must be from 0 to the number of shards");
+        }
+        this.shard = shard;
+        this.shardCount = shardCount;
+        return this;
+    }
+
+    /**
+     * @return true if names of files are names of partial results which are merged into the report
+     */
+    public boolean isReduce() {
+        return reduce;
+    }
+
+    /**
+     * @param reduce true to merge partial results of all shards of a job given as names of files
+     *               and to write {@value FastaFileService#reportFileName}
+     * @return this settings
+     */
+    public FastaSettings setReduce(boolean reduce) {
+        this.reduce = reduce;
+        return this;
+    }
+
+    /**
+     * @return channels read instead of files by names of files
+     */
+    public Map<String, ReadableByteChannel> getInputChannels() {
+        return Collections.unmodifiableMap(inputChannels);
+    }
+
+    /**
+     * @param fileName name of a file given to the job, which is read from the channel instead
+     * @param channel channel of .fasta data compressed or not, read once and closed by the job.
+     *                null reads the file again
+     * @return this settings
+     */
+    public FastaSettings setInputChannel(String fileName, ReadableByteChannel channel) {
+        if (channel != null) {
+            inputChannels.put(fileName, channel);
+        } else {
+            inputChannels.remove(fileName);
+        }
+        return this;
+    }
+
+    /**
+     * @return channel the sequence file is written into instead of {@value FastaFileService#sequenceFileName},
+     * null if the file is written
+     */
+    public WritableByteChannel getOutputChannel() {
+        return outputChannel;
+    }
+
+    /**
+     * @param outputChannel channel the sequence data is streamed into instead of
+     *                      {@value FastaFileService#sequenceFileName}, closed by the job. Indexes of BGZF output
+     *                      aren't written. null writes the file
+     * @return this settings
+     */
+    public FastaSettings setOutputChannel(WritableByteChannel outputChannel) {
+        this.outputChannel = outputChannel;
+        return this;
+    }
+}
@@ -0,0 +1,245 @@
+package com.example.fasta.service;
+
+import com.example.fasta.concurrent.CheckpointHandler;
+import com.example.fasta.concurrent.FastaFileWorker;
+import com.example.fasta.concurrent.FastaMerger;
+import com.example.fasta.concurrent.FastaProgress;
+import com.example.fasta.concurrent.FastaSynchronizer;
+import com.example.fasta.concurrent.MemoryBudget;
+import com.example.fasta.concurrent.WorkerOptions;
+import com.example.fasta.io.BlockBoundaryOutput;
+import com.example.fasta.io.FastaIndexWriter;
+import com.example.fasta.io.FastaScanner;
+import com.example.fasta.io.RecordWriter;
+import com.example.fasta.metrics.FileMetrics;
+import com.example.fasta.metrics.MetricsRegistry;
+import com.example.fasta.model.FastaResult;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * Runner of the default mode of {@link FastaFileService}, see {@link FastaFileService#processFastaFiles}.
+ * Every file is read by its own {@link FastaFileWorker} while {@link FastaMerger} interleaves their lines
+ * into {@link SequenceOutput} in the calling thread. Progress, checkpoints and the statistics cache
+ * are updated as the files are read.
+ *
+ * @author rdanilov
+ * @since 21.10.2018
+ */
+final class InterleaveRunner {
+
+    private static final Logger log = Logger.getLogger(InterleaveRunner.class.getName());
+
+    private final JobContext context;
+    private final FastaInputs inputs;
+    private final PackedStore packedStore;
+    private final SequenceOutput output;
+
+    /**
+     * Constructs an instance of {@link InterleaveRunner}
+     *
+     * @param context folder, settings and resources of the job
+     * @param inputs opener of input files of the job
+     * @param packedStore store of packed copies of input files
+     */
+    InterleaveRunner(JobContext context, FastaInputs inputs, PackedStore packedStore) {
+        this.context = context;
+        this.inputs = inputs;
+        this.packedStore = packedStore;
+        this.output = new SequenceOutput(context);
+    }
+
+    /**
+     * Reads the files and writes the sequence file and the report.
+     *
+     * @param fileNames names of files to be read
+     */
+    void run(List<String> fileNames) {
+        FastaSettings settings = context.getSettings();
+        List<File> files = context.getFiles(fileNames);
+        if (settings.getCheckpointInterval() > 0
+                && (settings.getOutputChannel() != null || files.stream().anyMatch(inputs::isStreamed))) {
+            throw new IllegalStateException("Checkpoints need regular input files and sequence file");
+        }
+        Checkpoint checkpoint = Checkpoint.load(context.getPath(FastaFileService.checkpointFileName),
+                settings.getCheckpointInterval() > 0, fileNames, files);
+        MetricsRegistry metrics = new MetricsRegistry();
+
+        try (OutputStream sequenceStream = output.open(checkpoint, metrics)) {
+
+            if (sequenceStream == null) {
+                throw new IllegalStateException("Unable to create " + FastaFileService.sequenceFileName);
+            }
+
+            ExecutorService inflaters = context.obtainInflaters();
+            FastaProgress progress = settings.getProgressInterval() > 0 ? new FastaProgress(fileNames.size()) : null;
+            MemoryBudget budget = settings.getBufferBudget() > 0 ? new MemoryBudget(settings.getBufferBudget()) : null;
+            ProgressPublisher progressPublisher = null;
+            MetricsPublisher metricsPublisher = null;
+            try {
+                progressPublisher = startProgressPublisher(progress, budget);
+                metricsPublisher = context.startMetricsPublisher(metrics);
+                FastaSynchronizer sync = checkpoint != null
+                        ? new FastaSynchronizer(checkpoint.getCurrentTaskNum(), checkpoint.getCurrentRowNum(),
+                        checkpoint.isRowChanged())
+                        : new FastaSynchronizer();
+                metrics.gauge("merger.handoffs", sync::getHandoffCount);
+                FastaFileWorker[] workers = new FastaFileWorker[files.size()];
+                StatsCache.Fingerprint[] fingerprints = new StatsCache.Fingerprint[files.size()];
+                List<File> sources = packedStore.getPackedFiles(fileNames, files, inflaters, metrics);
+                StatsCache cache = checkpoint == null ? StatsCache.load(settings) : null;
+                WorkerOptions options = new WorkerOptions()
+                        .setProgress(progress)
+                        .setTrackConsumed(settings.getCheckpointInterval() > 0)
+                        .setBudget(budget)
+                        .setStatsFactory(context.getStatsFactory(checkpoint != null));
+                List<FastaFileWorker> tasks = new ArrayList<>();
+                int filesDone = 0;
+                for (int i = 0; i < files.size(); i++) {
+                    long offset = checkpoint != null ? checkpoint.getFiles().get(i).getOffset() : 0;
+                    if (offset == Checkpoint.fileDone) {
+                        filesDone++;
+                    } else if (inputs.isReadable(files.get(i))) {
+                        if (cache != null && !inputs.isStreamed(files.get(i))) {
+                            fingerprints[i] = StatsCache.tryFingerprint(files.get(i));
+                        }
+                        workers[i] = getFastaFileWorker(sources.get(i), fileNames.get(i), i + 1, offset, sync,
+                                inflaters, options, metrics);
+                        if (workers[i] != null) {
+                            tasks.add(workers[i]);
+                        }
+                    }
+                }
+
+                if (tasks.size() + filesDone < fileNames.size()) {
+                    throw new IllegalStateException("Unable to read some files");
+                }
+
+                CheckpointWriter checkpointWriter = null;
+                if (settings.getCheckpointInterval() > 0) {
+                    checkpointWriter = new CheckpointWriter(context.getPath(FastaFileService.checkpointFileName),
+                            context.getPath(FastaFileService.sequenceFileName), (BlockBoundaryOutput) sequenceStream,
+                            fileNames, files, workers,
+                            checkpoint != null ? checkpoint.getResult() : new FastaResult(),
+                            metrics.timer("checkpoint"));
+                }
+                List<FastaResult> results;
+                try (FastaIndexWriter recordIndex = output.openRecordIndex(checkpoint)) {
+                    RecordWriter recordWriter = output.getRecordWriterFactory()
+                            .create(sequenceStream, checkpoint != null, recordIndex);
+                    if (checkpoint == null) {
+                        recordWriter.startRow(1);
+                    }
+                    results = tasks.isEmpty()
+                            ? Collections.emptyList()
+                            : runWorkers(tasks, sync, recordWriter, checkpointWriter);
+                    recordWriter.flush();
+                }
+                FastaResult result = mergeResults(results);
+                if (checkpoint != null) {
+                    FastaResult.merge(result, checkpoint.getResult());
+                }
+                output.finish(sequenceStream);
+                if (cache != null) {
+                    for (int i = 0, task = 0; i < files.size(); i++) {
+                        if (workers[i] != null) {
+                            FastaResult fileResult = results.get(task++);
+                            if (fileResult != null && fingerprints[i] != null && workers[i].isCompleted()) {
+                                cache.put(files.get(i), fingerprints[i], fileResult);
+                            }
+                        }
+                    }
+                    cache.trySave();
+                }
+                context.writeReportFile(result, fileNames.size());
+                Files.deleteIfExists(context.getPath(FastaFileService.checkpointFileName));
+            } finally {
+                if (metricsPublisher != null) {
+                    metricsPublisher.close();
+                }
+                if (progressPublisher != null) {
+                    progressPublisher.close();
+                }
+                context.releaseInflaters(inflaters);
+            }
+        } catch (IOException e) {
+            log.severe("Something went wrong: " + e.getMessage());
+            throw new IllegalStateException("Unable to process files", e);
+        } catch (InterruptedException e) {
+            log.severe("Something went wrong: " + e.getMessage());
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private List<FastaResult> runWorkers(List<FastaFileWorker> tasks, FastaSynchronizer sync,
+                                         RecordWriter recordWriter, CheckpointHandler checkpointHandler)
+            throws IOException, InterruptedException {
+        ExecutorService service = context.newWorkerExecutor();
+        List<Future<FastaResult>> futures = tasks.stream()
+                .map(service::submit)
+                .collect(Collectors.toList());
+        try {
+            new FastaMerger(sync, recordWriter, checkpointHandler, context.getSettings().getCheckpointInterval())
+                    .merge();
+        } finally {
+            service.shutdownNow();
+        }
+        return futures.stream()
+                .map(JobContext::getResult)
+                .collect(Collectors.toList());
+    }
+
+    private static FastaResult mergeResults(List<FastaResult> results) {
+        FastaResult result = new FastaResult();
+        boolean merged = results.isEmpty();
+        for (FastaResult fileResult : results) {
+            if (fileResult != null) {
+                FastaResult.merge(result, fileResult);
+                merged = true;
+            }
+        }
+        if (!merged) {
+            throw new IllegalStateException("Unable to process some files");
+        }
+        return result;
+    }
+
+    private ProgressPublisher startProgressPublisher(FastaProgress progress, MemoryBudget budget)
+            throws IOException {
+        FastaSettings settings = context.getSettings();
+        Path progressPath = context.getPath(FastaFileService.progressFileName);
+        Files.deleteIfExists(progressPath);
+        if (progress == null) {
+            return null;
+        }
+        return new ProgressPublisher(progress, progressPath, settings.getProgressListener(), budget,
+                settings.getProgressInterval());
+    }
+
+    private FastaFileWorker getFastaFileWorker(File file, String fileName, int fileNumber, long offset,
+                                               FastaSynchronizer sync, ExecutorService inflaters,
+                                               WorkerOptions options, MetricsRegistry metrics) {
+        try {
+            FileMetrics fileMetrics = new FileMetrics(metrics, fileName);
+            FastaScanner scanner = inputs.openFastaScanner(file, inputs.getInputFormat(file), offset, inflaters,
+                    fileMetrics, metrics, context.getSettings().isOriginalHeaders());
+            FastaFileWorker worker = new FastaFileWorker(sync, scanner, fileNumber, fileMetrics, options);
+            metrics.gauge(fileMetrics.getPrefix() + "bufferedBytes", worker::getBufferedBytes);
+            return worker;
+        } catch (IOException e) {
+            log.severe("Can't open file to read " + file.getName() + ": " + e.getMessage());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package com.example.fasta.service;
+
+import com.example.fasta.concurrent.NamedThreadFactory;
+import com.example.fasta.concurrent.WorkerExecutors;
+import com.example.fasta.io.CodecPool;
+import com.example.fasta.metrics.MetricsRegistry;
+import com.example.fasta.model.FastaResult;
+import com.example.fasta.model.SequenceStats;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * Folder, settings and resources of one job of {@link FastaFileService}, shared by the runners of its modes.
+ * Threads and codecs are taken from {@link FastaResources} shared with other jobs if they are given,
+ * otherwise every job creates its own ones.
+ *
+ * @author rdanilov
+ * @since 21.10.2018
+ */
+final class JobContext {
+
+    private static final Logger log = Logger.getLogger(JobContext.class.getName());
+
+    private final String pathToFolder;
+    private final FastaSettings settings;
+    private final FastaResources resources;
+
+    /**
+     * Constructs an instance of {@link JobContext}
+     *
+     * @param pathToFolder path used to read files and create reports
+     * @param settings settings of processing
+     * @param resources shared threads and codecs, null if the job uses its own ones
+     */
+    JobContext(String pathToFolder, FastaSettings settings, FastaResources resources) {
+        this.pathToFolder = pathToFolder;
+        this.settings = settings;
+        this.resources = resources;
+    }
+
+    /**
+     * @return settings of processing
+     */
+    FastaSettings getSettings() {
+        return settings;
+    }
+
+    /**
+     * @return shared threads and codecs, null if the job uses its own ones
+     */
+    FastaResources getResources() {
+        return resources;
+    }
+
+    /**
+     * @param fileName name of a file in the folder of the job
+     * @return path of the file
+     */
+    Path getPath(String fileName) {
+        return Paths.get(pathToFolder + fileName);
+    }
+
+    /**
+     * @param fileNames names of files in the folder of the job
+     * @return files in the same order
+     */
+    List<File> getFiles(List<String> fileNames) {
+        return fileNames.stream()
+                .map(fileName -> getPath(fileName).toFile())
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @return threads inflating BGZF blocks, released by {@link #releaseInflaters}
+     */
+    ExecutorService obtainInflaters() {
+        if (resources != null) {
+            return resources.getInflaters();
+        }
+        return Executors.newFixedThreadPool(settings.getDecompressionThreads(),
+                new NamedThreadFactory("bgzf-inflater"));
+    }
+
+    /**
+     * Shuts the inflaters down unless they are shared with other jobs.
+     *
+     * @param inflaters threads obtained by {@link #obtainInflaters}
+     */
+    void releaseInflaters(ExecutorService inflaters) {
+        if (resources == null) {
+            inflaters.shutdownNow();
+        }
+    }
+
+    /**
+     * @return pooled inflaters and deflaters shared with other jobs, null if codecs aren't pooled
+     */
+    CodecPool getCodecs() {
+        return resources != null ? resources.getCodecs() : null;
+    }
+
+    /**
+     * @return executor of tasks reading files, a virtual thread per task if it is set and supported
+     */
+    ExecutorService newWorkerExecutor() {
+        if (settings.isVirtualThreads()) {
+            ExecutorService executor = WorkerExecutors.newVirtualThreadPerTaskExecutor("fasta-worker");
+            if (executor != null) {
+                return executor;
+            }
+            log.warning("Virtual threads aren't supported by this JVM, work stealing pool is used");
+        }
+        return Executors.newWorkStealingPool();
+    }
+
+    /**
+     * Deletes metrics of the previous job and starts publishing metrics if metrics interval is set.
+     *
+     * @param metrics metrics of the job
+     * @return publisher to be closed when the job is done, null if metrics aren't published
+     * @throws IOException if unable to delete the previous metrics file
+     */
+    MetricsPublisher startMetricsPublisher(MetricsRegistry metrics) throws IOException {
+        Path metricsPath = getPath(FastaFileService.metricsFileName);
+        Files.deleteIfExists(metricsPath);
+        if (settings.getMetricsInterval() == 0) {
+            return null;
+        }
+        return new MetricsPublisher(metrics, metricsPath, settings.getMetricsInterval());
+    }
+
+    /**
+     * @param resumed true if the job is continued from a checkpoint
+     * @return factory of sequence statistics, null if statistics aren't collected
+     */
+    Supplier<SequenceStats> getStatsFactory(boolean resumed) {
+        if (!settings.isSequenceStats()) {
+            return null;
+        }
+        if (resumed) {
+            log.warning("Sequence statistics aren't collected for a job continued from a checkpoint");
+            return null;
+        }
+        int kmerSize = settings.getKmerSize();
+        return () -> new SequenceStats(kmerSize);
+    }
+
+    /**
+     * @param result pending result of a file
+     * @return result of the file, null if reading the file failed
+     */
+    static FastaResult getResult(Future<FastaResult> result) {
+        try {
+            return result.get();
+        } catch (InterruptedException | ExecutionException e) {
+            log.severe("Can't obtain result: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Writes {@value FastaFileService#reportFileName} replacing the existing one.
+     *
+     * @param result counts of all files
+     * @param filesCount number of files
+     * @throws IOException if unable to write the report
+     */
+    void writeReportFile(FastaResult result, int filesCount) throws IOException {
+        try (BufferedWriter writer = getReportFileWriter()) {
+            if (writer == null) {
+                throw new IllegalStateException("Unable to write into " + FastaFileService.reportFileName);
+            }
+            FastaReport.write(writer, result, filesCount);
+        }
+    }
+
+    private BufferedWriter getReportFileWriter() {
+        Path reportPath = getPath(FastaFileService.reportFileName);
+        try {
+            Files.deleteIfExists(reportPath);
+            File file = reportPath.toFile();
+            return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file)));
+        } catch (IOException e) {
+            log.severe("Can't create buffered writer for " + FastaFileService.reportFileName + ": "
+                    + e.getMessage());
+            return null;
+        }
+    }
+}
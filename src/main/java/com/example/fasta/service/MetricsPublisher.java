@@ -0,0 +1,97 @@
+package com.example.fasta.service;
+
+import com.example.fasta.concurrent.NamedThreadFactory;
+import com.example.fasta.metrics.MetricsRegistry;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Exposes {@link MetricsRegistry} of a running job through JMX and periodically dumps it into
+ * a metrics file, which is replaced atomically like the progress file.
+ *
+ * @author rdanilov
+ * @since 21.10.2018
+ */
+class MetricsPublisher implements Closeable {
+
+    private static final Logger log = Logger.getLogger(MetricsPublisher.class.getName());
+
+    private static final String objectName = "com.example.fasta:type=FastaFileService,name=metrics";
+
+    private final MetricsRegistry metrics;
+    private final Path metricsPath;
+    private final ScheduledExecutorService scheduler;
+    private final ObjectName registeredName;
+
+    /**
+     * Constructs an instance of {@link MetricsPublisher}, registers the MBean and starts dumping
+     *
+     * @param metrics metrics of the job
+     * @param metricsPath path of the metrics file
+     * @param interval interval between dumps in milliseconds
+     */
+    MetricsPublisher(MetricsRegistry metrics, Path metricsPath, long interval) {
+        this.metrics = metrics;
+        this.metricsPath = metricsPath;
+        this.registeredName = registerMBean(metrics);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("fasta-metrics"));
+        this.scheduler.scheduleAtFixedRate(this::publish, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops periodic dumps, writes the final metrics and unregisters the MBean.
+     */
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        try {
+            scheduler.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        publish();
+        if (registeredName != null) {
+            try {
+                MetricsRegistry.unregisterMBean(registeredName);
+            } catch (JMException e) {
+                log.severe("Can't unregister metrics MBean: " + e.getMessage());
+            }
+        }
+    }
+
+    private void publish() {
+        try {
+            Path tmpPath = Paths.get(metricsPath + ".tmp");
+            try (BufferedWriter writer = Files.newBufferedWriter(tmpPath)) {
+                for (Map.Entry<String, Long> entry : metrics.snapshot().entrySet()) {
+                    FastaReport.writeLine(writer, entry.getKey(), entry.getValue());
+                }
+            }
+            Files.move(tmpPath, metricsPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.severe("Can't write metrics into " + metricsPath + ": " + e.getMessage());
+        }
+    }
+
+    private static ObjectName registerMBean(MetricsRegistry metrics) {
+        try {
+            return metrics.registerMBean(objectName);
+        } catch (JMException e) {
+            log.severe("Can't register metrics MBean " + objectName + ": " + e.getMessage());
+            return null;
+        }
+    }
+}
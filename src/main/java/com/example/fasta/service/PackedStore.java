@@ -0,0 +1,126 @@
+package com.example.fasta.service;
+
+import com.example.fasta.io.PackedSequenceFile;
+import com.example.fasta.metrics.Counter;
+import com.example.fasta.metrics.MetricsRegistry;
+import com.example.fasta.metrics.Timer;
+import com.example.fasta.service.FastaInputs.InputFormat;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+/**
+ * Store of input files packed by 2 bits per base, see {@link PackedSequenceFile}. A file is packed when
+ * it is read for the first time or has changed, so later jobs read its packed copy without decompressing
+ * and scanning the source again. Packed copies are kept under the name of the file in the folder of the store.
+ *
+ * @author rdanilov
+ * @since 21.10.2018
+ */
+final class PackedStore {
+
+    private static final Logger log = Logger.getLogger(PackedStore.class.getName());
+
+    private final JobContext context;
+    private final FastaInputs inputs;
+
+    /**
+     * Constructs an instance of {@link PackedStore}
+     *
+     * @param context folder, settings and resources of the job
+     * @param inputs opener of input files of the job
+     */
+    PackedStore(JobContext context, FastaInputs inputs) {
+        this.context = context;
+        this.inputs = inputs;
+    }
+
+    /**
+     * Finds packed copies of the files, files which aren't packed yet or have changed since they were
+     * packed are packed in parallel. A file which can't be packed is read from the source.
+     * Packed store isn't used for checkpoints, whose offsets refer to source files.
+     *
+     * @param fileNames names of the files
+     * @param files input files
+     * @param inflaters threads inflating BGZF blocks
+     * @param metrics metrics of the job
+     * @return files to be read in the same order, packed copies or the source files
+     * @throws IOException if interrupted or unable to pack the files
+     */
+    List<File> getPackedFiles(List<String> fileNames, List<File> files, ExecutorService inflaters,
+                              MetricsRegistry metrics) throws IOException {
+        FastaSettings settings = context.getSettings();
+        if (settings.getPackedStore() == null) {
+            return files;
+        }
+        if (settings.getCheckpointInterval() > 0) {
+            log.warning("Offsets of checkpoints refer to source files, packed store isn't used");
+            return files;
+        }
+        Timer packTimer = metrics.timer("ingest.pack");
+        Counter fileBytes = metrics.counter("ingest.fileBytesRead");
+        ExecutorService service = context.newWorkerExecutor();
+        try {
+            List<Future<File>> futures = new ArrayList<>();
+            for (int i = 0; i < files.size(); i++) {
+                File file = files.get(i);
+                Path packPath = Paths.get(settings.getPackedStore(), fileNames.get(i) + PackedSequenceFile.extension);
+                futures.add(service.submit(() -> getPackedFile(file, packPath, inflaters, packTimer, fileBytes,
+                        metrics)));
+            }
+            List<File> sources = new ArrayList<>();
+            for (Future<File> future : futures) {
+                sources.add(future.get());
+            }
+            return sources;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while packing files");
+        } catch (ExecutionException e) {
+            throw new IOException("Unable to pack files", e.getCause());
+        } finally {
+            service.shutdownNow();
+        }
+    }
+
+    private File getPackedFile(File file, Path packPath, ExecutorService inflaters, Timer packTimer,
+                               Counter fileBytes, MetricsRegistry metrics) {
+        if (!file.exists() || inputs.isStreamed(file)) {
+            return file;
+        }
+        long size = file.length();
+        long lastModified = file.lastModified();
+        try {
+            if (Files.exists(packPath) && PackedSequenceFile.open(packPath).isPackOf(size, lastModified)) {
+                return packPath.toFile();
+            }
+        } catch (IOException e) {
+            log.warning("Can't read packed file " + packPath + ", it is packed again: " + e.getMessage());
+        }
+        long start = System.nanoTime();
+        try {
+            Files.createDirectories(packPath.toAbsolutePath().getParent());
+            InputFormat format = FastaInputs.probeInputFile(file);
+            if (format == InputFormat.PACKED) {
+                return file;
+            }
+            PackedSequenceFile.pack(inputs.openInputFile(file, format, 0, inflaters, fileBytes, metrics), packPath,
+                    size, lastModified);
+            packTimer.recordSince(start);
+            return packPath.toFile();
+        } catch (IOException e) {
+            log.severe("Can't pack " + file.getName() + ", it is read from the source: " + e.getMessage());
+            return file;
+        }
+    }
+}
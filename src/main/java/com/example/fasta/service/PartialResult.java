@@ -0,0 +1,194 @@
+package com.example.fasta.service;
+
+import com.example.fasta.model.FastaResult;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Result of one shard of a job split between processes or machines: the shard, number of its files
+ * and their counts in the binary format of {@link FastaResult}. Partial results are merged
+ * into the result of the whole job in a tree, halves of the list are read and merged in parallel.
+ * The file is replaced atomically, so a partial result is never seen half written.
+ *
+ * @author rdanilov
+ * @since 21.10.2018
+ */
+final class PartialResult {
+
+    private static final int magic = 0x46415054;
+    private static final int version = 1;
+
+    private final int shardCount;
+    private final BitSet shards;
+    private final long fileCount;
+    private final FastaResult result;
+
+    /**
+     * Constructs an instance of {@link PartialResult} of one shard
+     *
+     * @param shard index of the shard from 0
+     * @param shardCount number of shards of the job
+     * @param fileCount number of files of the shard
+     * @param result counts of the files of the shard
+     */
+    PartialResult(int shard, int shardCount, long fileCount, FastaResult result) {
+        this(shardCount, new BitSet(), fileCount, result);
+        shards.set(shard);
+    }
+
+    private PartialResult(int shardCount, BitSet shards, long fileCount, FastaResult result) {
+        this.shardCount = shardCount;
+        this.shards = shards;
+        this.fileCount = fileCount;
+        this.result = result;
+    }
+
+    int getShardCount() {
+        return shardCount;
+    }
+
+    /**
+     * @return number of shards which are merged into this result
+     */
+    int getMergedShardCount() {
+        return shards.cardinality();
+    }
+
+    long getFileCount() {
+        return fileCount;
+    }
+
+    FastaResult getResult() {
+        return result;
+    }
+
+    /**
+     * Writes the partial result into a temporary file and moves it to the given path.
+     *
+     * @param path path of the partial result
+     * @throws IOException if unable to write the file
+     */
+    void write(Path path) throws IOException {
+        Path tmpPath = Paths.get(path + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmpPath)))) {
+            out.writeInt(magic);
+            out.writeByte(version);
+            out.writeInt(shardCount);
+            byte[] shardBits = shards.toByteArray();
+            out.writeInt(shardBits.length);
+            out.write(shardBits);
+            out.writeLong(fileCount);
+            result.write(out);
+        }
+        Files.move(tmpPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads a partial result written by {@link #write}.
+     *
+     * @param path path of the partial result
+     * @return partial result
+     * @throws IOException if unable to read the file or it isn't a partial result of this version
+     */
+    static PartialResult read(Path path) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != magic) {
+                throw new IOException("Not a partial result: " + path);
+            }
+            int partialVersion = in.readUnsignedByte();
+            if (partialVersion != version) {
+                throw new IOException("Unsupported version of partial result " + partialVersion + ": " + path);
+            }
+            int shardCount = in.readInt();
+            int shardBytes = in.readInt();
+            if (shardCount < 1 || shardBytes < 0 || shardBytes > (shardCount + 7) / 8) {
+                throw new IOException("Malformed partial result: " + path);
+            }
+            byte[] shardBits = new byte[shardBytes];
+            in.readFully(shardBits);
+            long fileCount = in.readLong();
+            FastaResult result = FastaResult.read(in);
+            return new PartialResult(shardCount, BitSet.valueOf(shardBits), fileCount, result);
+        }
+    }
+
+    /**
+     * Reads and merges partial results in a tree.
+     *
+     * @param paths paths of partial results, at least one
+     * @return merged result
+     * @throws IOException if unable to read some result, results are of different jobs or a shard is
+     *                     merged twice
+     */
+    static PartialResult merge(List<Path> paths) throws IOException {
+        if (paths.isEmpty()) {
+            throw new IllegalArgumentException("No partial results to merge");
+        }
+        try {
+            return ForkJoinPool.commonPool().invoke(new MergeTask(paths, 0, paths.size()));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static PartialResult merge(PartialResult partial1, PartialResult partial2) throws IOException {
+        if (partial1.shardCount != partial2.shardCount) {
+            throw new IOException("Partial results of " + partial1.shardCount + " and " + partial2.shardCount
+                    + " shards can't be merged");
+        }
+        if (partial1.shards.intersects(partial2.shards)) {
+            throw new IOException("Some shard is merged twice");
+        }
+        partial1.shards.or(partial2.shards);
+        FastaResult.merge(partial1.result, partial2.result);
+        return new PartialResult(partial1.shardCount, partial1.shards, partial1.fileCount + partial2.fileCount,
+                partial1.result);
+    }
+
+    /**
+     * Reads a range of partial results, splitting it in halves merged in parallel.
+     */
+    private static final class MergeTask extends RecursiveTask<PartialResult> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<Path> paths;
+        private final int from;
+        private final int to;
+
+        private MergeTask(List<Path> paths, int from, int to) {
+            this.paths = paths;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected PartialResult compute() {
+            try {
+                if (to - from == 1) {
+                    return read(paths.get(from));
+                }
+                int middle = (from + to) >>> 1;
+                MergeTask left = new MergeTask(paths, from, middle);
+                left.fork();
+                PartialResult right = new MergeTask(paths, middle, to).compute();
+                return merge(left.join(), right);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.fasta.service;
+
+import com.example.fasta.concurrent.FastaProgress;
+import com.example.fasta.concurrent.MemoryBudget;
+import com.example.fasta.concurrent.NamedThreadFactory;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/**
+ * Periodically publishes {@link FastaProgress} of a running job into a progress file
+ * and to the progress listener. The file is replaced atomically, so it always contains
+ * a complete report even if the job crashes. If memory budget is set, its fill is published as well.
+ *
+ * @author rdanilov
+ * @since 21.10.2018
+ */
+class ProgressPublisher implements Closeable {
+
+    private static final Logger log = Logger.getLogger(ProgressPublisher.class.getName());
+
+    private final FastaProgress progress;
+    private final Path progressPath;
+    private final Consumer<FastaProgress.Snapshot> listener;
+    private final MemoryBudget budget;
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * Constructs an instance of {@link ProgressPublisher} and starts publication
+     *
+     * @param progress progress to be published
+     * @param progressPath path of the progress file
+     * @param listener listener receiving progress, may be null
+     * @param budget memory budget of buffered chunks, may be null
+     * @param interval interval between publications in milliseconds
+     */
+    ProgressPublisher(FastaProgress progress, Path progressPath, Consumer<FastaProgress.Snapshot> listener,
+                      MemoryBudget budget, long interval) {
+        this.progress = progress;
+        this.progressPath = progressPath;
+        this.listener = listener;
+        this.budget = budget;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("fasta-progress"));
+        this.scheduler.scheduleAtFixedRate(this::publish, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops periodic publication and publishes the final progress.
+     */
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        try {
+            scheduler.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        publish();
+    }
+
+    private void publish() {
+        FastaProgress.Snapshot snapshot = progress.snapshot();
+        try {
+            Path tmpPath = Paths.get(progressPath + ".tmp");
+            try (BufferedWriter writer = Files.newBufferedWriter(tmpPath)) {
+                FastaReport.writeLine(writer, "FILES_DONE", snapshot.getFilesDone());
+                FastaReport.writeLine(writer, "BYTES_PROCESSED", snapshot.getBytesProcessed());
+                if (budget != null) {
+                    FastaReport.writeLine(writer, "BUFFER_LIMIT", budget.getLimit());
+                    FastaReport.writeLine(writer, "BUFFERED_BYTES", budget.getUsedBytes());
+                    FastaReport.writeLine(writer, "BUFFERED_PEAK_BYTES", budget.getPeakBytes());
+                    FastaReport.writeLine(writer, "BUFFER_WAITS", budget.getWaitCount());
+                }
+                FastaReport.write(writer, snapshot.getResult(), snapshot.getFilesCount());
+            }
+            Files.move(tmpPath, progressPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.severe("Can't write progress into " + progressPath + ": " + e.getMessage());
+        }
+        if (listener != null) {
+            listener.accept(snapshot);
+        }
+    }
+}
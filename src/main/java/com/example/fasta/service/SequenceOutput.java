@@ -0,0 +1,182 @@
+package com.example.fasta.service;
+
+import com.example.fasta.io.BgzfOutputStream;
+import com.example.fasta.io.FastaIndexWriter;
+import com.example.fasta.io.FastaRecordWriter;
+import com.example.fasta.io.GzipMemberOutputStream;
+import com.example.fasta.io.MeteredOutputStream;
+import com.example.fasta.io.RecordWriter;
+import com.example.fasta.metrics.MetricsRegistry;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Sequence file of an interleave job: gzip by default, gzip members ending at checkpoints if checkpoints are set,
+ * or BGZF blocks with .gzi index of blocks and .fai index of records if block compression is set.
+ * It is written into {@value FastaFileService#sequenceFileName} or streamed into the output channel of the settings.
+ *
+ * @author rdanilov
+ * @since 21.10.2018
+ */
+final class SequenceOutput {
+
+    private static final Logger log = Logger.getLogger(SequenceOutput.class.getName());
+
+    private static final int bufferSize = 64 * 1024;
+
+    private final JobContext context;
+    private final FastaSettings settings;
+
+    /**
+     * Constructs an instance of {@link SequenceOutput}
+     *
+     * @param context folder, settings and resources of the job
+     */
+    SequenceOutput(JobContext context) {
+        this.context = context;
+        this.settings = context.getSettings();
+    }
+
+    /**
+     * Opens the sequence stream replacing the sequence file and its indexes. A job continued from the checkpoint
+     * appends to the sequence file truncated to the length it had at the checkpoint.
+     *
+     * @param checkpoint checkpoint the job is continued from, null if the job starts from the beginning
+     * @param metrics metrics of the job
+     * @return sequence stream, null if unable to open it
+     */
+    OutputStream open(Checkpoint checkpoint, MetricsRegistry metrics) {
+        Path sequencePath = context.getPath(FastaFileService.sequenceFileName);
+        try {
+            Files.deleteIfExists(context.getPath(FastaFileService.sequenceIndexFileName));
+            Files.deleteIfExists(context.getPath(FastaFileService.recordIndexFileName));
+            if (checkpoint != null) {
+                return getResumedSequenceFileStream(sequencePath, checkpoint.getOutputOffset(), metrics);
+            }
+            OutputStream fileStream;
+            if (settings.getOutputChannel() != null) {
+                fileStream = new MeteredOutputStream(Channels.newOutputStream(settings.getOutputChannel()),
+                        metrics.counter("output.fileBytes"), metrics.timer("output.fileWrite"));
+            } else {
+                Files.deleteIfExists(sequencePath);
+                fileStream = openMeteredFile(sequencePath.toFile(), false, metrics);
+            }
+            if (settings.isBlockCompression()) {
+                return newBgzfOutputStream(fileStream, metrics);
+            }
+            if (settings.getCheckpointInterval() > 0) {
+                return new GzipMemberOutputStream(fileStream, bufferSize);
+            }
+            GZIPOutputStream outputStream = new GZIPOutputStream(fileStream, bufferSize);
+            return new BufferedOutputStream(new MeteredOutputStream(outputStream,
+                    metrics.counter("output.deflate.uncompressedBytes"), metrics.timer("output.deflate")), bufferSize);
+        } catch (IOException e) {
+            log.severe("Can't create output stream for " + FastaFileService.sequenceFileName + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private OutputStream getResumedSequenceFileStream(Path sequencePath, long offset, MetricsRegistry metrics)
+            throws IOException {
+        try (FileChannel channel = FileChannel.open(sequencePath, StandardOpenOption.WRITE)) {
+            if (channel.size() < offset) {
+                throw new EOFException(FastaFileService.sequenceFileName + " is shorter than the checkpoint offset");
+            }
+            channel.truncate(offset);
+        }
+        File file = sequencePath.toFile();
+        OutputStream fileStream = openMeteredFile(file, true, metrics);
+        if (settings.isBlockCompression()) {
+            BgzfOutputStream bgzfStream = newBgzfOutputStream(fileStream, metrics);
+            try (InputStream existing = new BufferedInputStream(new FileInputStream(file), bufferSize)) {
+                bgzfStream.restoreBlocks(existing);
+            } catch (IOException e) {
+                bgzfStream.close();
+                throw e;
+            }
+            return bgzfStream;
+        }
+        return new GzipMemberOutputStream(fileStream, bufferSize, offset);
+    }
+
+    private BgzfOutputStream newBgzfOutputStream(OutputStream fileStream, MetricsRegistry metrics) {
+        OutputStream out = new BufferedOutputStream(fileStream, bufferSize);
+        FastaResources resources = context.getResources();
+        if (resources != null) {
+            return new BgzfOutputStream(out, resources.getCompressors(), resources.getCompressionThreads(), metrics,
+                    resources.getCodecs());
+        }
+        return new BgzfOutputStream(out, settings.getCompressionThreads(), metrics);
+    }
+
+    private static OutputStream openMeteredFile(File file, boolean append, MetricsRegistry metrics)
+            throws IOException {
+        return new MeteredOutputStream(new FileOutputStream(file, append),
+                metrics.counter("output.fileBytes"), metrics.timer("output.fileWrite"));
+    }
+
+    /**
+     * @param checkpoint checkpoint the job is continued from, null if the job starts from the beginning
+     * @return writer of .fai index of records, null if the index isn't written
+     * @throws IOException if unable to create the index file
+     */
+    FastaIndexWriter openRecordIndex(Checkpoint checkpoint) throws IOException {
+        if (!settings.isBlockCompression() || settings.getOutputChannel() != null) {
+            return null;
+        }
+        if (checkpoint != null) {
+            log.info("Records written before the checkpoint aren't known, " + FastaFileService.recordIndexFileName
+                    + " isn't written");
+            return null;
+        }
+        return new FastaIndexWriter(
+                new FileOutputStream(context.getPath(FastaFileService.recordIndexFileName).toFile()), 0);
+    }
+
+    /**
+     * @return factory of writers of records of the settings, {@link FastaRecordWriter} by default
+     */
+    RecordWriter.Factory getRecordWriterFactory() {
+        if (settings.getRecordWriterFactory() != null) {
+            return settings.getRecordWriterFactory();
+        }
+        return (out, continued, index) -> new FastaRecordWriter(out, continued, index, settings.getLineWidth(),
+                settings.isRecordPerFile(), settings.isOriginalHeaders());
+    }
+
+    /**
+     * Finishes BGZF sequence stream and writes .gzi index of its blocks unless it is streamed into a channel.
+     * The stream is still to be closed.
+     *
+     * @param sequenceStream stream opened by {@link #open}
+     * @throws IOException if unable to write the stream or the index
+     */
+    void finish(OutputStream sequenceStream) throws IOException {
+        if (sequenceStream instanceof BgzfOutputStream) {
+            BgzfOutputStream bgzfStream = (BgzfOutputStream) sequenceStream;
+            bgzfStream.finish();
+            if (settings.getOutputChannel() != null) {
+                return;
+            }
+            File indexFile = context.getPath(FastaFileService.sequenceIndexFileName).toFile();
+            try (OutputStream indexStream = new BufferedOutputStream(new FileOutputStream(indexFile), bufferSize)) {
+                bgzfStream.writeIndex(indexStream);
+            }
+        }
+    }
+}
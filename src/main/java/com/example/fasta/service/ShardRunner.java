@@ -0,0 +1,116 @@
+package com.example.fasta.service;
+
+import com.example.fasta.model.FastaResult;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * Runner of shard and reduce modes. Files are assigned to shards by size, largest first to the least loaded
+ * shard, so every process given the same files finds the same assignment without coordination.
+ * A shard counts its files and writes their {@link PartialResult}, and the reduce mode merges partial
+ * results of all shards into the report.
+ *
+ * @author rdanilov
+ * @since 21.10.2018
+ */
+final class ShardRunner {
+
+    private static final Logger log = Logger.getLogger(ShardRunner.class.getName());
+
+    private final JobContext context;
+    private final CountRunner countRunner;
+
+    /**
+     * Constructs an instance of {@link ShardRunner}
+     *
+     * @param context folder, settings and resources of the job
+     * @param countRunner runner counting files of the shard
+     */
+    ShardRunner(JobContext context, CountRunner countRunner) {
+        this.context = context;
+        this.countRunner = countRunner;
+    }
+
+    /**
+     * Counts the files of the shard of the settings and writes their partial result into
+     * {@link FastaFileService#getPartialFileName}.
+     *
+     * @param fileNames names of files of all shards
+     */
+    void process(List<String> fileNames) {
+        FastaSettings settings = context.getSettings();
+        List<String> shardFileNames = selectShard(fileNames);
+        log.info("Shard " + settings.getShard() + " of " + settings.getShardCount() + " counts "
+                + shardFileNames.size() + " of " + fileNames.size() + " files");
+        FastaResult result = countRunner.count(shardFileNames);
+        try {
+            new PartialResult(settings.getShard(), settings.getShardCount(), shardFileNames.size(), result)
+                    .write(context.getPath(FastaFileService.getPartialFileName(settings.getShard())));
+        } catch (IOException e) {
+            log.severe("Something went wrong: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Merges partial results of all shards and writes the result into {@value FastaFileService#reportFileName}.
+     *
+     * @param partialNames names of files of partial results
+     * @throws IllegalStateException if unable to read the partial results or results of some shards are missing
+     */
+    void reduce(List<String> partialNames) {
+        List<Path> paths = partialNames.stream()
+                .map(context::getPath)
+                .collect(Collectors.toList());
+        PartialResult partial;
+        try {
+            partial = PartialResult.merge(paths);
+        } catch (IOException e) {
+            log.severe("Can't merge partial results: " + e.getMessage());
+            throw new IllegalStateException("Unable to merge partial results", e);
+        }
+        if (partial.getMergedShardCount() < partial.getShardCount()) {
+            throw new IllegalStateException("Partial results of " + partial.getMergedShardCount() + " of "
+                    + partial.getShardCount() + " shards are given");
+        }
+        try {
+            context.writeReportFile(partial.getResult(), (int) partial.getFileCount());
+        } catch (IOException e) {
+            log.severe("Something went wrong: " + e.getMessage());
+        }
+    }
+
+    private List<String> selectShard(List<String> fileNames) {
+        FastaSettings settings = context.getSettings();
+        long[] sizes = new long[fileNames.size()];
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < fileNames.size(); i++) {
+            sizes[i] = context.getPath(fileNames.get(i)).toFile().length();
+            order.add(i);
+        }
+        order.sort((i, j) -> sizes[i] != sizes[j] ? Long.compare(sizes[j], sizes[i]) : Integer.compare(i, j));
+        long[] loads = new long[settings.getShardCount()];
+        boolean[] selected = new boolean[fileNames.size()];
+        for (int file : order) {
+            int shard = 0;
+            for (int i = 1; i < loads.length; i++) {
+                if (loads[i] < loads[shard]) {
+                    shard = i;
+                }
+            }
+            loads[shard] += Math.max(1, sizes[file]);
+            selected[file] = shard == settings.getShard();
+        }
+        List<String> shardFileNames = new ArrayList<>();
+        for (int i = 0; i < fileNames.size(); i++) {
+            if (selected[i]) {
+                shardFileNames.add(fileNames.get(i));
+            }
+        }
+        return shardFileNames;
+    }
+}
@@ -0,0 +1,273 @@
+package com.example.fasta.service;
+
+import com.example.fasta.model.FastaResult;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * On-disk cache of results of single files. Entries are keyed by absolute path and are valid while size,
+ * modification time and fingerprint of the file stay the same. The fingerprint is a checksum of the first
+ * and the last {@value #sampleSize} bytes, so it is computed without reading the whole file.
+ * Entries are kept in the order of use and the least recently used ones are evicted when the
+ * cache file would exceed its size limit.
+ *
+ * @author rdanilov
+ * @since 21.10.2018
+ */
+final class StatsCache {
+
+    private static final Logger log = Logger.getLogger(StatsCache.class.getName());
+
+    private static final int sampleSize = 64 * 1024;
+
+    private final Path path;
+    private final long maxSize;
+    private final LinkedHashMap<String, Entry> entries;
+    private boolean changed;
+
+    private StatsCache(Path path, long maxSize) {
+        this.path = path;
+        this.maxSize = maxSize;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * Reads the cache file. A missing or damaged file gives an empty cache.
+     *
+     * @param path path of the cache file
+     * @param maxSize maximal size of the cache file in bytes
+     * @return cache
+     */
+    static StatsCache load(Path path, long maxSize) {
+        StatsCache cache = new StatsCache(path, maxSize);
+        if (Files.exists(path)) {
+            try (BufferedReader reader = Files.newBufferedReader(path)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    Entry entry = Entry.parse(line);
+                    cache.entries.put(entry.path, entry);
+                }
+            } catch (IOException | RuntimeException e) {
+                cache.entries.clear();
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * Reads the cache file of the settings.
+     *
+     * @param settings settings of the job
+     * @return cache, null if statistics cache isn't set
+     */
+    static StatsCache load(FastaSettings settings) {
+        return settings.getStatsCache() != null
+                ? load(Paths.get(settings.getStatsCache()), settings.getStatsCacheSize())
+                : null;
+    }
+
+    /**
+     * Computes fingerprint of the file like {@link #fingerprint}, a file which can't be read isn't cached.
+     *
+     * @param file file to be checked
+     * @return fingerprint of the file, null if unable to read the file
+     */
+    static Fingerprint tryFingerprint(File file) {
+        try {
+            return fingerprint(file);
+        } catch (IOException e) {
+            log.warning("Can't compute fingerprint of " + file.getName() + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Computes fingerprint of the file: size, modification time and checksum of its first and last bytes.
+     *
+     * @param file file to be checked
+     * @return fingerprint of the file
+     * @throws IOException if unable to read the file
+     */
+    static Fingerprint fingerprint(File file) throws IOException {
+        long lastModified = file.lastModified();
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            long size = in.length();
+            byte[] buffer = new byte[(int) Math.min(sampleSize, size)];
+            CRC32 head = new CRC32();
+            in.readFully(buffer);
+            head.update(buffer);
+            CRC32 tail = new CRC32();
+            in.seek(size - buffer.length);
+            in.readFully(buffer);
+            tail.update(buffer);
+            return new Fingerprint(size, lastModified, head.getValue() << 32 | tail.getValue());
+        }
+    }
+
+    /**
+     * @param file file to be looked up
+     * @param fingerprint current fingerprint of the file
+     * @return cached result or null if the file isn't cached or has been changed
+     */
+    FastaResult get(File file, Fingerprint fingerprint) {
+        Entry entry = entries.get(file.getAbsolutePath());
+        if (entry == null || !entry.fingerprint.equals(fingerprint)) {
+            return null;
+        }
+        changed = true;
+        return new FastaResult(entry.baseCounts, entry.sequenceCount);
+    }
+
+    /**
+     * @param file file whose result is stored
+     * @param fingerprint fingerprint of the file taken before it was read
+     * @param result result of the file
+     */
+    void put(File file, Fingerprint fingerprint, FastaResult result) {
+        String key = file.getAbsolutePath();
+        entries.put(key, new Entry(key, fingerprint, result.getBaseCounts(), result.getSequenceCount()));
+        changed = true;
+    }
+
+    /**
+     * Evicts the least recently used entries exceeding the size limit and replaces the cache file atomically.
+     *
+     * @throws IOException if unable to write the cache file
+     */
+    void save() throws IOException {
+        if (!changed) {
+            return;
+        }
+        long size = 0;
+        for (Entry entry : entries.values()) {
+            size += entry.size();
+        }
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (size > maxSize && eldest.hasNext()) {
+            size -= eldest.next().size();
+            eldest.remove();
+        }
+        Path tmpPath = Paths.get(path + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(tmpPath)) {
+            for (Entry entry : entries.values()) {
+                writer.append(entry.line).append("\n");
+            }
+        }
+        Files.move(tmpPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        changed = false;
+    }
+
+    /**
+     * Saves the cache like {@link #save}, a cache which can't be written is left as it was.
+     */
+    void trySave() {
+        try {
+            save();
+        } catch (IOException e) {
+            log.severe("Can't write statistics cache " + path + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Size, modification time and checksum of sampled content of a file.
+     */
+    static final class Fingerprint {
+
+        private final long size;
+        private final long lastModified;
+        private final long hash;
+
+        Fingerprint(long size, long lastModified, long hash) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.hash = hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Fingerprint)) {
+                return false;
+            }
+            Fingerprint that = (Fingerprint) o;
+            return size == that.size && lastModified == that.lastModified && hash == that.hash;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(size) * 31 * 31 + Long.hashCode(lastModified) * 31 + Long.hashCode(hash);
+        }
+    }
+
+    /**
+     * Cached result of one file stored as a tab separated line:
+     * size, modification time, fingerprint, number of sequences, counts of bases and path.
+     */
+    private static final class Entry {
+
+        private final String path;
+        private final Fingerprint fingerprint;
+        private final Map<Integer, Long> baseCounts;
+        private final long sequenceCount;
+        private final String line;
+
+        private Entry(String path, Fingerprint fingerprint, Map<Integer, Long> baseCounts, long sequenceCount) {
+            this.path = path;
+            this.fingerprint = fingerprint;
+            this.baseCounts = baseCounts;
+            this.sequenceCount = sequenceCount;
+            this.line = format();
+        }
+
+        private long size() {
+            return line.getBytes(StandardCharsets.UTF_8).length + 1;
+        }
+
+        private String format() {
+            StringBuilder bases = new StringBuilder();
+            for (Map.Entry<Integer, Long> base : baseCounts.entrySet()) {
+                if (bases.length() > 0) {
+                    bases.append(',');
+                }
+                bases.append(base.getKey()).append('=').append(base.getValue());
+            }
+            return fingerprint.size + "\t" + fingerprint.lastModified + "\t" + Long.toHexString(fingerprint.hash)
+                    + "\t" + sequenceCount + "\t" + bases + "\t" + path;
+        }
+
+        private static Entry parse(String line) {
+            String[] fields = line.split("\t", 6);
+            if (fields.length < 6) {
+                throw new IllegalArgumentException("Wrong cache line: " + line);
+            }
+            Map<Integer, Long> baseCounts = new HashMap<>();
+            if (!fields[4].isEmpty()) {
+                for (String base : fields[4].split(",")) {
+                    int separator = base.indexOf('=');
+                    baseCounts.put(Integer.parseInt(base.substring(0, separator)),
+                            Long.parseLong(base.substring(separator + 1)));
+                }
+            }
+            Fingerprint fingerprint = new Fingerprint(Long.parseLong(fields[0]), Long.parseLong(fields[1]),
+                    Long.parseUnsignedLong(fields[2], 16));
+            return new Entry(fields[5], fingerprint, baseCounts, Long.parseLong(fields[3]));
+        }
+    }
+}
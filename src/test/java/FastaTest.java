@@ -1,24 +1,64 @@
 import com.example.fasta.Main;
+import com.example.fasta.concurrent.FastaProgress;
+import com.example.fasta.io.BgzfInputStream;
+import com.example.fasta.io.BgzfOutputStream;
+import com.example.fasta.io.FastaRecordReader;
+import com.example.fasta.io.FastaScanner;
+import com.example.fasta.io.LineChunk;
+import com.example.fasta.io.MappedFileInputStream;
+import com.example.fasta.io.PackedSequenceFile;
+import com.example.fasta.metrics.MetricsRegistry;
 import com.example.fasta.model.FastaResult;
+import com.example.fasta.model.LogHistogram;
+import com.example.fasta.model.SequenceStats;
+import com.example.fasta.service.FastaDaemon;
 import com.example.fasta.service.FastaFileService;
+import com.example.fasta.service.FastaResources;
+import com.example.fasta.service.FastaSettings;
 import org.hamcrest.core.StringStartsWith;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.Pipe;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.management.ObjectName;
 
+import static com.example.fasta.service.FastaFileService.checkpointFileName;
+import static com.example.fasta.service.FastaFileService.metricsFileName;
+import static com.example.fasta.service.FastaFileService.progressFileName;
+import static com.example.fasta.service.FastaFileService.recordIndexFileName;
 import static com.example.fasta.service.FastaFileService.reportFileName;
 import static com.example.fasta.service.FastaFileService.sequenceFileName;
+import static com.example.fasta.service.FastaFileService.sequenceIndexFileName;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
@@ -37,6 +77,9 @@ public class FastaTest {
     @Rule
     public ExpectedException thrown = ExpectedException.none();
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     @Test
     public void testIntegration() throws Exception {
         List<String> fileNames = Arrays.asList(
@@ -62,6 +105,485 @@ public class FastaTest {
         assertTrue(TestUtils.isContentEquals(expectedGz, actualGz, true));
     }
 
+    @Test
+    public void testBlockCompressedOutput() throws Exception {
+        List<String> fileNames = Arrays.asList(
+                "test1.fasta.gz",
+                "test2.fasta.gz",
+                "test3.fasta.gz",
+                "test4.fasta.gz"
+        );
+        for (String fileName : fileNames) {
+            Files.copy(Paths.get(pathToResources + fileName), folder.getRoot().toPath().resolve(fileName));
+        }
+        FastaSettings settings = new FastaSettings().setBlockCompression(true).setCompressionThreads(2);
+        FastaFileService service = new FastaFileService(folder.getRoot().getPath() + File.separator, settings);
+        service.processFastaFiles(fileNames);
+
+        File expectedGz = new File(getClass().getResource(expectedGzName).getFile());
+        File actualGz = new File(folder.getRoot(), sequenceFileName);
+        assertTrue(TestUtils.isContentEquals(expectedGz, actualGz, true));
+        assertEquals(8, new File(folder.getRoot(), sequenceIndexFileName).length());
+    }
+
+    @Test
+    public void testRecordsAreReadByIndex() throws Exception {
+        Random random = new Random(17);
+        List<String> fileNames = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            StringBuilder content = new StringBuilder();
+            for (int j = random.nextInt(300); j >= 0; j--) {
+                content.append(">a\n");
+                for (int k = random.nextInt(1000); k >= 0; k--) {
+                    content.append("ACGT".charAt(random.nextInt(4)));
+                }
+                content.append('\n');
+            }
+            TestUtils.writeGzip(folder.newFile(i + ".fasta.gz"), content.toString());
+            fileNames.add(i + ".fasta.gz");
+        }
+        FastaSettings settings = new FastaSettings().setBlockCompression(true);
+        FastaFileService service = new FastaFileService(folder.getRoot().getPath() + File.separator, settings);
+        service.processFastaFiles(fileNames);
+
+        String[] records = TestUtils.readGzip(new File(folder.getRoot(), sequenceFileName)).split("\n");
+        try (FastaRecordReader reader = new FastaRecordReader(folder.getRoot().toPath().resolve(sequenceFileName),
+                folder.getRoot().toPath().resolve(recordIndexFileName),
+                folder.getRoot().toPath().resolve(sequenceIndexFileName))) {
+            assertEquals(records.length / 2, reader.getRecordCount());
+            for (int record = reader.getRecordCount(); record > 0; record--) {
+                assertEquals(">" + record, records[record * 2 - 2]);
+                assertEquals(records[record * 2 - 1],
+                        new String(reader.readRecord(record), StandardCharsets.US_ASCII));
+            }
+        }
+    }
+
+    @Test
+    public void testRecordSpanningBlocksIsRead() throws Exception {
+        Random random = new Random(23);
+        StringBuilder bases = new StringBuilder();
+        for (int i = 0; i < 150000; i++) {
+            bases.append("ACGT".charAt(random.nextInt(4)));
+        }
+        byte[] content = (">a\n" + bases + "\n").getBytes(StandardCharsets.US_ASCII);
+        Path sequenceFile = folder.getRoot().toPath().resolve(sequenceFileName);
+        Path blockIndexFile = folder.getRoot().toPath().resolve(sequenceIndexFileName);
+        try (BgzfOutputStream out = new BgzfOutputStream(Files.newOutputStream(sequenceFile), 1);
+             OutputStream index = Files.newOutputStream(blockIndexFile)) {
+            // the first block ends 10 bytes before the end of the second 8 KiB buffer of the reader,
+            // which follows the 18 bytes of the block header
+            out.write(content, 0, 54704);
+            assertEquals(16392, out.endBlock());
+            out.write(content, 54704, 50000);
+            out.endBlock();
+            out.write(content, 104704, content.length - 104704);
+            out.finish();
+            out.writeIndex(index);
+        }
+        Path recordIndexFile = folder.getRoot().toPath().resolve(recordIndexFileName);
+        Files.write(recordIndexFile, "a\t150000\t3\t150000\t150001\n".getBytes(StandardCharsets.US_ASCII));
+
+        try (FastaRecordReader reader = new FastaRecordReader(sequenceFile, recordIndexFile, blockIndexFile)) {
+            assertEquals(bases.toString(), new String(reader.readRecord(1), StandardCharsets.US_ASCII));
+        }
+    }
+
+    @Test
+    public void testBufferBudget() throws Exception {
+        List<String> fileNames = Arrays.asList(
+                "test1.fasta.gz",
+                "test2.fasta.gz",
+                "test3.fasta.gz",
+                "test4.fasta.gz"
+        );
+        for (String fileName : fileNames) {
+            Files.copy(Paths.get(pathToResources + fileName), folder.getRoot().toPath().resolve(fileName));
+        }
+        FastaSettings settings = new FastaSettings().setBufferBudget(1).setProgressInterval(1000);
+        FastaFileService service = new FastaFileService(folder.getRoot().getPath() + File.separator, settings);
+        service.processFastaFiles(fileNames);
+
+        File expectedGz = new File(getClass().getResource(expectedGzName).getFile());
+        assertTrue(TestUtils.isContentEquals(expectedGz, new File(folder.getRoot(), sequenceFileName), true));
+        List<String> progress = Files.readAllLines(folder.getRoot().toPath().resolve(progressFileName));
+        assertTrue(progress.contains("BUFFER_LIMIT\t1"));
+        assertTrue(progress.contains("BUFFERED_BYTES\t0"));
+    }
+
+    @Test
+    public void testProgressIsPublished() throws Exception {
+        List<String> fileNames = Arrays.asList("test1.fasta.gz", "test2.fasta.gz");
+        for (String fileName : fileNames) {
+            Files.copy(Paths.get(pathToResources + fileName), folder.getRoot().toPath().resolve(fileName));
+        }
+        List<FastaProgress.Snapshot> snapshots = new CopyOnWriteArrayList<>();
+        FastaSettings settings = new FastaSettings().setProgressInterval(1000).setProgressListener(snapshots::add);
+        FastaFileService service = new FastaFileService(folder.getRoot().getPath() + File.separator, settings);
+        service.processFastaFiles(fileNames);
+
+        FastaProgress.Snapshot last = snapshots.get(snapshots.size() - 1);
+        assertEquals(2, last.getFilesDone());
+        assertEquals(8, last.getResult().getSequenceCount());
+        assertEquals(13, last.getResult().getTotalBaseCount());
+        assertEquals(129, last.getBytesProcessed());
+        assertTrue(new File(folder.getRoot(), progressFileName).exists());
+    }
+
+    @Test
+    public void testMetricsArePublished() throws Exception {
+        List<String> fileNames = Arrays.asList("test1.fasta.gz", "test2.fasta.gz");
+        for (String fileName : fileNames) {
+            Files.copy(Paths.get(pathToResources + fileName), folder.getRoot().toPath().resolve(fileName));
+        }
+        FastaSettings settings = new FastaSettings().setMetricsInterval(1000);
+        FastaFileService service = new FastaFileService(folder.getRoot().getPath() + File.separator, settings);
+        service.processFastaFiles(fileNames);
+
+        Map<String, Long> dump = new TreeMap<>();
+        for (String line : Files.readAllLines(folder.getRoot().toPath().resolve(metricsFileName))) {
+            String[] fields = line.split("\t");
+            dump.put(fields[0], Long.parseLong(fields[1]));
+        }
+        assertEquals(8, dump.get("file.test1.fasta.gz.lines") + dump.get("file.test2.fasta.gz.lines"));
+        assertEquals(13, dump.get("file.test1.fasta.gz.bases") + dump.get("file.test2.fasta.gz.bases"));
+        assertTrue(dump.get("merger.handoffs") > 0);
+        assertTrue(dump.get("output.fileBytes") > 0);
+
+        MetricsRegistry metrics = new MetricsRegistry();
+        metrics.counter("lines").add(3);
+        ObjectName name = metrics.registerMBean("com.example.fasta:type=Test");
+        try {
+            assertEquals(3L, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "lines"));
+        } finally {
+            MetricsRegistry.unregisterMBean(name);
+        }
+    }
+
+    @Test
+    public void testJobIsResumedFromCheckpoint() throws Exception {
+        File first = folder.newFile("a.fasta.gz");
+        File second = folder.newFile("b.fasta.gz");
+        TestUtils.writeGzip(first, ">a\nABC\nDEF\n");
+        TestUtils.writeGzip(second, ">b\nXY\nZ\n");
+        File sequenceFile = new File(folder.getRoot(), sequenceFileName);
+        TestUtils.writeGzip(sequenceFile, ">1\nABCXY");
+        String checkpoint = "VERSION\t1\n"
+                + "FILE\t" + first.length() + "\t" + first.lastModified() + "\t6\ta.fasta.gz\n"
+                + "FILE\t" + second.length() + "\t" + second.lastModified() + "\t5\tb.fasta.gz\n"
+                + "TASK\t0\nROW\t2\nROW_CHANGED\t1\n"
+                + "OUTPUT\t" + sequenceFile.length() + "\n"
+                + "SEQUENCE_CNT\t2\nBASE\t65\t1\nBASE\t66\t1\nBASE\t67\t1\nBASE\t88\t1\nBASE\t89\t1\n";
+        Files.write(folder.getRoot().toPath().resolve(checkpointFileName), checkpoint.getBytes(StandardCharsets.UTF_8));
+
+        FastaSettings settings = new FastaSettings().setCheckpointInterval(1000);
+        FastaFileService service = new FastaFileService(folder.getRoot().getPath() + File.separator, settings);
+        service.processFastaFiles(Arrays.asList("a.fasta.gz", "b.fasta.gz"));
+
+        assertEquals(">1\nABCXY\n>2\nDEFZ", TestUtils.readGzip(sequenceFile));
+        String report = new String(Files.readAllBytes(folder.getRoot().toPath().resolve(reportFileName)),
+                StandardCharsets.UTF_8);
+        assertEquals("FILE_CNT\t2\nSEQUENCE_CNT\t4\nBASE_CNT\t9\n"
+                + "A\t1\nB\t1\nC\t1\nD\t1\nE\t1\nF\t1\nX\t1\nY\t1\nZ\t1\n", report);
+        assertFalse(new File(folder.getRoot(), checkpointFileName).exists());
+    }
+
+    @Test
+    public void testPlainFastaIsMapped() throws Exception {
+        byte[] content = ">a\nACG\nTTGCA\n>b\ngc\n".getBytes(StandardCharsets.UTF_8);
+        File plainFile = folder.newFile("a.fasta");
+        Files.write(plainFile.toPath(), content);
+        TestUtils.writeGzip(folder.newFile("b.fasta.gz"), ">a\nNN\n");
+
+        FastaFileService service = new FastaFileService(folder.getRoot().getPath() + File.separator);
+        service.processFastaFiles(Arrays.asList("a.fasta", "b.fasta.gz"));
+        assertEquals(">1\nACGNN\n>2\nTTGCA\n>3\ngc",
+                TestUtils.readGzip(new File(folder.getRoot(), sequenceFileName)));
+
+        try (InputStream in = new MappedFileInputStream(FileChannel.open(plainFile.toPath()), 3)) {
+            assertEquals(4, in.skip(4));
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[5];
+            int n;
+            while ((n = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, n);
+            }
+            assertArrayEquals(Arrays.copyOfRange(content, 4, content.length), out.toByteArray());
+        }
+
+        Files.write(folder.getRoot().toPath().resolve("c.fasta"), "\r\n>c\nAC\n".getBytes(StandardCharsets.UTF_8));
+        assertEquals(1, service.countFastaFiles(Collections.singletonList("c.fasta")).getSequenceCount());
+        Files.write(folder.getRoot().toPath().resolve("d.fasta"), new byte[]{'>', 0, 1, 2});
+        thrown.expect(IllegalStateException.class);
+        service.countFastaFiles(Collections.singletonList("d.fasta"));
+    }
+
+    @Test
+    public void testOrderOfFilesWithDifferentLength() throws Exception {
+        TestUtils.writeGzip(folder.newFile("a.fasta.gz"), ">a\nA\n>b\nAA\n>c\nAAA\n");
+        TestUtils.writeGzip(folder.newFile("b.fasta.gz"), ">a\n\nB\n");
+        TestUtils.writeGzip(folder.newFile("c.fasta.gz"), ">a\nC\nCC\n");
+        TestUtils.writeGzip(folder.newFile("d.fasta.gz"), ">a\n");
+        FastaFileService service = new FastaFileService(folder.getRoot().getPath() + File.separator);
+        service.processFastaFiles(Arrays.asList("a.fasta.gz", "b.fasta.gz", "c.fasta.gz", "d.fasta.gz"));
+
+        assertEquals(">1\nABC\n>2\nAACC\n>3\nAAA",
+                TestUtils.readGzip(new File(folder.getRoot(), sequenceFileName)));
+    }
+
+    @Test
+    public void testRecordLayout() throws Exception {
+        TestUtils.writeGzip(folder.newFile("a.fasta.gz"), ">x1 first\nAC\n>x2\nGGT\n");
+        TestUtils.writeGzip(folder.newFile("b.fasta.gz"), ">y1\nTT\n");
+        List<String> fileNames = Arrays.asList("a.fasta.gz", "b.fasta.gz");
+        String pathToFolder = folder.getRoot().getPath() + File.separator;
+        File sequenceFile = new File(folder.getRoot(), sequenceFileName);
+
+        new FastaFileService(pathToFolder, new FastaSettings().setLineWidth(3)).processFastaFiles(fileNames);
+        assertEquals(">1\nACT\nT\n>2\nGGT", TestUtils.readGzip(sequenceFile));
+
+        new FastaFileService(pathToFolder, new FastaSettings().setRecordPerFile(true)).processFastaFiles(fileNames);
+        assertEquals(">1.1\nAC\n>1.2\nTT\n>2.1\nGGT", TestUtils.readGzip(sequenceFile));
+
+        FastaSettings settings = new FastaSettings().setLineWidth(2).setRecordPerFile(true).setOriginalHeaders(true);
+        new FastaFileService(pathToFolder, settings).processFastaFiles(fileNames);
+        assertEquals(">x1 first\nAC\n>y1\nTT\n>x2\nGG\nT", TestUtils.readGzip(sequenceFile));
+    }
+
+    @Test
+    public void testVirtualThreadMode() throws Exception {
+        for (int i = 0; i < 200; i++) {
+            TestUtils.writeGzip(folder.newFile(i + ".fasta.gz"), ">a\nA\n" + (i % 2 == 0 ? "C\n" : ""));
+        }
+        List<String> fileNames = new ArrayList<>();
+        StringBuilder expected = new StringBuilder(">1\n");
+        for (int i = 0; i < 200; i++) {
+            fileNames.add(i + ".fasta.gz");
+            expected.append('A');
+        }
+        expected.append("\n>2\n");
+        for (int i = 0; i < 200; i += 2) {
+            expected.append('C');
+        }
+        FastaSettings settings = new FastaSettings().setVirtualThreads(true);
+        FastaFileService service = new FastaFileService(folder.getRoot().getPath() + File.separator, settings);
+        service.processFastaFiles(fileNames);
+        assertEquals(expected.toString(), TestUtils.readGzip(new File(folder.getRoot(), sequenceFileName)));
+    }
+
+    @Test
+    public void testReportOnlyUsesStatsCache() throws Exception {
+        TestUtils.writeGzip(folder.newFile("a.fasta.gz"), ">a\nACGT\n>b\nNN\n");
+        File second = folder.newFile("b.fasta.gz");
+        TestUtils.writeGzip(second, ">a\nGG\n");
+        List<String> fileNames = Arrays.asList("a.fasta.gz", "b.fasta.gz");
+        String pathToFolder = folder.getRoot().getPath() + File.separator;
+        String cachePath = new File(folder.getRoot(), "stats.cache").getPath();
+        new FastaFileService(pathToFolder, new FastaSettings().setStatsCache(cachePath)).processFastaFiles(fileNames);
+        Files.delete(folder.getRoot().toPath().resolve(sequenceFileName));
+
+        TestUtils.writeGzip(second, ">a\nGGC\n>b\nTA\n");
+        assertTrue(second.setLastModified(second.lastModified() - 10000));
+        FastaSettings settings = new FastaSettings().setReportOnly(true).setStatsCache(cachePath)
+                .setMetricsInterval(1000);
+        new FastaFileService(pathToFolder, settings).processFastaFiles(fileNames);
+        List<String> cachedReport = Files.readAllLines(folder.getRoot().toPath().resolve(reportFileName));
+        assertFalse(new File(folder.getRoot(), sequenceFileName).exists());
+        assertTrue(Files.readAllLines(folder.getRoot().toPath().resolve(metricsFileName)).contains("cache.hits\t1"));
+
+        new FastaFileService(pathToFolder, new FastaSettings().setReportOnly(true)).processFastaFiles(fileNames);
+        assertEquals(Files.readAllLines(folder.getRoot().toPath().resolve(reportFileName)), cachedReport);
+        assertTrue(cachedReport.contains("SEQUENCE_CNT\t4"));
+    }
+
+    @Test
+    public void testCountFastaFiles() throws Exception {
+        Random random = new Random(15);
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            content.append(">").append(i).append('\n');
+            for (int j = random.nextInt(80); j > 0; j--) {
+                content.append("ACGTNacgt".charAt(random.nextInt(9)));
+            }
+            content.append('\n');
+        }
+        byte[] bytes = content.toString().getBytes(StandardCharsets.US_ASCII);
+        Files.write(folder.getRoot().toPath().resolve("a.fasta"), bytes);
+        TestUtils.writeGzip(folder.newFile("b.fasta.gz"), content.toString());
+
+        FastaResult expected = new FastaResult();
+        try (FastaScanner scanner = new FastaScanner(new ByteArrayInputStream(bytes))) {
+            LineChunk chunk = new LineChunk(1024);
+            while (scanner.next(chunk)) {
+                for (int line = 0; line < chunk.lineCount(); line++) {
+                    expected.countBases(chunk.data(), chunk.start(line), chunk.end(line));
+                    if (chunk.isComplete(line)) {
+                        expected.countSequence();
+                    }
+                }
+            }
+        }
+        FastaResult.merge(expected, expected);
+
+        FastaFileService service = new FastaFileService(folder.getRoot().getPath() + File.separator);
+        FastaResult result = service.countFastaFiles(Arrays.asList("a.fasta", "b.fasta.gz"));
+        assertEquals(expected.getSequenceCount(), result.getSequenceCount());
+        assertEquals(expected.getBaseCounts(), result.getBaseCounts());
+        assertFalse(new File(folder.getRoot(), sequenceFileName).exists());
+    }
+
+    @Test
+    public void testSplitFilesAreCounted() throws Exception {
+        Random random = new Random(16);
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            content.append(">").append(i).append(random.nextBoolean() ? "\r\n" : "\n");
+            for (int j = random.nextInt(i % 10 == 0 ? 2000 : 80); j > 0; j--) {
+                content.append("ACGTNacgt".charAt(random.nextInt(9)));
+            }
+            content.append(random.nextInt(4) == 0 ? "\r\n\n" : "\n");
+        }
+        content.append("ACGT");
+        byte[] bytes = content.toString().getBytes(StandardCharsets.US_ASCII);
+        Files.write(folder.getRoot().toPath().resolve("a.fasta"), bytes);
+        try (BgzfOutputStream out = new BgzfOutputStream(Files.newOutputStream(
+                folder.getRoot().toPath().resolve("b.fasta.gz")), 2)) {
+            out.write(bytes);
+        }
+
+        FastaResult expected = new FastaFileService(folder.getRoot().getPath() + File.separator,
+                new FastaSettings().setSplitSize(0)).countFastaFiles(Collections.singletonList("a.fasta"));
+        for (long splitSize : new long[]{1, 777, 100000}) {
+            FastaFileService service = new FastaFileService(folder.getRoot().getPath() + File.separator,
+                    new FastaSettings().setSplitSize(splitSize));
+            for (String fileName : Arrays.asList("a.fasta", "b.fasta.gz")) {
+                FastaResult result = service.countFastaFiles(Collections.singletonList(fileName));
+                assertEquals(expected.getSequenceCount(), result.getSequenceCount());
+                assertEquals(expected.getBaseCounts(), result.getBaseCounts());
+            }
+        }
+    }
+
+    @Test
+    public void testSequenceStatsAreReported() throws Exception {
+        Files.write(folder.getRoot().toPath().resolve("a.fasta"),
+                ">a\nACGTNAC\n>b\nggcc\n".getBytes(StandardCharsets.US_ASCII));
+        TestUtils.writeGzip(folder.newFile("b.fasta.gz"), ">c\nAT\n");
+        String pathToFolder = folder.getRoot().getPath() + File.separator;
+        new FastaFileService(pathToFolder, new FastaSettings().setKmerSize(2))
+                .processFastaFiles(Arrays.asList("a.fasta", "b.fasta.gz"));
+
+        List<String> report = Files.readAllLines(folder.getRoot().toPath().resolve(reportFileName));
+        assertEquals(Arrays.asList("LENGTH_MIN\t2", "LENGTH_MAX\t7", "LENGTH_N50\t7", "LENGTH_P10\t2",
+                "LENGTH_P50\t4", "LENGTH_P90\t7", "LENGTH_P99\t7", "GC_PERCENT\t0\t1", "GC_PERCENT\t50\t1",
+                "GC_PERCENT\t100\t1", "AMBIGUOUS_PERCENT\t0\t2", "AMBIGUOUS_PERCENT\t14\t1", "KMER_SIZE\t2",
+                "KMER\tAC\t2", "KMER\tAT\t1", "KMER\tCC\t1", "KMER\tCG\t1", "KMER\tGC\t1", "KMER\tGG\t1",
+                "KMER\tGT\t1"), report.subList(report.indexOf("LENGTH_MIN\t2"), report.size()));
+
+        Random random = new Random(19);
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            content.append(">").append(i).append('\n');
+            for (int j = random.nextInt(300); j > 0; j--) {
+                content.append("ACGTNacgt".charAt(random.nextInt(9)));
+            }
+            content.append('\n');
+        }
+        Files.write(folder.getRoot().toPath().resolve("c.fasta"),
+                content.toString().getBytes(StandardCharsets.US_ASCII));
+        SequenceStats expected = new FastaFileService(pathToFolder, new FastaSettings().setKmerSize(5).setSplitSize(0))
+                .countFastaFiles(Collections.singletonList("c.fasta")).getStats();
+        SequenceStats actual = new FastaFileService(pathToFolder, new FastaSettings().setKmerSize(5).setSplitSize(1000))
+                .countFastaFiles(Collections.singletonList("c.fasta")).getStats();
+        assertArrayEquals(expected.getKmers(), actual.getKmers());
+        for (long kmer : expected.getKmers()) {
+            assertEquals(expected.getKmerCount(kmer), actual.getKmerCount(kmer));
+        }
+        assertArrayEquals(expected.getGcHistogram(), actual.getGcHistogram());
+    }
+
+    @Test
+    public void testLengthsArePerRecord() throws Exception {
+        Files.write(folder.getRoot().toPath().resolve("a.fasta"),
+                ">a\nACGT\nACNT\n\n>b\nAAAAAAAAAA\n>c\n>d\nGG\nCC\nGG".getBytes(StandardCharsets.US_ASCII));
+        String pathToFolder = folder.getRoot().getPath() + File.separator;
+        new FastaFileService(pathToFolder, new FastaSettings().setSequenceStats(true))
+                .processFastaFiles(Collections.singletonList("a.fasta"));
+
+        List<String> report = Files.readAllLines(folder.getRoot().toPath().resolve(reportFileName));
+        assertEquals(Arrays.asList("RECORD_CNT\t3", "LENGTH_MIN\t6", "LENGTH_MAX\t10"),
+                report.subList(report.indexOf("RECORD_CNT\t3"), report.indexOf("RECORD_CNT\t3") + 3));
+        assertEquals(Arrays.asList("GC_PERCENT\t0\t1", "GC_PERCENT\t43\t1", "GC_PERCENT\t100\t1",
+                "AMBIGUOUS_PERCENT\t0\t2", "AMBIGUOUS_PERCENT\t13\t1"),
+                report.subList(report.indexOf("GC_PERCENT\t0\t1"), report.size()));
+    }
+
+    @Test
+    public void testKmersSpanLineBreaks() throws Exception {
+        Files.write(folder.getRoot().toPath().resolve("a.fasta"),
+                ">a\nACGT\nACGT\n>b\nAAAAAAAAAA".getBytes(StandardCharsets.US_ASCII));
+        String pathToFolder = folder.getRoot().getPath() + File.separator;
+        new FastaFileService(pathToFolder, new FastaSettings().setKmerSize(3))
+                .processFastaFiles(Collections.singletonList("a.fasta"));
+
+        List<String> report = Files.readAllLines(folder.getRoot().toPath().resolve(reportFileName));
+        assertEquals(Arrays.asList("KMER_SIZE\t3", "KMER\tAAA\t8", "KMER\tACG\t2", "KMER\tCGT\t2",
+                "KMER\tGTA\t1", "KMER\tTAC\t1"), report.subList(report.indexOf("KMER_SIZE\t3"), report.size()));
+
+        Random random = new Random(21);
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            content.append(">").append(i).append('\n');
+            for (int j = random.nextInt(300); j > 0; j--) {
+                content.append("ACGTNacgt".charAt(random.nextInt(9))).append(j % 60 == 1 ? "\n" : "");
+            }
+        }
+        Files.write(folder.getRoot().toPath().resolve("b.fasta"),
+                content.toString().getBytes(StandardCharsets.US_ASCII));
+        SequenceStats expected = new FastaFileService(pathToFolder, new FastaSettings().setKmerSize(5).setSplitSize(0))
+                .countFastaFiles(Collections.singletonList("b.fasta")).getStats();
+        SequenceStats actual = new FastaFileService(pathToFolder, new FastaSettings().setKmerSize(5).setSplitSize(500))
+                .countFastaFiles(Collections.singletonList("b.fasta")).getStats();
+        assertArrayEquals(expected.getKmers(), actual.getKmers());
+        for (long kmer : expected.getKmers()) {
+            assertEquals(expected.getKmerCount(kmer), actual.getKmerCount(kmer));
+        }
+        assertArrayEquals(expected.getGcHistogram(), actual.getGcHistogram());
+    }
+
+    @Test
+    public void testLengthHistogramIsMerged() {
+        Random random = new Random(20);
+        long[] lengths = new long[100000];
+        LogHistogram first = new LogHistogram();
+        LogHistogram second = new LogHistogram();
+        for (int i = 0; i < lengths.length; i++) {
+            lengths[i] = (long) Math.exp(random.nextDouble() * 20);
+            (i % 2 == 0 ? first : second).add(lengths[i]);
+        }
+        LogHistogram merged = LogHistogram.merge(first, second);
+        Arrays.sort(lengths);
+        long total = 0;
+        for (long length : lengths) {
+            total += length;
+        }
+        long n50 = 0;
+        long sum = 0;
+        for (int i = lengths.length - 1; n50 == 0; i--) {
+            sum += lengths[i];
+            if (sum * 2 >= total) {
+                n50 = lengths[i];
+            }
+        }
+        assertEquals(lengths.length, merged.getCount());
+        assertEquals(lengths[0], merged.getMin());
+        assertEquals(lengths[lengths.length - 1], merged.getMax());
+        assertEquals(lengths[lengths.length / 2 - 1], merged.getQuantile(0.5), lengths[lengths.length / 2 - 1] / 64.0);
+        assertEquals(lengths[lengths.length * 9 / 10 - 1], merged.getQuantile(0.9),
+                lengths[lengths.length * 9 / 10 - 1] / 64.0);
+        assertEquals(n50, merged.getN50(), n50 / 32.0);
+    }
+
     @Test
     public void testEmptyArguments() {
         thrown.expect(IllegalArgumentException.class);
@@ -131,4 +653,275 @@ public class FastaTest {
         assertEquals(expectedMap, fasta1.getBaseCounts());
     }
 
+    @Test
+    public void testCountLineIsCaseInsensitive() {
+        FastaResult result = new FastaResult();
+        byte[] line = "xAcgTNa".getBytes(StandardCharsets.US_ASCII);
+        result.countBases(line, 1, line.length);
+        result.countSequence();
+        result.countBases(new byte[]{'G', 'G'}, 0, 2);
+        result.countSequence();
+
+        Map<Integer, Long> expectedMap = new TreeMap<>();
+        expectedMap.put((int) 'A', 2L);
+        expectedMap.put((int) 'C', 1L);
+        expectedMap.put((int) 'G', 3L);
+        expectedMap.put((int) 'N', 1L);
+        expectedMap.put((int) 'T', 1L);
+
+        assertEquals(2, result.getSequenceCount());
+        assertEquals(8, result.getTotalBaseCount());
+        assertEquals(expectedMap, result.getBaseCounts());
+    }
+
+    @Test
+    public void testScannerSplitsLongLines() throws IOException {
+        byte[] content = ">first\r\nACGTACG\r\n\r\n>second description\nTT\rG".getBytes(StandardCharsets.US_ASCII);
+        List<String> lines = new ArrayList<>();
+        StringBuilder line = new StringBuilder();
+        try (FastaScanner scanner = new FastaScanner(new ByteArrayInputStream(content))) {
+            LineChunk chunk = new LineChunk(3);
+            while (scanner.next(chunk)) {
+                while (chunk.hasNext()) {
+                    int fragment = chunk.next();
+                    line.append(new String(chunk.data(), chunk.start(fragment),
+                            chunk.end(fragment) - chunk.start(fragment), StandardCharsets.US_ASCII));
+                    if (chunk.isComplete(fragment)) {
+                        lines.add(line.toString());
+                        line.setLength(0);
+                    }
+                }
+            }
+        }
+        assertEquals(Arrays.asList("ACGTACG", "TT", "G"), lines);
+    }
+
+    @Test
+    public void testDaemonRunsQueuedJobs() throws Exception {
+        List<String> fileNames = Arrays.asList("test1.fasta.gz", "test2.fasta.gz", "test3.fasta.gz", "test4.fasta.gz");
+        Path queue = folder.newFolder("queue").toPath();
+        for (String job : Arrays.asList("a", "b")) {
+            Path jobFolder = folder.newFolder(job).toPath();
+            for (String fileName : fileNames) {
+                Files.copy(Paths.get(pathToResources + fileName), jobFolder.resolve(fileName));
+            }
+            List<String> args = new ArrayList<>(fileNames);
+            args.add("--bgzf");
+            args.add("--folder=" + jobFolder);
+            Files.write(queue.resolve(job + FastaDaemon.jobSuffix), args);
+        }
+        Files.write(queue.resolve("c" + FastaDaemon.jobSuffix), Collections.singletonList("missing.fasta.gz"));
+
+        FastaSettings settings = new FastaSettings().setCompressionThreads(2).setDecompressionThreads(2);
+        try (FastaResources resources = new FastaResources(settings);
+             FastaDaemon daemon = new FastaDaemon(queue, resources, 2)) {
+            Thread thread = new Thread(() -> {
+                try {
+                    daemon.run();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            thread.start();
+            long deadline = System.currentTimeMillis() + 60000;
+            for (String job : Arrays.asList("a", "b", "c")) {
+                while (!Files.exists(queue.resolve(job + FastaDaemon.doneSuffix))) {
+                    assertTrue(System.currentTimeMillis() < deadline);
+                    Thread.sleep(20);
+                }
+            }
+            daemon.close();
+            thread.join();
+        }
+
+        File expectedGz = new File(getClass().getResource(expectedGzName).getFile());
+        for (String job : Arrays.asList("a", "b")) {
+            List<String> done = Files.readAllLines(queue.resolve(job + FastaDaemon.doneSuffix));
+            assertEquals("STATUS\tOK", done.get(0));
+            assertTrue(done.get(done.size() - 1).startsWith("RUN_MS\t"));
+            assertFalse(Files.exists(queue.resolve(job + FastaDaemon.runningSuffix)));
+            assertTrue(TestUtils.isContentEquals(expectedGz, new File(folder.getRoot(), job + "/" + sequenceFileName),
+                    true));
+        }
+        assertEquals("STATUS\tFAILED", Files.readAllLines(queue.resolve("c" + FastaDaemon.doneSuffix)).get(0));
+        assertTrue(Files.readAllLines(queue.resolve(FastaDaemon.metricsFileName)).contains("daemon.failedJobs\t1"));
+    }
+
+    @Test
+    public void testPackedStoreIsReused() throws Exception {
+        String text = ">x y\nACGTnnNNacgRYKt\n>z\nTTTT\nGG*-\n>w\nC\n";
+        File packFile = new File(folder.getRoot(), "a" + PackedSequenceFile.extension);
+        PackedSequenceFile.pack(new ByteArrayInputStream(text.getBytes(StandardCharsets.US_ASCII)),
+                packFile.toPath(), 1, 2);
+        PackedSequenceFile packed = PackedSequenceFile.open(packFile.toPath());
+        assertTrue(packed.isPackOf(1, 2));
+        assertEquals(4, packed.getLineCount());
+        assertEquals(24, packed.getBaseCount());
+        ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+        try (InputStream in = packed.newInputStream()) {
+            byte[] buffer = new byte[3];
+            for (int n = in.read(buffer); n != -1; n = in.read(buffer)) {
+                decoded.write(buffer, 0, n);
+            }
+        }
+        assertEquals(text, new String(decoded.toByteArray(), StandardCharsets.US_ASCII));
+
+        List<String> fileNames = Arrays.asList("test1.fasta.gz", "test2.fasta.gz", "test3.fasta.gz", "test4.fasta.gz");
+        for (String fileName : fileNames) {
+            Files.copy(Paths.get(pathToResources + fileName), folder.getRoot().toPath().resolve(fileName));
+        }
+        File store = folder.newFolder("store");
+        String pathToFolder = folder.getRoot().getPath() + File.separator;
+        FastaSettings settings = new FastaSettings().setPackedStore(store.getPath());
+        new FastaFileService(pathToFolder, settings).processFastaFiles(fileNames);
+        File expectedGz = new File(getClass().getResource(expectedGzName).getFile());
+        assertTrue(TestUtils.isContentEquals(expectedGz, new File(folder.getRoot(), sequenceFileName), true));
+
+        Files.delete(folder.getRoot().toPath().resolve(sequenceFileName));
+        for (String fileName : fileNames) {
+            File pack = new File(store, fileName + PackedSequenceFile.extension);
+            assertTrue(pack.setLastModified(0));
+        }
+        new FastaFileService(pathToFolder, settings).processFastaFiles(fileNames);
+        assertTrue(TestUtils.isContentEquals(expectedGz, new File(folder.getRoot(), sequenceFileName), true));
+        for (String fileName : fileNames) {
+            assertEquals(0, new File(store, fileName + PackedSequenceFile.extension).lastModified());
+        }
+        FastaResult counted = new FastaFileService(pathToFolder, settings).countFastaFiles(fileNames);
+        FastaResult expected = new FastaFileService(pathToFolder).countFastaFiles(fileNames);
+        assertEquals(expected.getTotalBaseCount(), counted.getTotalBaseCount());
+        assertEquals(expected.getBaseCounts(), counted.getBaseCounts());
+    }
+
+    @Test
+    public void testShardsAreReduced() throws Exception {
+        List<String> fileNames = new ArrayList<>(Arrays.asList("test1.fasta.gz", "test2.fasta.gz", "test3.fasta.gz",
+                "test4.fasta.gz"));
+        for (String fileName : fileNames) {
+            Files.copy(Paths.get(pathToResources + fileName), folder.getRoot().toPath().resolve(fileName));
+        }
+        Random random = new Random(23);
+        for (int i = 0; i < 4; i++) {
+            StringBuilder content = new StringBuilder();
+            for (int j = random.nextInt(50); j >= 0; j--) {
+                content.append(">").append(j).append('\n');
+                for (int k = random.nextInt(200); k > 0; k--) {
+                    content.append("ACGTNacgt".charAt(random.nextInt(9)));
+                }
+                content.append('\n');
+            }
+            Files.write(folder.getRoot().toPath().resolve("r" + i + ".fasta"),
+                    content.toString().getBytes(StandardCharsets.US_ASCII));
+            fileNames.add("r" + i + ".fasta");
+        }
+        String pathToFolder = folder.getRoot().getPath() + File.separator;
+        new FastaFileService(pathToFolder, new FastaSettings().setReportOnly(true).setKmerSize(3))
+                .processFastaFiles(fileNames);
+        List<String> expected = Files.readAllLines(folder.getRoot().toPath().resolve(reportFileName));
+
+        List<String> partials = new ArrayList<>();
+        for (int shard = 0; shard < 3; shard++) {
+            new FastaFileService(pathToFolder, new FastaSettings().setShard(shard, 3).setKmerSize(3))
+                    .processFastaFiles(fileNames);
+            partials.add(FastaFileService.getPartialFileName(shard));
+        }
+        Files.delete(folder.getRoot().toPath().resolve(reportFileName));
+        new FastaFileService(pathToFolder, new FastaSettings().setReduce(true)).processFastaFiles(partials);
+        assertEquals(expected, Files.readAllLines(folder.getRoot().toPath().resolve(reportFileName)));
+
+        FastaResult result = new FastaFileService(pathToFolder, new FastaSettings().setKmerSize(3))
+                .countFastaFiles(fileNames);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        result.write(bytes);
+        FastaResult read = FastaResult.read(new ByteArrayInputStream(bytes.toByteArray()));
+        assertEquals(result.getBaseCounts(), read.getBaseCounts());
+        assertEquals(result.getSequenceCount(), read.getSequenceCount());
+        assertArrayEquals(result.getStats().getKmers(), read.getStats().getKmers());
+        assertEquals(result.getStats().getLengths().getN50(), read.getStats().getLengths().getN50());
+
+        thrown.expect(IllegalStateException.class);
+        new FastaFileService(pathToFolder, new FastaSettings().setReduce(true))
+                .processFastaFiles(Arrays.asList(partials.get(0), partials.get(1), partials.get(1)));
+    }
+
+    @Test
+    public void testChannelsAreStreamed() throws Exception {
+        List<String> fileNames = Arrays.asList("test1.fasta.gz", "test2.fasta.gz", "test3.fasta.gz", "test4.fasta.gz");
+        FastaSettings settings = new FastaSettings();
+        for (String fileName : fileNames) {
+            byte[] content = Files.readAllBytes(Paths.get(pathToResources + fileName));
+            settings.setInputChannel(fileName, Channels.newChannel(new ByteArrayInputStream(content)));
+        }
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        settings.setOutputChannel(Channels.newChannel(output));
+        new FastaFileService(folder.getRoot().getPath() + File.separator, settings).processFastaFiles(fileNames);
+
+        assertFalse(new File(folder.getRoot(), sequenceFileName).exists());
+        File actualGz = folder.newFile("streamed.gz");
+        Files.write(actualGz.toPath(), output.toByteArray());
+        File expectedGz = new File(getClass().getResource(expectedGzName).getFile());
+        assertTrue(TestUtils.isContentEquals(expectedGz, actualGz, true));
+        File expectedReport = new File(getClass().getResource(expectedReportName).getFile());
+        assertTrue(TestUtils.isContentEquals(expectedReport, new File(folder.getRoot(), reportFileName), false));
+    }
+
+    @Test
+    public void testClosedOutputChannelFailsJob() throws Exception {
+        Random random = new Random(5);
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            content.append(">a\n");
+            for (int j = 0; j < 1000; j++) {
+                content.append("ACGT".charAt(random.nextInt(4)));
+            }
+            content.append('\n');
+        }
+        TestUtils.writeGzip(folder.newFile("large.fasta.gz"), content.toString());
+        Pipe pipe = Pipe.open();
+        Thread reader = new Thread(() -> {
+            try (Pipe.SourceChannel source = pipe.source()) {
+                source.read(ByteBuffer.allocate(100));
+            } catch (IOException ignored) {
+            }
+        });
+        reader.start();
+        thrown.expect(IllegalStateException.class);
+        try (Pipe.SinkChannel sink = pipe.sink()) {
+            FastaSettings settings = new FastaSettings().setOutputChannel(sink);
+            new FastaFileService(folder.getRoot().getPath() + File.separator, settings)
+                    .processFastaFiles(Collections.singletonList("large.fasta.gz"));
+        } finally {
+            reader.join();
+            assertFalse(new File(folder.getRoot(), reportFileName).exists());
+        }
+    }
+
+    @Test
+    public void testBgzfRoundTrip() throws Exception {
+        byte[] content = new byte[300 * 1024];
+        Random random = new Random(42);
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) "ACGT\n".charAt(random.nextInt(5));
+        }
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (BgzfOutputStream out = new BgzfOutputStream(compressed, 2)) {
+            out.write(content, 0, 1000);
+            out.write(content, 1000, content.length - 1000);
+        }
+        byte[] bytes = compressed.toByteArray();
+        assertTrue(BgzfInputStream.isBgzf(bytes, bytes.length));
+
+        ExecutorService inflaters = Executors.newFixedThreadPool(2);
+        ByteArrayOutputStream decompressed = new ByteArrayOutputStream();
+        try (InputStream in = new BgzfInputStream(new ByteArrayInputStream(bytes), inflaters, 3)) {
+            byte[] buffer = new byte[10000];
+            for (int n = in.read(buffer); n != -1; n = in.read(buffer)) {
+                decompressed.write(buffer, 0, n);
+            }
+        } finally {
+            inflaters.shutdown();
+        }
+        assertArrayEquals(content, decompressed.toByteArray());
+    }
+
 }